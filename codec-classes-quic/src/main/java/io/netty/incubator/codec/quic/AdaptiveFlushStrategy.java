@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.util.internal.ObjectUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FlushStrategy} that adjusts the number of packets after which a flush is done based on the observed packet
+ * rate. The goal is to batch as many packets as we expect to be written within the maximum delay, which means low
+ * rate traffic is flushed directly while high rate traffic is batched. If the parent channel is not writable the
+ * batch size is reduced to make room in its outbound buffer as fast as possible.
+ * <p>
+ * Each codec uses its own instance, which is only accessed from its {@link io.netty.channel.EventLoop}.
+ */
+final class AdaptiveFlushStrategy implements FlushStrategy {
+    // Weight of the latest observation in the moving average of the packet rate.
+    private static final double RATE_WEIGHT = 0.25;
+
+    private final int maxPackets;
+    private final long maxFlushDelayNanos;
+
+    private int batchPackets = 1;
+    private long lastFlushNanos;
+    private double packetsPerNano;
+
+    AdaptiveFlushStrategy(int maxPackets, long maxDelay, TimeUnit unit) {
+        this.maxPackets = ObjectUtil.checkPositive(maxPackets, "maxPackets");
+        this.maxFlushDelayNanos = ObjectUtil.checkNotNull(unit, "unit").toNanos(
+                ObjectUtil.checkPositive(maxDelay, "maxDelay"));
+    }
+
+    @Override
+    public boolean shouldFlushNow(int numPackets, int numBytes) {
+        return numPackets >= batchPackets;
+    }
+
+    @Override
+    public long maxFlushDelayNanos() {
+        return maxFlushDelayNanos;
+    }
+
+    @Override
+    public void flushed(int numPackets, int numBytes, boolean parentWritable) {
+        long now = System.nanoTime();
+        if (lastFlushNanos != 0) {
+            double rate = numPackets / (double) Math.max(1, now - lastFlushNanos);
+            packetsPerNano = packetsPerNano == 0 ? rate : packetsPerNano * (1 - RATE_WEIGHT) + rate * RATE_WEIGHT;
+        }
+        lastFlushNanos = now;
+
+        // Batch the number of packets that we expect to be written within the maximum delay.
+        int target = (int) Math.max(1, Math.min(maxPackets, packetsPerNano * maxFlushDelayNanos));
+        if (!parentWritable) {
+            target = Math.max(1, Math.min(target, batchPackets) >>> 1);
+        }
+        batchPackets = target;
+    }
+
+    @Override
+    public FlushStrategy instanceForCodec() {
+        return new AdaptiveFlushStrategy(maxPackets, maxFlushDelayNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.util.internal.ObjectUtil;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Executor} that can be used as {@code sslTaskExecutor} (see
+ * {@link QuicCodecBuilder#sslTaskExecutor(Executor)}) and which measures how long each type of SSL task (for example
+ * certificate selection, certificate verification or signing) takes to run.
+ * <p>
+ * Task types that are cheap to run are executed directly on the {@link io.netty.channel.EventLoop} of the
+ * connection, as offloading them would cost more than running them. Task types that are expensive, or for which
+ * we did not collect any measurements yet, are offloaded to the wrapped {@link Executor}. The cost of a task type is
+ * tracked via an exponential moving average over all runs, no matter if these were offloaded or not, so the decision
+ * adapts if the cost of a task type changes over time.
+ * <p>
+ * An instance is thread-safe and can be shared between multiple codecs.
+ */
+public final class AdaptiveSslTaskExecutor implements Executor {
+    private static final long DEFAULT_INLINE_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // Each new sample has a weight of 1 / 2^EWMA_SHIFT.
+    private static final int EWMA_SHIFT = 3;
+
+    private final ConcurrentMap<Class<?>, TaskCost> costs = new ConcurrentHashMap<>();
+    private final Executor executor;
+    private final long inlineThresholdNanos;
+
+    private AdaptiveSslTaskExecutor(Executor executor, long inlineThresholdNanos) {
+        this.executor = executor;
+        this.inlineThresholdNanos = inlineThresholdNanos;
+    }
+
+    /**
+     * Creates a new instance that runs SSL tasks which take less than {@code 50} microseconds on average directly
+     * on the {@link io.netty.channel.EventLoop}.
+     *
+     * @param executor  the {@link Executor} that is used to offload expensive SSL tasks.
+     * @return          the executor.
+     */
+    public static AdaptiveSslTaskExecutor newExecutor(Executor executor) {
+        return new AdaptiveSslTaskExecutor(ObjectUtil.checkNotNull(executor, "executor"),
+                DEFAULT_INLINE_THRESHOLD_NANOS);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param executor          the {@link Executor} that is used to offload expensive SSL tasks.
+     * @param inlineThreshold   SSL tasks that take less than this on average are run directly on the
+     *                          {@link io.netty.channel.EventLoop}.
+     * @param unit              the {@link TimeUnit} of {@code inlineThreshold}.
+     * @return                  the executor.
+     */
+    public static AdaptiveSslTaskExecutor newExecutor(Executor executor, long inlineThreshold, TimeUnit unit) {
+        ObjectUtil.checkNotNull(executor, "executor");
+        ObjectUtil.checkPositiveOrZero(inlineThreshold, "inlineThreshold");
+        ObjectUtil.checkNotNull(unit, "unit");
+        return new AdaptiveSslTaskExecutor(executor, unit.toNanos(inlineThreshold));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /**
+     * Returns {@code true} if tasks of the given type should be run directly on the
+     * {@link io.netty.channel.EventLoop}.
+     */
+    boolean runInline(Class<?> taskType) {
+        TaskCost cost = costs.get(taskType);
+        return cost != null && cost.averageNanos < inlineThresholdNanos;
+    }
+
+    /**
+     * Records that a task of the given type took {@code nanos} to run.
+     */
+    void record(Class<?> taskType, long nanos) {
+        TaskCost cost = costs.get(taskType);
+        if (cost == null) {
+            TaskCost newCost = new TaskCost(nanos);
+            cost = costs.putIfAbsent(taskType, newCost);
+            if (cost == null) {
+                return;
+            }
+        }
+        // This may lose updates if tasks of the same type complete concurrently, which is fine as we are only
+        // interested in an estimation.
+        long average = cost.averageNanos;
+        cost.averageNanos = average + ((nanos - average) >> EWMA_SHIFT);
+    }
+
+    /**
+     * Returns the average time it took to run tasks of the given type or {@code -1} if no task of this type was run
+     * yet.
+     */
+    long averageNanos(Class<?> taskType) {
+        TaskCost cost = costs.get(taskType);
+        return cost == null ? -1 : cost.averageNanos;
+    }
+
+    private static final class TaskCost {
+        volatile long averageNanos;
+
+        TaskCost(long averageNanos) {
+            this.averageNanos = averageNanos;
+        }
+    }
+}
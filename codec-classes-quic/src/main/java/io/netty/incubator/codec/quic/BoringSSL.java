@@ -78,6 +78,7 @@ final class BoringSSL {
     static native void SSLContext_set_early_data_enabled(long context, boolean enabled);
     static native long SSLContext_setSessionCacheSize(long context, long size);
     static native long SSLContext_setSessionCacheTimeout(long context, long size);
+    static native void SSLContext_set_session_ticket_callback(long context, Object sessionTicketCallback);
     static native void SSLContext_free(long context);
     static long SSL_new(long context, boolean server, String hostname) {
         return SSL_new0(context, server, tlsExtHostName(hostname));
@@ -91,9 +92,11 @@ final class BoringSSL {
 
     static native long EVP_PKEY_parse(byte[] bytes, String pass);
     static native void EVP_PKEY_free(long key);
+    static native void EVP_PKEY_up_ref(long key);
 
     static native long CRYPTO_BUFFER_stack_new(long ssl, byte[][] bytes);
     static native void CRYPTO_BUFFER_stack_free(long chain);
+    static native long CRYPTO_BUFFER_stack_dup(long chain);
 
     static native String ERR_last_error();
 
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+/**
+ * Provides the keys that are used by BoringSSL to encrypt and decrypt session tickets.
+ */
+final class BoringSSLSessionTicketCallback {
+
+    // The keys of all SslSessionTicketKeys, stored one after another. The first one is used for encryption.
+    private volatile byte[] sessionKeys;
+
+    @SuppressWarnings("unused")
+    byte[] sessionTicketKeys() {
+        return sessionKeys;
+    }
+
+    void setSessionTicketKeys(SslSessionTicketKey[] keys) {
+        byte[] sessionKeys = new byte[keys.length * SslSessionTicketKey.TICKET_KEY_SIZE];
+        int offset = 0;
+        for (SslSessionTicketKey key: keys) {
+            System.arraycopy(key.name, 0, sessionKeys, offset, SslSessionTicketKey.NAME_SIZE);
+            offset += SslSessionTicketKey.NAME_SIZE;
+            System.arraycopy(key.hmacKey, 0, sessionKeys, offset, SslSessionTicketKey.HMAC_KEY_SIZE);
+            offset += SslSessionTicketKey.HMAC_KEY_SIZE;
+            System.arraycopy(key.aesKey, 0, sessionKeys, offset, SslSessionTicketKey.AES_KEY_SIZE);
+            offset += SslSessionTicketKey.AES_KEY_SIZE;
+        }
+        this.sessionKeys = sessionKeys;
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.internal.MathUtil;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Open-addressing hash table that maps connection ids to values.
+ * <p>
+ * Lookups can be done directly on the bytes of a {@link ByteBuf} (for example the packet that was just received) and
+ * so don't need to allocate any key object. When the table needs to grow the entries are migrated to the new table
+ * incrementally on each modification, which ensures we never need to rehash all the entries at once.
+ * <p>
+ * This class is not thread-safe and is expected to only be used from the {@link io.netty.channel.EventLoop}.
+ */
+final class ConnectionIdMap<V> {
+    private static final int DEFAULT_INITIAL_CAPACITY = 64;
+    // Number of slots of the old table that are migrated per modification while growing.
+    private static final int MIGRATION_STEP = 16;
+    // Marks a slot in the old table that was removed or already migrated. Lookups need to continue probing.
+    private static final ByteBuffer TOMBSTONE = ByteBuffer.allocate(0);
+
+    // Random seed so remote peers can not easily craft connection ids that all collide.
+    private final int seed = PlatformDependent.threadLocalRandom().nextInt();
+
+    private ByteBuffer[] keys;
+    private Object[] values;
+    private int[] hashes;
+    private int mask;
+    private int size;
+    private int maxSize;
+
+    // The table we are currently migrating from, or null if no migration is in progress.
+    private ByteBuffer[] oldKeys;
+    private Object[] oldValues;
+    private int[] oldHashes;
+    private int oldSize;
+    private int migrationIndex;
+
+    ConnectionIdMap() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    ConnectionIdMap(int initialCapacity) {
+        int capacity = MathUtil.findNextPositivePowerOfTwo(
+                Math.max(2, ObjectUtil.checkPositive(initialCapacity, "initialCapacity")));
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new ByteBuffer[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+        // Use a load factor of 0.5 to keep the probe sequences short.
+        maxSize = capacity >>> 1;
+        size = 0;
+    }
+
+    /**
+     * Returns the number of mappings.
+     */
+    int size() {
+        return size + oldSize;
+    }
+
+    /**
+     * Returns the value that is mapped to the connection id stored in {@code buffer} at the given index and length.
+     */
+    V get(ByteBuf buffer, int index, int length) {
+        int hash = hash(buffer, index, length);
+        V value = get(keys, values, hashes, mask, hash, buffer, index, length);
+        if (value == null && oldKeys != null) {
+            value = get(oldKeys, oldValues, oldHashes, oldKeys.length - 1, hash, buffer, index, length);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value that is mapped to the readable bytes of the given {@link ByteBuf}.
+     */
+    V get(ByteBuf id) {
+        return get(id, id.readerIndex(), id.readableBytes());
+    }
+
+    /**
+     * Returns the value that is mapped to the remaining bytes of the given {@link ByteBuffer}.
+     */
+    V get(ByteBuffer id) {
+        int hash = hash(id);
+        V value = get(keys, values, hashes, mask, hash, id);
+        if (value == null && oldKeys != null) {
+            value = get(oldKeys, oldValues, oldHashes, oldKeys.length - 1, hash, id);
+        }
+        return value;
+    }
+
+    /**
+     * Maps the remaining bytes of {@code id} to the given value. The {@link ByteBuffer} is stored as it is and so must
+     * not be modified afterwards.
+     *
+     * @return the previous value that was mapped to the id or {@code null} if there was none.
+     */
+    V put(ByteBuffer id, V value) {
+        ObjectUtil.checkNotNull(id, "id");
+        ObjectUtil.checkNotNull(value, "value");
+        migrate();
+        int hash = hash(id);
+        if (oldKeys != null) {
+            int oldMask = oldKeys.length - 1;
+            int idx = find(oldKeys, oldHashes, oldMask, hash, id);
+            if (idx != -1) {
+                @SuppressWarnings("unchecked")
+                V previous = (V) oldValues[idx];
+                removeFromOld(idx);
+                insert(id, value, hash);
+                return previous;
+            }
+        }
+        int idx = find(keys, hashes, mask, hash, id);
+        if (idx != -1) {
+            @SuppressWarnings("unchecked")
+            V previous = (V) values[idx];
+            values[idx] = value;
+            return previous;
+        }
+        if (size >= maxSize) {
+            grow();
+        }
+        insert(id, value, hash);
+        return null;
+    }
+
+    /**
+     * Removes the mapping of {@code id}, but only if it is currently mapped to the given value.
+     *
+     * @return {@code true} if the mapping was removed.
+     */
+    boolean remove(ByteBuffer id, V value) {
+        migrate();
+        int hash = hash(id);
+        int idx = find(keys, hashes, mask, hash, id);
+        if (idx != -1) {
+            if (values[idx] != value) {
+                return false;
+            }
+            removeAt(idx);
+            return true;
+        }
+        if (oldKeys != null) {
+            idx = find(oldKeys, oldHashes, oldKeys.length - 1, hash, id);
+            if (idx != -1 && oldValues[idx] == value) {
+                removeFromOld(idx);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a snapshot of all the values.
+     */
+    List<V> values() {
+        List<V> list = new ArrayList<>(size());
+        addValues(list, keys, values);
+        if (oldKeys != null) {
+            addValues(list, oldKeys, oldValues);
+        }
+        return list;
+    }
+
+    /**
+     * Removes all mappings.
+     */
+    void clear() {
+        allocate(DEFAULT_INITIAL_CAPACITY);
+        clearOld();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addValues(List<V> list, ByteBuffer[] keys, Object[] values) {
+        for (int i = 0; i < keys.length; i++) {
+            ByteBuffer key = keys[i];
+            if (key != null && key != TOMBSTONE) {
+                list.add((V) values[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        if (oldKeys != null) {
+            // Still migrating, finish it first.
+            finishMigration();
+            if (size < maxSize) {
+                return;
+            }
+        }
+        oldKeys = keys;
+        oldValues = values;
+        oldHashes = hashes;
+        oldSize = size;
+        migrationIndex = 0;
+        allocate(keys.length << 1);
+    }
+
+    private void finishMigration() {
+        while (oldKeys != null) {
+            migrate();
+        }
+    }
+
+    private void migrate() {
+        if (oldKeys == null) {
+            return;
+        }
+        int end = Math.min(migrationIndex + MIGRATION_STEP, oldKeys.length);
+        for (int i = migrationIndex; i < end; i++) {
+            ByteBuffer key = oldKeys[i];
+            if (key != null && key != TOMBSTONE) {
+                insert(key, oldValues[i], oldHashes[i]);
+                removeFromOld(i);
+            }
+        }
+        migrationIndex = end;
+        if (migrationIndex == oldKeys.length || oldSize == 0) {
+            clearOld();
+        }
+    }
+
+    private void removeFromOld(int idx) {
+        // We can't shift entries in the old table as we may move these into the part we already migrated.
+        // Use a tombstone instead, the old table is dropped once the migration is complete anyway.
+        oldKeys[idx] = TOMBSTONE;
+        oldValues[idx] = null;
+        oldSize--;
+    }
+
+    private void clearOld() {
+        oldKeys = null;
+        oldValues = null;
+        oldHashes = null;
+        oldSize = 0;
+        migrationIndex = 0;
+    }
+
+    private void insert(ByteBuffer key, Object value, int hash) {
+        int idx = hash & mask;
+        while (keys[idx] != null) {
+            idx = (idx + 1) & mask;
+        }
+        keys[idx] = key;
+        values[idx] = value;
+        hashes[idx] = hash;
+        size++;
+    }
+
+    private void removeAt(int idx) {
+        keys[idx] = null;
+        values[idx] = null;
+        size--;
+
+        // Backward shift deletion, which ensures we never need tombstones in the current table.
+        int free = idx;
+        int i = (idx + 1) & mask;
+        while (keys[i] != null) {
+            int home = hashes[i] & mask;
+            // Check if the entry at i can be moved to the free slot, which is the case if its home slot is not
+            // between the free slot and i (cyclically).
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                hashes[free] = hashes[i];
+                keys[i] = null;
+                values[i] = null;
+                free = i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V get(ByteBuffer[] keys, Object[] values, int[] hashes, int mask, int hash,
+                  ByteBuf buffer, int index, int length) {
+        int idx = hash & mask;
+        for (;;) {
+            ByteBuffer key = keys[idx];
+            if (key == null) {
+                return null;
+            }
+            if (hashes[idx] == hash && key != TOMBSTONE && equals(key, buffer, index, length)) {
+                return (V) values[idx];
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V get(ByteBuffer[] keys, Object[] values, int[] hashes, int mask, int hash, ByteBuffer id) {
+        int idx = find(keys, hashes, mask, hash, id);
+        return idx == -1 ? null : (V) values[idx];
+    }
+
+    private static int find(ByteBuffer[] keys, int[] hashes, int mask, int hash, ByteBuffer id) {
+        int idx = hash & mask;
+        for (;;) {
+            ByteBuffer key = keys[idx];
+            if (key == null) {
+                return -1;
+            }
+            if (hashes[idx] == hash && key != TOMBSTONE && equals(key, id)) {
+                return idx;
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    private static boolean equals(ByteBuffer key, ByteBuf buffer, int index, int length) {
+        if (key.remaining() != length) {
+            return false;
+        }
+        int keyIndex = key.position();
+        for (int i = 0; i < length; i++) {
+            if (key.get(keyIndex + i) != buffer.getByte(index + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(ByteBuffer key, ByteBuffer id) {
+        int length = id.remaining();
+        if (key.remaining() != length) {
+            return false;
+        }
+        int keyIndex = key.position();
+        int idIndex = id.position();
+        for (int i = 0; i < length; i++) {
+            if (key.get(keyIndex + i) != id.get(idIndex + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(ByteBuf buffer, int index, int length) {
+        int hash = seed;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ buffer.getByte(index + i)) * 0x01000193;
+        }
+        return mix(hash);
+    }
+
+    private int hash(ByteBuffer id) {
+        int hash = seed;
+        int idx = id.position();
+        int length = id.remaining();
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ id.get(idx + i)) * 0x01000193;
+        }
+        return mix(hash);
+    }
+
+    private static int mix(int hash) {
+        // Finalizer of murmur3, ensures all bits are spread into the lower bits that we use for the index.
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.util.internal.ObjectUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FlushStrategy} that delegates to another {@link FlushStrategy} but also bounds the time that may pass
+ * between the first write that was not flushed yet and the flush.
+ */
+final class DelayedFlushStrategy implements FlushStrategy {
+    private final FlushStrategy strategy;
+    private final long maxFlushDelayNanos;
+
+    DelayedFlushStrategy(FlushStrategy strategy, long delay, TimeUnit unit) {
+        this.strategy = ObjectUtil.checkNotNull(strategy, "strategy");
+        this.maxFlushDelayNanos = ObjectUtil.checkNotNull(unit, "unit").toNanos(
+                ObjectUtil.checkPositive(delay, "delay"));
+    }
+
+    @Override
+    public boolean shouldFlushNow(int numPackets, int numBytes) {
+        return strategy.shouldFlushNow(numPackets, numBytes);
+    }
+
+    @Override
+    public long maxFlushDelayNanos() {
+        return maxFlushDelayNanos;
+    }
+}
@@ -24,6 +24,9 @@ import java.net.InetSocketAddress;
 
 /**
  * Class that provides utility methods to setup {@code QUIC} when using the {@code EPOLL} transport.
+ * <p>
+ * On the receive side {@code UDP_GRO} can be enabled via {@link io.netty.channel.epoll.EpollChannelOption#UDP_GRO}.
+ * Coalesced datagrams are split into their segments by the QUIC codec without copying the received data.
  */
 public final class EpollQuicUtils {
 
@@ -17,6 +17,8 @@ package io.netty.incubator.codec.quic;
 
 import io.netty.util.internal.ObjectUtil;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Allows to configure a strategy for when flushes should be happening.
  */
@@ -36,6 +38,39 @@ public interface FlushStrategy {
      */
     boolean shouldFlushNow(int numPackets, int numBytes);
 
+    /**
+     * Returns the maximum time in nanoseconds that may pass between the first write that was not flushed yet and
+     * the flush. If {@code > 0} a flush is done once this time elapsed even if
+     * {@link #shouldFlushNow(int, int)} did not return {@code true} yet.
+     *
+     * @return  the maximum delay in nanoseconds or {@code 0} if flushes should not be bounded by time.
+     */
+    default long maxFlushDelayNanos() {
+        return 0;
+    }
+
+    /**
+     * Called after a flush was done. This can be used by implementations to adjust themselves to the traffic
+     * pattern.
+     *
+     * @param numPackets        the number of packets that were flushed.
+     * @param numBytes          the number of bytes that were flushed.
+     * @param parentWritable    {@code true} if the parent {@link io.netty.channel.Channel} is writable.
+     */
+    default void flushed(int numPackets, int numBytes, boolean parentWritable) {
+        // NOOP
+    }
+
+    /**
+     * Returns the {@link FlushStrategy} that should be used by a single codec. Implementations that keep state must
+     * return a new instance, as each codec may be served by another {@link io.netty.channel.EventLoop}.
+     *
+     * @return  the {@link FlushStrategy} to use.
+     */
+    default FlushStrategy instanceForCodec() {
+        return this;
+    }
+
     /**
      * Implementation that flushes after a number of bytes.
      *
@@ -57,4 +92,44 @@ public interface FlushStrategy {
         ObjectUtil.checkPositive(packets, "packets");
         return (numPackets, numBytes) -> numPackets > packets;
     }
+
+    /**
+     * Implementation that flushes after a number of bytes or once the given delay elapsed since the first write that
+     * was not flushed yet, whatever happens first.
+     *
+     * @param bytes the number of bytes after which we should issue a flush.
+     * @param delay the maximum delay after which we should issue a flush.
+     * @param unit  the {@link TimeUnit} of the delay.
+     * @return the {@link FlushStrategy}.
+     */
+    static FlushStrategy afterNumBytesOrDelay(int bytes, long delay, TimeUnit unit) {
+        return new DelayedFlushStrategy(afterNumBytes(bytes), delay, unit);
+    }
+
+    /**
+     * Implementation that flushes after a number of packets or once the given delay elapsed since the first write
+     * that was not flushed yet, whatever happens first.
+     *
+     * @param packets   the number of packets after which we should issue a flush.
+     * @param delay     the maximum delay after which we should issue a flush.
+     * @param unit      the {@link TimeUnit} of the delay.
+     * @return the {@link FlushStrategy}.
+     */
+    static FlushStrategy afterNumPacketsOrDelay(int packets, long delay, TimeUnit unit) {
+        return new DelayedFlushStrategy(afterNumPackets(packets), delay, unit);
+    }
+
+    /**
+     * Implementation that adjusts the number of packets after which we flush based on the observed packet rate and
+     * the writability of the parent {@link io.netty.channel.Channel}. Low rate traffic is flushed quickly while
+     * high rate traffic is batched, but never for longer than the given delay.
+     *
+     * @param maxPackets    the maximum number of packets after which we should issue a flush.
+     * @param maxDelay      the maximum delay after which we should issue a flush.
+     * @param unit          the {@link TimeUnit} of the delay.
+     * @return the {@link FlushStrategy}.
+     */
+    static FlushStrategy adaptive(int maxPackets, long maxDelay, TimeUnit unit) {
+        return new AdaptiveFlushStrategy(maxPackets, maxDelay, unit);
+    }
 }
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.ObjectUtil;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link QuicTokenHandler} which authenticates the tokens it generates with {@code HmacSHA256}.
+ * <p>
+ * Each token contains the time at which it was generated and is only accepted for the configured lifetime and from
+ * the address it was generated for. The key that is used to authenticate the tokens can be rotated, tokens that were
+ * generated with the previous key are still accepted until they expire.
+ * <p>
+ * The token has the following format:
+ * <pre>
+ * +--------+-----------+-----+------+
+ * | key id | timestamp | tag | dcid |
+ * +--------+-----------+-----+------+
+ *     1          8       16    0-20
+ * </pre>
+ */
+public final class HmacQuicTokenHandler implements QuicTokenHandler {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_KEY_LENGTH = 16;
+    private static final int MAC_LENGTH = 32;
+    private static final int TAG_LENGTH = 16;
+    private static final int TAG_OFFSET = 1 + Long.BYTES;
+    private static final int HEADER_LENGTH = TAG_OFFSET + TAG_LENGTH;
+    // Tokens from servers with a slightly different clock are still accepted.
+    private static final long MAX_CLOCK_SKEW_MILLIS = 1000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final AtomicReference<Keys> keys;
+    private final long lifetimeMillis;
+    private final long rotationIntervalMillis;
+    private final LongSupplier clock;
+    private final FastThreadLocal<ThreadState> threadState = new FastThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+
+    HmacQuicTokenHandler(byte[] key, long lifetimeMillis, long rotationIntervalMillis, LongSupplier clock) {
+        Quic.ensureAvailability();
+        this.lifetimeMillis = lifetimeMillis;
+        this.rotationIntervalMillis = rotationIntervalMillis;
+        this.clock = clock;
+        keys = new AtomicReference<>(new Keys(new Key(0, key, clock.getAsLong()), null));
+    }
+
+    /**
+     * Creates a new instance which uses a random key that is rotated automatically. This is the right choice if
+     * there is only one server that needs to validate the tokens.
+     *
+     * @param lifetime  the time after which a token expires.
+     * @param unit      the {@link TimeUnit} of the lifetime.
+     * @return          the handler.
+     */
+    public static HmacQuicTokenHandler newInstance(long lifetime, TimeUnit unit) {
+        long lifetimeMillis = unit.toMillis(ObjectUtil.checkPositive(lifetime, "lifetime"));
+        // Rotating the key once per lifetime guarantees that tokens were generated by the current or the previous
+        // key as long as these did not expire yet.
+        return new HmacQuicTokenHandler(newRandomKey(), lifetimeMillis, lifetimeMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a new instance which uses the given key. This allows to share the key between multiple servers.
+     * The key is never rotated automatically, use {@link #rotateKey(byte[])} to do so. All servers that share the
+     * key must rotate it the same way.
+     *
+     * @param key       the key, must be at least 16 bytes.
+     * @param lifetime  the time after which a token expires.
+     * @param unit      the {@link TimeUnit} of the lifetime.
+     * @return          the handler.
+     */
+    public static HmacQuicTokenHandler newInstance(byte[] key, long lifetime, TimeUnit unit) {
+        return new HmacQuicTokenHandler(checkKey(key).clone(),
+                unit.toMillis(ObjectUtil.checkPositive(lifetime, "lifetime")), 0, System::currentTimeMillis);
+    }
+
+    /**
+     * Replace the key that is used to generate tokens. Tokens that were generated with the key that was used
+     * before are still accepted until they expire, all other keys are not accepted anymore.
+     *
+     * @param key   the new key, must be at least 16 bytes.
+     */
+    public void rotateKey(byte[] key) {
+        byte[] copy = checkKey(key).clone();
+        long now = clock.getAsLong();
+        for (;;) {
+            Keys current = keys.get();
+            if (keys.compareAndSet(current, current.rotate(copy, now))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean writeToken(ByteBuf out, ByteBuf dcid, InetSocketAddress address) {
+        long now = clock.getAsLong();
+        Key key = currentKey(now);
+        ThreadState state = threadState.get();
+        byte[] tag = state.tag(key, now, address, dcid, dcid.readerIndex(), dcid.readableBytes());
+        out.writeByte(key.id)
+                .writeLong(now)
+                .writeBytes(tag, 0, TAG_LENGTH)
+                .writeBytes(dcid, dcid.readerIndex(), dcid.readableBytes());
+        return true;
+    }
+
+    @Override
+    public int validateToken(ByteBuf token, InetSocketAddress address) {
+        int length = token.readableBytes();
+        if (length <= HEADER_LENGTH || length > maxTokenLength()) {
+            return -1;
+        }
+        int idx = token.readerIndex();
+        Key key = keys.get().key(token.getUnsignedByte(idx));
+        if (key == null) {
+            return -1;
+        }
+        long timestamp = token.getLong(idx + 1);
+        long now = clock.getAsLong();
+        if (now - timestamp > lifetimeMillis || timestamp - now > MAX_CLOCK_SKEW_MILLIS) {
+            return -1;
+        }
+        byte[] tag = threadState.get().tag(
+                key, timestamp, address, token, idx + HEADER_LENGTH, length - HEADER_LENGTH);
+        // Compare in constant time so the tag can not be guessed byte by byte.
+        int diff = 0;
+        for (int i = 0; i < TAG_LENGTH; i++) {
+            diff |= tag[i] ^ token.getByte(idx + TAG_OFFSET + i);
+        }
+        return diff == 0 ? HEADER_LENGTH : -1;
+    }
+
+    @Override
+    public int maxTokenLength() {
+        return HEADER_LENGTH + Quiche.QUICHE_MAX_CONN_ID_LEN;
+    }
+
+    private Key currentKey(long now) {
+        Keys current = keys.get();
+        if (rotationIntervalMillis > 0 && now - current.current.createdMillis >= rotationIntervalMillis) {
+            Keys rotated = current.rotate(newRandomKey(), now);
+            // If this fails some other thread did rotate the key in the meantime.
+            if (!keys.compareAndSet(current, rotated)) {
+                rotated = keys.get();
+            }
+            return rotated.current;
+        }
+        return current.current;
+    }
+
+    private static byte[] checkKey(byte[] key) {
+        ObjectUtil.checkNotNull(key, "key");
+        if (key.length < MIN_KEY_LENGTH) {
+            throw new IllegalArgumentException("key must be at least " + MIN_KEY_LENGTH + " bytes: " + key.length);
+        }
+        return key;
+    }
+
+    private static byte[] newRandomKey() {
+        byte[] key = new byte[MAC_LENGTH];
+        RANDOM.nextBytes(key);
+        return key;
+    }
+
+    private static final class Key {
+        final int id;
+        final SecretKeySpec spec;
+        final long createdMillis;
+
+        Key(int id, byte[] key, long createdMillis) {
+            this.id = id;
+            this.spec = new SecretKeySpec(key, ALGORITHM);
+            this.createdMillis = createdMillis;
+        }
+    }
+
+    private static final class Keys {
+        final Key current;
+        final Key previous;
+
+        Keys(Key current, Key previous) {
+            this.current = current;
+            this.previous = previous;
+        }
+
+        Key key(int id) {
+            if (current.id == id) {
+                return current;
+            }
+            if (previous != null && previous.id == id) {
+                return previous;
+            }
+            return null;
+        }
+
+        Keys rotate(byte[] key, long now) {
+            return new Keys(new Key((current.id + 1) & 0xFF, key, now), current);
+        }
+    }
+
+    /**
+     * State that is cached per thread, so generating and validating tokens does not need to allocate.
+     */
+    private static final class ThreadState {
+        // key id, timestamp, address and dcid.
+        private final byte[] input = new byte[1 + Long.BYTES + 16 + Quiche.QUICHE_MAX_CONN_ID_LEN];
+        private final byte[] tag = new byte[MAC_LENGTH];
+        // As the current and the previous key always differ in the lowest bit of their id we can use it as index.
+        private final Mac[] macs = new Mac[2];
+        private final Key[] macKeys = new Key[2];
+
+        byte[] tag(Key key, long timestamp, InetSocketAddress address, ByteBuf dcid, int dcidIndex, int dcidLength) {
+            byte[] input = this.input;
+            input[0] = (byte) key.id;
+            putLong(input, 1, timestamp);
+            int idx = 1 + Long.BYTES;
+            InetAddress addr = address.getAddress();
+            if (addr instanceof Inet4Address) {
+                // The hash code of an Inet4Address is the address itself, so we don't need to copy the bytes.
+                putInt(input, idx, addr.hashCode());
+                idx += Integer.BYTES;
+            } else {
+                byte[] bytes = addr.getAddress();
+                System.arraycopy(bytes, 0, input, idx, bytes.length);
+                idx += bytes.length;
+            }
+            dcid.getBytes(dcidIndex, input, idx, dcidLength);
+            idx += dcidLength;
+
+            Mac mac = mac(key);
+            mac.update(input, 0, idx);
+            try {
+                mac.doFinal(tag, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            return tag;
+        }
+
+        private Mac mac(Key key) {
+            int slot = key.id & 1;
+            Mac mac = macs[slot];
+            if (macKeys[slot] != key) {
+                try {
+                    if (mac == null) {
+                        mac = Mac.getInstance(ALGORITHM);
+                        macs[slot] = mac;
+                    }
+                    mac.init(key.spec);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+                macKeys[slot] = key;
+            }
+            return mac;
+        }
+
+        private static void putLong(byte[] array, int idx, long value) {
+            putInt(array, idx, (int) (value >>> 32));
+            putInt(array, idx + Integer.BYTES, (int) value);
+        }
+
+        private static void putInt(byte[] array, int idx, int value) {
+            array[idx] = (byte) (value >>> 24);
+            array[idx + 1] = (byte) (value >>> 16);
+            array[idx + 2] = (byte) (value >>> 8);
+            array[idx + 3] = (byte) value;
+        }
+    }
+}
@@ -15,26 +15,42 @@
  */
 package io.netty.incubator.codec.quic;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.ObjectUtil;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Arrays;
 
-import io.netty.util.internal.ObjectUtil;
-import org.apache.commons.codec.digest.HmacAlgorithms;
-import org.apache.commons.codec.digest.HmacUtils;
-
 /**
  * A {@link QuicConnectionIdGenerator} which creates new connection id by signing the given input
  * using hmac algorithms.
  */
 final class HmacSignQuicConnectionIdGenerator implements QuicConnectionIdGenerator {
     static final QuicConnectionIdGenerator INSTANCE = new HmacSignQuicConnectionIdGenerator();
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
     private static final byte[] randomKey = new byte[16];
 
     static {
         new SecureRandom().nextBytes(randomKey);
     }
 
+    private static final SecretKeySpec KEY = new SecretKeySpec(randomKey, ALGORITHM);
+
+    // Creating and initializing a Mac is expensive, so cache the state per thread. This allows us to sign without any
+    // allocations.
+    private static final FastThreadLocal<MacState> MAC_STATE = new FastThreadLocal<MacState>() {
+        @Override
+        protected MacState initialValue() {
+            return new MacState();
+        }
+    };
+
     private HmacSignQuicConnectionIdGenerator() {
     }
 
@@ -50,11 +66,28 @@ final class HmacSignQuicConnectionIdGenerator implements QuicConnectionIdGenerat
         ObjectUtil.checkPositive(buffer.remaining(), "buffer");
         ObjectUtil.checkInRange(length, 0, maxConnectionIdLength(), "length");
 
-        byte[] signBytes = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, randomKey).hmac(buffer);
-        if (signBytes.length != length) {
-            signBytes = Arrays.copyOf(signBytes, length);
-        }
-        return ByteBuffer.wrap(signBytes);
+        MacState state = MAC_STATE.get();
+        int position = buffer.position();
+        state.mac.update(buffer);
+        buffer.position(position);
+        return ByteBuffer.wrap(Arrays.copyOf(state.doFinal(), length));
+    }
+
+    @Override
+    public void writeId(ByteBuf out, int length) {
+        throw new UnsupportedOperationException(
+                "HmacSignQuicConnectionIdGenerator should always have an input to sign with");
+    }
+
+    @Override
+    public void writeId(ByteBuf input, ByteBuf out, int length) {
+        ObjectUtil.checkNotNull(input, "input");
+        ObjectUtil.checkPositive(input.readableBytes(), "input");
+        ObjectUtil.checkInRange(length, 0, maxConnectionIdLength(), "length");
+
+        MacState state = MAC_STATE.get();
+        state.update(input);
+        out.writeBytes(state.doFinal(), 0, length);
     }
 
     @Override
@@ -66,4 +99,46 @@ final class HmacSignQuicConnectionIdGenerator implements QuicConnectionIdGenerat
     public boolean isIdempotent() {
         return true;
     }
+
+    private static final class MacState {
+        final Mac mac;
+        private final byte[] scratch = new byte[64];
+        private final byte[] out = new byte[MAC_LENGTH];
+
+        MacState() {
+            try {
+                mac = Mac.getInstance(ALGORITHM);
+                mac.init(KEY);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void update(ByteBuf input) {
+            int idx = input.readerIndex();
+            int remaining = input.readableBytes();
+            if (input.hasArray()) {
+                mac.update(input.array(), input.arrayOffset() + idx, remaining);
+                return;
+            }
+            // Copy the bytes in chunks so we don't need to allocate a ByteBuffer.
+            while (remaining > 0) {
+                int len = Math.min(remaining, scratch.length);
+                input.getBytes(idx, scratch, 0, len);
+                mac.update(scratch, 0, len);
+                idx += len;
+                remaining -= len;
+            }
+        }
+
+        byte[] doFinal() {
+            try {
+                // This also resets the Mac, so it can be used again.
+                mac.doFinal(out, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            return out;
+        }
+    }
 }
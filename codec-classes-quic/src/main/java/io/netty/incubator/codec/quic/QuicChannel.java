@@ -200,6 +200,52 @@ public interface QuicChannel extends Channel {
     Future<QuicStreamChannel> createStream(QuicStreamType type, ChannelHandler handler,
                                            Promise<QuicStreamChannel> promise);
 
+    /**
+     * Handle all streams for which no {@link QuicStreamChannel} exists via the given {@link QuicStreamCallback}
+     * instead, or {@code null} to create a {@link QuicStreamChannel} for each of them again. This is meant for
+     * short-lived streams that don't need the features of a {@link io.netty.channel.ChannelPipeline}.
+     * <p>
+     * To also handle the streams that are opened by the remote peer, this should be set before any of these
+     * are read, for example in {@link ChannelHandler#handlerAdded(io.netty.channel.ChannelHandlerContext)}.
+     *
+     * @param callback  the {@link QuicStreamCallback} or {@code null}.
+     */
+    void streamCallback(QuicStreamCallback callback);
+
+    /**
+     * Opens a stream that is handled by the {@link QuicStreamCallback} and returns its id. This method must be called
+     * from the {@link io.netty.channel.EventLoop}.
+     *
+     * @param type      the {@link QuicStreamType} of the stream.
+     * @return          the id of the stream.
+     * @throws Exception    if the stream could not be opened, for example because of the stream limit.
+     */
+    long openStream(QuicStreamType type) throws Exception;
+
+    /**
+     * Writes as much of the given {@link ByteBuf} to a stream that is handled by the {@link QuicStreamCallback} as
+     * the flow-control allows. The readerIndex of the {@link ByteBuf} is increased by the number of bytes that were
+     * written and the caller keeps the ownership. If not everything could be written
+     * {@link QuicStreamCallback#streamWritable(QuicChannel, long)} is called once more can be written. The FIN is only
+     * sent once all the data was written. This method must be called from the {@link io.netty.channel.EventLoop}.
+     *
+     * @param streamId  the id of the stream.
+     * @param buffer    the data to write.
+     * @param fin       {@code true} if this is the last data of the stream.
+     * @return          the number of bytes written.
+     * @throws Exception    if the stream can not be written to.
+     */
+    int writeStream(long streamId, ByteBuf buffer, boolean fin) throws Exception;
+
+    /**
+     * Resets a stream that is handled by the {@link QuicStreamCallback} in both directions.
+     *
+     * @param streamId  the id of the stream.
+     * @param error     the application error code to signal to the remote peer.
+     * @return          the {@link ChannelFuture} that is notified once the operation completes.
+     */
+    ChannelFuture resetStream(long streamId, int error);
+
     /**
      * Returns a new {@link QuicStreamChannelBootstrap} which makes it easy to bootstrap new {@link QuicStreamChannel}s
      * with custom options and attributes. For simpler use-cases you may want to consider using
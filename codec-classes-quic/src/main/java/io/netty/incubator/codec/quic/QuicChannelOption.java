@@ -43,6 +43,26 @@ public final class QuicChannelOption<T> extends ChannelOption<T> {
     public static final ChannelOption<SegmentedDatagramPacketAllocator> SEGMENTED_DATAGRAM_PACKET_ALLOCATOR =
             valueOf(QuicChannelOption.class, "SEGMENTED_DATAGRAM_PACKET_ALLOCATOR");
 
+    /**
+     * The maximum number of bytes that are read from a single {@link QuicStreamChannel} before the other readable
+     * streams of the same {@link QuicChannel} get their turn. Streams that still have data left continue in the next
+     * round, which is scheduled on the {@link io.netty.channel.EventLoop}. Streams with a smaller
+     * {@link QuicStreamPriority#urgency()} are read first. A value of {@code 0} disables the limit.
+     */
+    public static final ChannelOption<Integer> STREAM_READ_BUDGET =
+            valueOf(QuicChannelOption.class, "STREAM_READ_BUDGET");
+
+    /**
+     * The maximum number of closed {@link QuicStreamChannel}s, that were created by the remote peer, that are kept
+     * per {@link QuicChannel} and reused for the next streams of the remote peer. A value of {@code 0}, which is the
+     * default, disables the reuse.
+     * <p>
+     * Only enable this if your handlers don't keep any references to a {@link QuicStreamChannel} after it was closed
+     * and unregistered, as the same instance will represent a different stream afterwards.
+     */
+    public static final ChannelOption<Integer> STREAM_CHANNEL_POOL_SIZE =
+            valueOf(QuicChannelOption.class, "STREAM_CHANNEL_POOL_SIZE");
+
     @SuppressWarnings({ "deprecation" })
     private QuicChannelOption() {
         super(null);
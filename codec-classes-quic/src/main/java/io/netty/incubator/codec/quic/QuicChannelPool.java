@@ -0,0 +1,306 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.internal.ObjectUtil;
+
+import java.io.Closeable;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Pool of client {@link QuicChannel}s that are re-used to create {@link QuicStreamChannel}s, so creating a stream
+ * usually does not require a new handshake.
+ * <p>
+ * For each remote peer the pool keeps its connections open and creates new streams on the connection that has the
+ * most stream credit left (see {@link QuicChannel#peerAllowedStreams(QuicStreamType)}). A new connection is only
+ * opened once all existing connections to the peer used up their credit. If the maximum number of connections is
+ * reached as well, stream creation is delayed until a peer grants more streams (which is signaled via
+ * {@link QuicStreamLimitChangedEvent}) or one of the connections is closed.
+ * <p>
+ * All connections are created with the same parent {@link Channel} and so share its {@link EventLoop}, which is also
+ * used for the state of the pool.
+ */
+public final class QuicChannelPool implements Closeable {
+
+    private final Channel parent;
+    private final EventLoop eventLoop;
+    private final Consumer<? super QuicChannelBootstrap> bootstrapInitializer;
+    private final int maxConnectionsPerRemote;
+    private final Map<SocketAddress, RemotePool> pools = new HashMap<>();
+    private boolean closed;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param parent                    the {@link Channel} that uses the {@link QuicClientCodecBuilder} codec and
+     *                                  is used as parent for all {@link QuicChannel}s.
+     * @param bootstrapInitializer      initializes the {@link QuicChannelBootstrap} for every new connection, the
+     *                                  remote address is set by the pool.
+     * @param maxConnectionsPerRemote   the maximum number of connections per remote peer.
+     */
+    public QuicChannelPool(Channel parent, Consumer<? super QuicChannelBootstrap> bootstrapInitializer,
+                           int maxConnectionsPerRemote) {
+        this.parent = ObjectUtil.checkNotNull(parent, "parent");
+        this.eventLoop = parent.eventLoop();
+        this.bootstrapInitializer = ObjectUtil.checkNotNull(bootstrapInitializer, "bootstrapInitializer");
+        this.maxConnectionsPerRemote = ObjectUtil.checkPositive(maxConnectionsPerRemote, "maxConnectionsPerRemote");
+    }
+
+    /**
+     * Creates a new {@link QuicStreamChannel} to the given remote peer.
+     *
+     * @param remote    the remote address of the peer.
+     * @param type      the {@link QuicStreamType} of the stream.
+     * @param handler   the {@link ChannelHandler} that is added to the pipeline of the stream or {@code null}.
+     * @return          the {@link Future} that is notified once the stream was created.
+     */
+    public Future<QuicStreamChannel> newStream(SocketAddress remote, QuicStreamType type, ChannelHandler handler) {
+        ObjectUtil.checkNotNull(remote, "remote");
+        ObjectUtil.checkNotNull(type, "type");
+        Promise<QuicStreamChannel> promise = eventLoop.newPromise();
+        PendingStream pending = new PendingStream(type, handler, promise);
+        if (eventLoop.inEventLoop()) {
+            newStream0(remote, pending);
+        } else {
+            eventLoop.execute(() -> newStream0(remote, pending));
+        }
+        return promise;
+    }
+
+    private void newStream0(SocketAddress remote, PendingStream pending) {
+        if (closed) {
+            pending.promise.tryFailure(new IllegalStateException("QuicChannelPool closed"));
+            return;
+        }
+        RemotePool pool = pools.get(remote);
+        if (pool == null) {
+            pool = new RemotePool(remote);
+            pools.put(remote, pool);
+        }
+        // Always queue so streams are created in the order they were requested.
+        pool.pending.add(pending);
+        pool.createStreams();
+    }
+
+    /**
+     * Close the pool and all its connections. Streams that were not created yet are failed.
+     */
+    @Override
+    public void close() {
+        if (eventLoop.inEventLoop()) {
+            close0();
+        } else {
+            eventLoop.execute(this::close0);
+        }
+    }
+
+    private void close0() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (RemotePool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+    }
+
+    private final class RemotePool {
+        private final SocketAddress remote;
+        private final List<QuicChannel> connections = new ArrayList<>();
+        private final ArrayDeque<PendingStream> pending = new ArrayDeque<>();
+        private Future<QuicChannel> connectFuture;
+        // Connections that did not learn about their stream credit yet.
+        private int warming;
+
+        RemotePool(SocketAddress remote) {
+            this.remote = remote;
+        }
+
+        void createStreams() {
+            for (;;) {
+                PendingStream stream = pending.peek();
+                if (stream == null) {
+                    return;
+                }
+                if (stream.promise.isDone()) {
+                    // Cancelled by the user.
+                    pending.poll();
+                    continue;
+                }
+                QuicChannel channel = select(stream.type);
+                if (channel == null) {
+                    connectIfNeeded();
+                    return;
+                }
+                pending.poll();
+                // This will consume the stream credit right away as we are on the EventLoop.
+                channel.createStream(stream.type, stream.handler).addListener(f -> {
+                    if (f.isSuccess()) {
+                        if (!stream.promise.trySuccess((QuicStreamChannel) f.getNow())) {
+                            ((QuicStreamChannel) f.getNow()).close();
+                        }
+                    } else {
+                        stream.promise.tryFailure(f.cause());
+                    }
+                });
+            }
+        }
+
+        /**
+         * Returns the connection with the most stream credit left or {@code null} if all are saturated.
+         */
+        private QuicChannel select(QuicStreamType type) {
+            QuicChannel selected = null;
+            long selectedCredit = 0;
+            for (QuicChannel channel : connections) {
+                long credit = channel.peerAllowedStreams(type);
+                if (credit > selectedCredit && channel.isActive()) {
+                    selected = channel;
+                    selectedCredit = credit;
+                }
+            }
+            return selected;
+        }
+
+        private void connectIfNeeded() {
+            if (connectFuture != null || warming > 0 || connections.size() >= maxConnectionsPerRemote) {
+                // Either a new connection is on its way or we need to wait for more credit.
+                return;
+            }
+            QuicChannelBootstrap bootstrap = QuicChannel.newBootstrap(parent);
+            bootstrapInitializer.accept(bootstrap);
+            Future<QuicChannel> future;
+            try {
+                future = bootstrap.remoteAddress(remote).connect();
+            } catch (Throwable cause) {
+                failPending(cause);
+                return;
+            }
+            connectFuture = future;
+            future.addListener(f -> {
+                connectFuture = null;
+                if (f.isSuccess()) {
+                    QuicChannel channel = future.getNow();
+                    if (closed) {
+                        channel.close();
+                        return;
+                    }
+                    if (channel.isActive()) {
+                        connections.add(channel);
+                        channel.pipeline().addFirst(new ConnectionHandler(this, channel));
+                    }
+                    createStreams();
+                } else if (connections.isEmpty()) {
+                    // There is no connection that could give us more credit later on, so fail all pending streams.
+                    failPending(f.cause());
+                }
+            });
+        }
+
+        void connectionClosed(QuicChannel channel) {
+            if (connections.remove(channel) && !closed) {
+                // Open a new connection if there are still streams waiting.
+                createStreams();
+            }
+        }
+
+        private void failPending(Throwable cause) {
+            for (;;) {
+                PendingStream stream = pending.poll();
+                if (stream == null) {
+                    return;
+                }
+                stream.promise.tryFailure(cause);
+            }
+        }
+
+        void close() {
+            failPending(new IllegalStateException("QuicChannelPool closed"));
+            for (QuicChannel channel : connections.toArray(new QuicChannel[0])) {
+                channel.close();
+            }
+            connections.clear();
+        }
+    }
+
+    /**
+     * Notifies the pool once the stream credit of a connection changes or the connection is closed.
+     */
+    private static final class ConnectionHandler extends ChannelInboundHandlerAdapter {
+        private final RemotePool pool;
+        private boolean warming;
+
+        ConnectionHandler(RemotePool pool, QuicChannel channel) {
+            this.pool = pool;
+            // The stream credit is usually only known once the first packets after the handshake were processed.
+            // Until then we should not open another connection.
+            if (channel.peerAllowedStreams(QuicStreamType.BIDIRECTIONAL) == 0 &&
+                    channel.peerAllowedStreams(QuicStreamType.UNIDIRECTIONAL) == 0) {
+                warming = true;
+                pool.warming++;
+            }
+        }
+
+        private void warmedUp() {
+            if (warming) {
+                warming = false;
+                pool.warming--;
+            }
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+            if (evt instanceof QuicStreamLimitChangedEvent) {
+                warmedUp();
+                pool.createStreams();
+            }
+            ctx.fireUserEventTriggered(evt);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            warmedUp();
+            pool.connectionClosed((QuicChannel) ctx.channel());
+            ctx.fireChannelInactive();
+        }
+    }
+
+    private static final class PendingStream {
+        final QuicStreamType type;
+        final ChannelHandler handler;
+        final Promise<QuicStreamChannel> promise;
+
+        PendingStream(QuicStreamType type, ChannelHandler handler, Promise<QuicStreamChannel> promise) {
+            this.type = type;
+            this.handler = handler;
+            this.promise = promise;
+        }
+    }
+}
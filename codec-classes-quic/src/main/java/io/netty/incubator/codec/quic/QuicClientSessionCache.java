@@ -18,9 +18,12 @@ package io.netty.incubator.codec.quic;
 import io.netty.util.AsciiString;
 import io.netty.util.internal.SystemPropertyUtil;
 
+import java.util.ArrayDeque;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 final class QuicClientSessionCache {
@@ -36,58 +39,92 @@ final class QuicClientSessionCache {
         }
     }
 
+    // Servers usually send more than one ticket, let's keep a few of them so concurrent connections to the same peer
+    // can all resume a session, even if the tickets are single-use.
+    static final int MAX_SESSIONS_PER_PEER = 4;
+
     private final AtomicInteger maximumCacheSize = new AtomicInteger(DEFAULT_CACHE_SIZE);
 
     // Let's use the same default value as OpenSSL does.
     // See https://www.openssl.org/docs/man1.1.1/man3/SSL_get_default_timeout.html
     private final AtomicInteger sessionTimeout = new AtomicInteger(300);
-    private int sessionCounter;
 
-    private final Map<HostPort, SessionHolder> sessions =
-            new LinkedHashMap<HostPort, SessionHolder>() {
+    // Each peer has its own pool of sessions, which is guarded by its own lock. This way connections to different
+    // peers never contend with each other.
+    private final ConcurrentMap<HostPort, SessionPool> sessions = new ConcurrentHashMap<>();
+    // All pools in insertion order, used to evict peers via the CLOCK algorithm. This approximates LRU order without
+    // the need to reorder anything when a peer is used. Pools that were removed by other means are only dropped
+    // from here once we come across them.
+    private final Queue<SessionPool> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger clockSize = new AtomicInteger();
 
-                private static final long serialVersionUID = -7773696788135734448L;
+    private volatile QuicClientSessionStore store;
 
-                @Override
-                protected boolean removeEldestEntry(Map.Entry<HostPort, SessionHolder> eldest) {
-                    int maxSize = maximumCacheSize.get();
-                    return maxSize >= 0 && size() > maxSize;
-                }
-            };
+    /**
+     * Load all sessions from the given store and persist all changes to it from now on.
+     */
+    void setSessionStore(QuicClientSessionStore store) {
+        // Load before we set the field so the sessions we just loaded are not written again.
+        store.load(this);
+        this.store = store;
+    }
 
     void saveSession(String host, int port, long creationTime, long timeout, byte[] session, boolean isSingleUse) {
         HostPort hostPort = keyFor(host, port);
-        if (hostPort != null) {
-            synchronized (sessions) {
-                // Mimic what OpenSSL is doing and expunge every 255 new sessions
-                // See https://www.openssl.org/docs/man1.0.2/man3/SSL_CTX_flush_sessions.html
-                if (++sessionCounter == 255) {
-                    sessionCounter = 0;
-                    expungeInvalidSessions();
+        if (hostPort == null) {
+            return;
+        }
+        int maxSize = maximumCacheSize.get();
+        if (maxSize == 0) {
+            return;
+        }
+        QuicClientSessionStore store = this.store;
+        if (store != null) {
+            // Persist the session before it can be found in the cache, so a removal of it is never written before
+            // the session itself.
+            store.sessionSaved(host, port, creationTime, timeout, session, isSingleUse);
+        }
+        SessionHolder sessionHolder = new SessionHolder(creationTime, timeout, session, isSingleUse);
+        for (;;) {
+            SessionPool pool = sessions.get(hostPort);
+            if (pool == null) {
+                SessionPool newPool = new SessionPool(hostPort, sessionHolder);
+                pool = sessions.putIfAbsent(hostPort, newPool);
+                if (pool == null) {
+                    addToClock(newPool);
+                    if (maxSize > 0 && sessions.size() > maxSize) {
+                        evict(maxSize, newPool);
+                    }
+                    return;
                 }
-
-                sessions.put(hostPort, new SessionHolder(creationTime, timeout, session, isSingleUse));
             }
+            if (pool.add(sessionHolder, store)) {
+                return;
+            }
+            // The pool was removed in the meantime, ensure it is not in the cache anymore and try again.
+            sessions.remove(hostPort, pool);
         }
     }
 
     byte[] getSession(String host, int port) {
         HostPort hostPort = keyFor(host, port);
         if (hostPort != null) {
-            SessionHolder sessionHolder;
-            synchronized (sessions) {
-                sessionHolder = sessions.get(hostPort);
-                if (sessionHolder == null) {
-                    return null;
+            SessionPool pool = sessions.get(hostPort);
+            if (pool != null) {
+                SessionHolder sessionHolder = pool.poll(System.currentTimeMillis());
+                if (pool.isRemoved()) {
+                    sessions.remove(hostPort, pool);
                 }
-                if (sessionHolder.isSingleUse()) {
-                    // Remove session as it should only be re-used once.
-                    sessions.remove(hostPort);
+                if (sessionHolder != null) {
+                    if (sessionHolder.isSingleUse()) {
+                        QuicClientSessionStore store = this.store;
+                        if (store != null) {
+                            store.sessionRemoved(host, port, sessionHolder.sessionBytes());
+                        }
+                    }
+                    return sessionHolder.sessionBytes();
                 }
             }
-            if (sessionHolder.isValid()) {
-                return sessionHolder.sessionBytes();
-            }
         }
         return null;
     }
@@ -95,8 +132,14 @@ final class QuicClientSessionCache {
     void removeSession(String host, int port) {
         HostPort hostPort = keyFor(host, port);
         if (hostPort != null) {
-            synchronized (sessions) {
-                sessions.remove(hostPort);
+            SessionPool pool = sessions.remove(hostPort);
+            if (pool != null) {
+                // The store forgets all sessions of the peer at once.
+                pool.remove(null);
+            }
+            QuicClientSessionStore store = this.store;
+            if (store != null) {
+                store.peerRemoved(host, port);
             }
         }
     }
@@ -104,8 +147,7 @@ final class QuicClientSessionCache {
     void setSessionTimeout(int seconds) {
         int oldTimeout = sessionTimeout.getAndSet(seconds);
         if (oldTimeout > seconds) {
-            // Drain the whole cache as this way we can use the ordering of the LinkedHashMap to detect early
-            // if there are any other sessions left that are invalid.
+            // Just keep it simple for now and drain the whole cache.
             clear();
         }
     }
@@ -130,29 +172,69 @@ final class QuicClientSessionCache {
      * Clear the cache and free all cached SSL_SESSION*.
      */
     void clear() {
-        synchronized (sessions) {
-            sessions.clear();
+        QuicClientSessionStore store = this.store;
+        Iterator<SessionPool> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            SessionPool pool = iterator.next();
+            iterator.remove();
+            pool.remove(store);
+        }
+        while (clock.poll() != null) {
+            clockSize.decrementAndGet();
         }
     }
 
+    private void addToClock(SessionPool pool) {
+        clock.offer(pool);
+        if (clockSize.incrementAndGet() > 2 * sessions.size() + 16) {
+            // Many of the pools in the clock were removed already, advance the hand a bit so these are dropped
+            // over time.
+            dropIfRemoved(clock.poll());
+            dropIfRemoved(clock.poll());
+        }
+    }
 
-    private void expungeInvalidSessions() {
-        assert Thread.holdsLock(sessions);
-
-        if (sessions.isEmpty()) {
+    /**
+     * Drop the given pool from the clock if it was removed from the cache already, otherwise put it back.
+     */
+    private void dropIfRemoved(SessionPool pool) {
+        if (pool == null) {
             return;
         }
+        if (sessions.get(pool.key) != pool) {
+            clockSize.decrementAndGet();
+        } else {
+            clock.offer(pool);
+        }
+    }
+
+    /**
+     * Remove peers until there are at most {@code maxSize} left, in approximate least recently used order. The peer
+     * that was just added is never removed.
+     */
+    private void evict(int maxSize, SessionPool added) {
+        QuicClientSessionStore store = this.store;
         long now = System.currentTimeMillis();
-        Iterator<Map.Entry<HostPort, SessionHolder>> iterator = sessions.entrySet().iterator();
-        while (iterator.hasNext()) {
-            SessionHolder sessionHolder = iterator.next().getValue();
-            // As we use a LinkedHashMap we can break the while loop as soon as we find a valid session.
-            // This is true as we always drain the cache as soon as we change the timeout to a smaller value as
-            // it was set before. This way its true that the insertion order matches the timeout order.
-            if (sessionHolder.isValid(now)) {
-                break;
+        // Each pool is passed at most twice before it is removed, bound the loop in case of concurrent updates.
+        for (int i = 2 * clockSize.get() + 1; i > 0 && sessions.size() > maxSize; i--) {
+            SessionPool pool = clock.poll();
+            if (pool == null) {
+                return;
             }
-            iterator.remove();
+            if (sessions.get(pool.key) != pool) {
+                // Already removed from the cache.
+                clockSize.decrementAndGet();
+                continue;
+            }
+            // Peers that were used since the hand passed them the last time get a second chance, unless all of
+            // their sessions expired.
+            if (pool == added || pool.clearReferenced() && !pool.removeIfExpired(now)) {
+                clock.offer(pool);
+                continue;
+            }
+            clockSize.decrementAndGet();
+            sessions.remove(pool.key, pool);
+            pool.remove(store);
         }
     }
 
@@ -163,6 +245,108 @@ final class QuicClientSessionCache {
         return new HostPort(host, port);
     }
 
+    /**
+     * The sessions of a single peer, ordered from the oldest to the newest.
+     */
+    private static final class SessionPool {
+        private final ArrayDeque<SessionHolder> sessions = new ArrayDeque<>(MAX_SESSIONS_PER_PEER);
+        final HostPort key;
+        private boolean removed;
+        // Set when the pool is used and cleared by the hand of the clock.
+        private volatile boolean referenced;
+
+        SessionPool(HostPort key, SessionHolder sessionHolder) {
+            this.key = key;
+            sessions.add(sessionHolder);
+        }
+
+        /**
+         * Clear the referenced bit and return its previous value.
+         */
+        boolean clearReferenced() {
+            if (referenced) {
+                referenced = false;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Add the session and returns {@code true} or {@code false} if the pool was removed from the cache already.
+         * If the pool is full the oldest session is dropped, which is reported to the given store.
+         */
+        synchronized boolean add(SessionHolder sessionHolder, QuicClientSessionStore store) {
+            if (removed) {
+                return false;
+            }
+            if (sessions.size() == MAX_SESSIONS_PER_PEER) {
+                SessionHolder dropped = sessions.pollFirst();
+                if (store != null) {
+                    store.sessionRemoved(key.host, key.port, dropped.sessionBytes());
+                }
+            }
+            sessions.addLast(sessionHolder);
+            referenced = true;
+            return true;
+        }
+
+        /**
+         * Returns the newest valid session or {@code null} if there is none. Single-use sessions are removed, and
+         * expired sessions are dropped while we look for a valid one.
+         */
+        synchronized SessionHolder poll(long now) {
+            for (;;) {
+                SessionHolder sessionHolder = sessions.peekLast();
+                if (sessionHolder == null) {
+                    // Remove the pool so the cache does not grow with peers without any sessions.
+                    removed = true;
+                    return null;
+                }
+                if (!sessionHolder.isValid(now)) {
+                    sessions.pollLast();
+                    continue;
+                }
+                if (sessionHolder.isSingleUse()) {
+                    // Remove session as it should only be re-used once.
+                    sessions.pollLast();
+                    if (sessions.isEmpty()) {
+                        removed = true;
+                    }
+                }
+                referenced = true;
+                return sessionHolder;
+            }
+        }
+
+        /**
+         * Drop all expired sessions and returns {@code true} if the pool was removed as no valid session was left.
+         */
+        synchronized boolean removeIfExpired(long now) {
+            sessions.removeIf(sessionHolder -> !sessionHolder.isValid(now));
+            if (sessions.isEmpty()) {
+                removed = true;
+            }
+            return removed;
+        }
+
+        /**
+         * Remove all sessions and report each of them to the given store, if any.
+         */
+        synchronized void remove(QuicClientSessionStore store) {
+            if (store != null) {
+                for (SessionHolder sessionHolder : sessions) {
+                    store.sessionRemoved(key.host, key.port, sessionHolder.sessionBytes());
+                }
+            }
+            sessions.clear();
+            removed = true;
+        }
+
+        synchronized boolean isRemoved() {
+            return removed;
+        }
+    }
+
     private static final class SessionHolder {
         private final long creationTime;
         private final long timeout;
@@ -176,10 +360,6 @@ final class QuicClientSessionCache {
             this.isSingleUse = isSingleUse;
         }
 
-        boolean isValid() {
-            return isValid(System.currentTimeMillis());
-        }
-
         boolean isValid(long current) {
             return current <= creationTime + timeout;
         }
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the sessions of a client {@link QuicSslContext} in a file, so these can be used to resume sessions (and
+ * send 0-RTT data) right after a restart.
+ * <p>
+ * The file is loaded once when the store is used to build a {@link QuicSslContext} (see
+ * {@link QuicSslContextBuilder#sessionStore(QuicClientSessionStore)}), and only sessions that are still valid are
+ * kept. After that all changes to the session cache are appended to the file asynchronously, so the EventLoop never
+ * blocks on disk I/O. The file is compacted when it is loaded and whenever it grew too large.
+ * <p>
+ * The file contains the secrets that are needed to resume the sessions, so it should be protected in the same way
+ * as private keys are. On file systems that support it, the file is only readable by its owner.
+ */
+public final class QuicClientSessionStore implements Closeable {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(QuicClientSessionStore.class);
+
+    private static final int MAGIC = 0x51534553;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+    // length + crc
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private static final byte TYPE_SAVED = 1;
+    private static final byte TYPE_REMOVED = 2;
+    private static final byte TYPE_PEER_REMOVED = 3;
+
+    private final Path file;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final Queue<Record> pending = PlatformDependent.newMpscQueue();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private final AtomicBoolean attached = new AtomicBoolean();
+    private final Runnable writeTask = this::writePending;
+
+    // The following fields are only accessed while loading and by the writeTask afterwards.
+    private final Map<Long, Record> sessions = new LinkedHashMap<>();
+    private FileChannel channel;
+    private long fileSize;
+    private long liveSize;
+
+    private volatile boolean closed;
+
+    private QuicClientSessionStore(Path file, Executor executor, ExecutorService ownedExecutor) {
+        this.file = file;
+        this.executor = executor;
+        this.ownedExecutor = ownedExecutor;
+    }
+
+    /**
+     * Creates a new store that uses its own thread to write to the given file.
+     *
+     * @param file  the file to use, it is created if it does not exist yet.
+     * @return      the store.
+     */
+    public static QuicClientSessionStore newStore(Path file) {
+        ObjectUtil.checkNotNull(file, "file");
+        ExecutorService executor = Executors.newSingleThreadExecutor(
+                new DefaultThreadFactory(QuicClientSessionStore.class, true));
+        return new QuicClientSessionStore(file, executor, executor);
+    }
+
+    /**
+     * Creates a new store that uses the given {@link Executor} to write to the given file. Writes are never executed
+     * concurrently.
+     *
+     * @param file      the file to use, it is created if it does not exist yet.
+     * @param executor  the {@link Executor} that is used to write to the file.
+     * @return          the store.
+     */
+    public static QuicClientSessionStore newStore(Path file, Executor executor) {
+        return new QuicClientSessionStore(ObjectUtil.checkNotNull(file, "file"),
+                ObjectUtil.checkNotNull(executor, "executor"), null);
+    }
+
+    /**
+     * Load all valid sessions into the given cache, after this all changes to the cache are persisted.
+     */
+    void load(QuicClientSessionCache cache) {
+        if (!attached.compareAndSet(false, true)) {
+            throw new IllegalStateException("QuicClientSessionStore can only be used by one QuicSslContext");
+        }
+        try {
+            if (Files.exists(file)) {
+                read(Files.readAllBytes(file));
+            }
+            compact();
+        } catch (IOException e) {
+            logger.warn("Unable to load sessions from {}, sessions will not be persisted", file, e);
+            closed = true;
+            return;
+        }
+        for (Record record : sessions.values()) {
+            cache.saveSession(record.host, record.port, record.creationTime, record.timeout, record.session,
+                    record.singleUse);
+        }
+    }
+
+    void sessionSaved(String host, int port, long creationTime, long timeout, byte[] session, boolean singleUse) {
+        write(new Record(TYPE_SAVED, host, port, creationTime, timeout, singleUse, session, digest(session)));
+    }
+
+    /**
+     * The session was used (if it is single-use) or dropped by the cache.
+     */
+    void sessionRemoved(String host, int port, byte[] session) {
+        write(new Record(TYPE_REMOVED, host, port, 0, 0, false, null, digest(session)));
+    }
+
+    void peerRemoved(String host, int port) {
+        write(new Record(TYPE_PEER_REMOVED, host, port, 0, 0, false, null, 0));
+    }
+
+    private void write(Record record) {
+        if (closed) {
+            return;
+        }
+        pending.add(record);
+        if (writeScheduled.compareAndSet(false, true)) {
+            executor.execute(writeTask);
+        }
+    }
+
+    private void writePending() {
+        // Reset the flag before we drain the queue, so we never miss a record that is added concurrently.
+        writeScheduled.set(false);
+        if (channel == null) {
+            pending.clear();
+            return;
+        }
+        try {
+            for (;;) {
+                Record record = pending.poll();
+                if (record == null) {
+                    break;
+                }
+                apply(record);
+                ByteBuffer encoded = record.encode();
+                fileSize += encoded.remaining();
+                writeFully(channel, encoded);
+            }
+            if (fileSize > MIN_COMPACTION_SIZE && fileSize > 2 * liveSize) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to persist sessions to {}, sessions will not be persisted anymore", file, e);
+            closed = true;
+            closeChannel();
+        }
+    }
+
+    /**
+     * Close the store. Pending changes are still written to the file.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        executor.execute(() -> {
+            writePending();
+            closeChannel();
+        });
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+            try {
+                ownedExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close {}", file, e);
+            }
+            channel = null;
+        }
+    }
+
+    private void read(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            logger.debug("Ignoring {} as it is not a session store file", file);
+            return;
+        }
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE || length > buffer.remaining()) {
+                // Most likely a partial write, ignore everything that follows.
+                break;
+            }
+            crc.reset();
+            crc.update(bytes, buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            ByteBuffer body = buffer.slice();
+            body.limit(length);
+            buffer.position(buffer.position() + length);
+            apply(Record.decode(body));
+        }
+    }
+
+    private void apply(Record record) {
+        switch (record.type) {
+            case TYPE_SAVED:
+                sessions.put(record.digest, record);
+                break;
+            case TYPE_REMOVED:
+                sessions.remove(record.digest);
+                break;
+            case TYPE_PEER_REMOVED:
+                sessions.values().removeIf(r -> r.port == record.port && r.host.equalsIgnoreCase(record.host));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Write all valid sessions to a new file and replace the current file with it.
+     */
+    private void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long size = HEADER_SIZE;
+        try (FileChannel out = open(tmp)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(VERSION);
+            header.flip();
+            writeFully(out, header);
+            Iterator<Record> iterator = sessions.values().iterator();
+            while (iterator.hasNext()) {
+                Record record = iterator.next();
+                if (now > record.creationTime + record.timeout) {
+                    iterator.remove();
+                    continue;
+                }
+                ByteBuffer encoded = record.encode();
+                size += encoded.remaining();
+                writeFully(out, encoded);
+            }
+            out.force(true);
+        }
+        closeChannel();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = size;
+        liveSize = size;
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            FileAttribute<?> ownerOnly = PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rw-------"));
+            Files.deleteIfExists(path);
+            return FileChannel.open(path, EnumSet.of(StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE), ownerOnly);
+        }
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // FNV-1a, we only need to be able to find a session again.
+    private static long digest(byte[] session) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : session) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static final class Record {
+        final byte type;
+        final String host;
+        final int port;
+        final long creationTime;
+        final long timeout;
+        final boolean singleUse;
+        final byte[] session;
+        final long digest;
+
+        Record(byte type, String host, int port, long creationTime, long timeout, boolean singleUse,
+               byte[] session, long digest) {
+            this.type = type;
+            this.host = host == null ? "" : host;
+            this.port = port;
+            this.creationTime = creationTime;
+            this.timeout = timeout;
+            this.singleUse = singleUse;
+            this.session = session;
+            this.digest = digest;
+        }
+
+        ByteBuffer encode() {
+            byte[] hostBytes = host.getBytes(StandardCharsets.UTF_8);
+            int length = 1 + 2 + hostBytes.length + 4 + 8;
+            if (type == TYPE_SAVED) {
+                length += 8 + 8 + 1 + 4 + session.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+            buffer.position(RECORD_HEADER_SIZE);
+            buffer.put(type).putShort((short) hostBytes.length).put(hostBytes).putInt(port).putLong(digest);
+            if (type == TYPE_SAVED) {
+                buffer.putLong(creationTime).putLong(timeout).put((byte) (singleUse ? 1 : 0))
+                        .putInt(session.length).put(session);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), RECORD_HEADER_SIZE, length);
+            buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+            buffer.flip();
+            return buffer;
+        }
+
+        static Record decode(ByteBuffer buffer) {
+            byte type = buffer.get();
+            byte[] hostBytes = new byte[buffer.getShort() & 0xffff];
+            buffer.get(hostBytes);
+            int port = buffer.getInt();
+            long digest = buffer.getLong();
+            if (type != TYPE_SAVED) {
+                return new Record(type, new String(hostBytes, StandardCharsets.UTF_8), port, 0, 0, false, null,
+                        digest);
+            }
+            long creationTime = buffer.getLong();
+            long timeout = buffer.getLong();
+            boolean singleUse = buffer.get() != 0;
+            byte[] session = new byte[buffer.getInt()];
+            buffer.get(session);
+            return new Record(type, new String(hostBytes, StandardCharsets.UTF_8), port, creationTime, timeout,
+                    singleUse, session, digest);
+        }
+    }
+}
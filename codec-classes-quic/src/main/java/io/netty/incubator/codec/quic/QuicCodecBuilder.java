@@ -411,6 +411,7 @@ public abstract class QuicCodecBuilder<B extends QuicCodecBuilder<B>> {
 
     /**
      * Allow to configure a {@link Executor} that will be used to run expensive SSL operations.
+     * Use {@link AdaptiveSslTaskExecutor} to only offload the operations that are actually expensive.
      *
      * @param sslTaskExecutor       the {@link Executor} that will be used to offload expensive SSL operations.
      * @return                      the instance itself.
@@ -15,6 +15,8 @@
  */
 package io.netty.incubator.codec.quic;
 
+import io.netty.buffer.ByteBuf;
+
 import java.nio.ByteBuffer;
 
 /**
@@ -42,6 +44,30 @@ public interface QuicConnectionIdGenerator {
      */
     ByteBuffer newId(ByteBuffer input, int length);
 
+    /**
+     * Writes a new connection id with the given length into {@code out}. This is the same as
+     * {@link #newId(int)} but allows implementations to generate the id without any allocations.
+     *
+     * @param out       the {@link ByteBuf} into which the id is written.
+     * @param length    the length of the id.
+     */
+    default void writeId(ByteBuf out, int length) {
+        out.writeBytes(newId(length));
+    }
+
+    /**
+     * Writes a new connection id with the given length into {@code out}. This is the same as
+     * {@link #newId(ByteBuffer, int)} but allows implementations to generate the id without any allocations.
+     *
+     * @param input     the input which may be used to generate the id. The readable bytes are used and the
+     *                  indices are not modified.
+     * @param out       the {@link ByteBuf} into which the id is written.
+     * @param length    the length of the id.
+     */
+    default void writeId(ByteBuf input, ByteBuf out, int length) {
+        out.writeBytes(newId(input.nioBuffer(), length));
+    }
+
     /**
      * Returns the maximum length of a connection id.
      *
@@ -17,10 +17,13 @@ package io.netty.incubator.codec.quic;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
 
 import java.net.InetSocketAddress;
 
 import static io.netty.incubator.codec.quic.Quiche.allocateNativeOrder;
+import static io.netty.util.internal.ObjectUtil.checkInRange;
 import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
 
 /**
@@ -33,6 +36,24 @@ import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
  * {@link QuicServerCodecBuilder}.
  */
 public final class QuicHeaderParser implements AutoCloseable {
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(QuicHeaderParser.class);
+
+    // The maximum number of packets that can be parsed via one parseBatch(...) call.
+    static final int MAX_BATCH_SIZE = 64;
+    // Each packet is described by its memory address and length.
+    private static final int BATCH_PACKET_SIZE = 2 * Long.BYTES;
+
+    // Offsets of the values within each batch result.
+    private static final int BATCH_RESULT_OFFSET = 0;
+    private static final int BATCH_VERSION_OFFSET = Integer.BYTES;
+    private static final int BATCH_TYPE_OFFSET = 2 * Integer.BYTES;
+    private static final int BATCH_DCID_OFFSET = 3 * Integer.BYTES;
+    private static final int BATCH_DCID_LEN_OFFSET = 4 * Integer.BYTES;
+    private static final int BATCH_SCID_OFFSET = 5 * Integer.BYTES;
+    private static final int BATCH_SCID_LEN_OFFSET = 6 * Integer.BYTES;
+    private static final int BATCH_TOKEN_OFFSET = 7 * Integer.BYTES;
+    private static final int BATCH_TOKEN_LEN_OFFSET = 8 * Integer.BYTES;
+
     private final int maxTokenLength;
     private final int localConnectionIdLength;
     private final ByteBuf versionBuffer;
@@ -43,6 +64,8 @@ public final class QuicHeaderParser implements AutoCloseable {
     private final ByteBuf dcidBuffer;
     private final ByteBuf tokenBuffer;
     private final ByteBuf tokenLenBuffer;
+    private final ByteBuf batchPacketsBuffer;
+    private final ByteBuf batchResultsBuffer;
     private boolean closed;
 
     public QuicHeaderParser(int maxTokenLength, int localConnectionIdLength) {
@@ -56,6 +79,8 @@ public final class QuicHeaderParser implements AutoCloseable {
         scidLenBuffer = allocateNativeOrder(Integer.BYTES);
         dcidLenBuffer = allocateNativeOrder(Integer.BYTES);
         tokenLenBuffer = allocateNativeOrder(Integer.BYTES);
+        batchPacketsBuffer = allocateNativeOrder(MAX_BATCH_SIZE * BATCH_PACKET_SIZE);
+        batchResultsBuffer = allocateNativeOrder(MAX_BATCH_SIZE * Quiche.SIZEOF_HEADER_INFO_BATCH_RESULT);
 
         // Now allocate the buffers that dont need native ordering and so will be cheaper to access when we slice into
         // these or obtain a view into these via internalNioBuffer(...).
@@ -76,6 +101,8 @@ public final class QuicHeaderParser implements AutoCloseable {
             dcidLenBuffer.release();
             tokenLenBuffer.release();
             tokenBuffer.release();
+            batchPacketsBuffer.release();
+            batchResultsBuffer.release();
         }
     }
 
@@ -129,6 +156,64 @@ public final class QuicHeaderParser implements AutoCloseable {
         }
     }
 
+    /**
+     * Parses multiple QUIC packets with one native call and notifies the callback for each packet that could be
+     * parsed. Packets that can't be parsed, or for which the callback throws, are logged and skipped. This method
+     * takes no ownership of the packets.
+     *
+     * @param senders       the senders of the packets.
+     * @param recipients    the recipients of the packets.
+     * @param packets       the raw QUIC packets, all of these must be backed by direct memory.
+     * @param count         the number of packets in the arrays to parse, at most {@link #MAX_BATCH_SIZE}.
+     * @param callback      the {@link QuicHeaderProcessor} that is called for each parsed packet.
+     */
+    void parseBatch(InetSocketAddress[] senders, InetSocketAddress[] recipients, ByteBuf[] packets, int count,
+                    QuicHeaderProcessor callback) {
+        if (closed) {
+            throw new IllegalStateException("QuicHeaderParser is already closed");
+        }
+        checkInRange(count, 0, MAX_BATCH_SIZE, "count");
+        for (int i = 0; i < count; i++) {
+            ByteBuf content = packets[i];
+            int offset = i * BATCH_PACKET_SIZE;
+            batchPacketsBuffer.setLong(offset, Quiche.memoryAddress(content) + content.readerIndex());
+            batchPacketsBuffer.setLong(offset + Long.BYTES, content.readableBytes());
+        }
+        // The token buffer is only used as scratch space by the native code to enforce the max token length.
+        Quiche.quiche_header_info_batch(Quiche.memoryAddress(batchPacketsBuffer), count, localConnectionIdLength,
+                Quiche.memoryAddress(tokenBuffer), maxTokenLength, Quiche.memoryAddress(batchResultsBuffer));
+
+        for (int i = 0; i < count; i++) {
+            ByteBuf content = packets[i];
+            int offset = i * Quiche.SIZEOF_HEADER_INFO_BATCH_RESULT;
+            try {
+                int res = batchResultsBuffer.getInt(offset + BATCH_RESULT_OFFSET);
+                if (res < 0) {
+                    throw Quiche.newException(res);
+                }
+                int readerIndex = content.readerIndex();
+                int scidLen = batchResultsBuffer.getInt(offset + BATCH_SCID_LEN_OFFSET);
+                int dcidLen = batchResultsBuffer.getInt(offset + BATCH_DCID_LEN_OFFSET);
+                int tokenLen = batchResultsBuffer.getInt(offset + BATCH_TOKEN_LEN_OFFSET);
+                scidBuffer.setBytes(0, content,
+                        readerIndex + batchResultsBuffer.getInt(offset + BATCH_SCID_OFFSET), scidLen);
+                dcidBuffer.setBytes(0, content,
+                        readerIndex + batchResultsBuffer.getInt(offset + BATCH_DCID_OFFSET), dcidLen);
+                tokenBuffer.setBytes(0, content,
+                        readerIndex + batchResultsBuffer.getInt(offset + BATCH_TOKEN_OFFSET), tokenLen);
+
+                callback.process(senders[i], recipients[i], content,
+                        QuicPacketType.of((byte) batchResultsBuffer.getInt(offset + BATCH_TYPE_OFFSET)),
+                        batchResultsBuffer.getInt(offset + BATCH_VERSION_OFFSET),
+                        scidBuffer.setIndex(0, scidLen),
+                        dcidBuffer.setIndex(0, dcidLen),
+                        tokenBuffer.setIndex(0, tokenLen));
+            } catch (Exception e) {
+                LOGGER.debug("Error while processing QUIC packet", e);
+            }
+        }
+    }
+
     /**
      * Called when a QUIC packet and its header could be parsed.
      */
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.util.internal.StringUtil;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics about the admission of new connections by a QUIC server, see
+ * {@link QuicServerCodecBuilder#maxConnections(int)} and {@link QuicServerCodecBuilder#maxHandshakes(int)}.
+ * <p>
+ * An instance is thread-safe and can be shared between multiple codecs, for example when using
+ * {@link QuicServerCodecBuilder#buildShards(int)}. In this case the values are the sum of all codecs.
+ */
+public final class QuicServerAdmissionMetrics {
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder rejectedHandshakes = new LongAdder();
+
+    /**
+     * Returns the number of connections that are currently open.
+     *
+     * @return the number of open connections.
+     */
+    public long connections() {
+        return connections.sum();
+    }
+
+    /**
+     * Returns the number of connections that currently do the handshake.
+     *
+     * @return the number of in-flight handshakes.
+     */
+    public long handshakes() {
+        return handshakes.sum();
+    }
+
+    /**
+     * Returns the number of connection attempts that were rejected because the maximum number of connections was
+     * reached.
+     *
+     * @return the number of rejected connection attempts.
+     */
+    public long rejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    /**
+     * Returns the number of connection attempts that were rejected because the maximum number of in-flight
+     * handshakes was reached.
+     *
+     * @return the number of rejected connection attempts.
+     */
+    public long rejectedHandshakes() {
+        return rejectedHandshakes.sum();
+    }
+
+    void connectionAdded() {
+        connections.increment();
+        handshakes.increment();
+    }
+
+    void handshakeDone() {
+        handshakes.decrement();
+    }
+
+    void connectionRemoved() {
+        connections.decrement();
+    }
+
+    void connectionRejected() {
+        rejectedConnections.increment();
+    }
+
+    void handshakeRejected() {
+        rejectedHandshakes.increment();
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) + "[" +
+                "connections=" + connections() +
+                ", handshakes=" + handshakes() +
+                ", rejectedConnections=" + rejectedConnections() +
+                ", rejectedHandshakes=" + rejectedHandshakes() +
+                "]";
+    }
+}
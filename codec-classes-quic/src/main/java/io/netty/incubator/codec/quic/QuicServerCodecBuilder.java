@@ -20,8 +20,10 @@ import io.netty.channel.ChannelOption;
 import io.netty.util.AttributeKey;
 import io.netty.util.internal.ObjectUtil;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
@@ -41,6 +43,12 @@ public final class QuicServerCodecBuilder extends QuicCodecBuilder<QuicServerCod
     private ChannelHandler streamHandler;
     private QuicConnectionIdGenerator connectionIdAddressGenerator;
     private QuicTokenHandler tokenHandler;
+    private QuicStatelessResponseLimiter statelessResponseLimiter;
+    private int maxConnections = Integer.MAX_VALUE;
+    private int maxHandshakes = Integer.MAX_VALUE;
+    private QuicServerAdmissionMetrics admissionMetrics;
+    private QuicheQuicServerShards shards;
+    private int shardIndex;
 
     /**
      * Creates a new instance.
@@ -59,6 +67,10 @@ public final class QuicServerCodecBuilder extends QuicCodecBuilder<QuicServerCod
         streamHandler = builder.streamHandler;
         connectionIdAddressGenerator = builder.connectionIdAddressGenerator;
         tokenHandler = builder.tokenHandler;
+        statelessResponseLimiter = builder.statelessResponseLimiter;
+        maxConnections = builder.maxConnections;
+        maxHandshakes = builder.maxHandshakes;
+        admissionMetrics = builder.admissionMetrics;
     }
 
     @Override
@@ -171,6 +183,84 @@ public final class QuicServerCodecBuilder extends QuicCodecBuilder<QuicServerCod
         return self();
     }
 
+    /**
+     * Set the {@link QuicStatelessResponseLimiter} that is used to limit the rate of Version Negotiation and Retry
+     * packets. If none is set these are not limited.
+     *
+     * @param statelessResponseLimiter  the {@link QuicStatelessResponseLimiter} to use or {@code null} if no limit
+     *                                  should be used.
+     * @return                          this instance.
+     */
+    public QuicServerCodecBuilder statelessResponseLimiter(QuicStatelessResponseLimiter statelessResponseLimiter) {
+        this.statelessResponseLimiter = statelessResponseLimiter;
+        return self();
+    }
+
+    /**
+     * Set the maximum number of connections a codec will accept. Once the limit is reached new connection attempts
+     * are dropped until some of the existing connections were closed. When using
+     * {@link #buildShards(int)} the limit applies to each shard.
+     *
+     * @param maxConnections    the maximum number of connections.
+     * @return                  this instance.
+     */
+    public QuicServerCodecBuilder maxConnections(int maxConnections) {
+        this.maxConnections = ObjectUtil.checkPositive(maxConnections, "maxConnections");
+        return self();
+    }
+
+    /**
+     * Set the maximum number of connections a codec will handshake with at the same time. Once the limit is reached
+     * new connection attempts are dropped until some of the handshakes completed. This ensures a storm of new
+     * connections can not starve the established connections. When using {@link #buildShards(int)} the limit applies
+     * to each shard.
+     *
+     * @param maxHandshakes     the maximum number of in-flight handshakes.
+     * @return                  this instance.
+     */
+    public QuicServerCodecBuilder maxHandshakes(int maxHandshakes) {
+        this.maxHandshakes = ObjectUtil.checkPositive(maxHandshakes, "maxHandshakes");
+        return self();
+    }
+
+    /**
+     * Set the {@link QuicServerAdmissionMetrics} which is updated when connections are accepted, completed the
+     * handshake, closed or rejected.
+     *
+     * @param admissionMetrics  the {@link QuicServerAdmissionMetrics} or {@code null} if no metrics should be
+     *                          collected.
+     * @return                  this instance.
+     */
+    public QuicServerCodecBuilder admissionMetrics(QuicServerAdmissionMetrics admissionMetrics) {
+        this.admissionMetrics = admissionMetrics;
+        return self();
+    }
+
+    /**
+     * Builds one QUIC codec per shard. Each of the returned {@link ChannelHandler}s must be added to the
+     * {@link io.netty.channel.ChannelPipeline} of its own {@link io.netty.channel.Channel}, all bound to the same
+     * address with {@code SO_REUSEPORT} and ideally served by different {@link io.netty.channel.EventLoop}s.
+     * <p>
+     * The index of the shard is encoded into the first byte of each connection id generated by the configured
+     * {@link QuicConnectionIdGenerator}. If the kernel delivers a packet to a socket that does not own the connection
+     * it is forwarded to the shard that does.
+     *
+     * @param numShards     the number of shards, must be between 1 and 256.
+     * @return              the {@link ChannelHandler}s, one per shard.
+     */
+    public List<ChannelHandler> buildShards(int numShards) {
+        ObjectUtil.checkInRange(numShards, 1, ShardedQuicConnectionIdGenerator.MAX_SHARDS, "numShards");
+        QuicheQuicServerShards shards = new QuicheQuicServerShards(numShards);
+        List<ChannelHandler> handlers = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            QuicServerCodecBuilder builder = clone();
+            builder.shards = shards;
+            builder.shardIndex = i;
+            handlers.add(builder.build());
+        }
+        return handlers;
+    }
+
     @Override
     protected void validate() {
         super.validate();
@@ -193,11 +283,15 @@ public final class QuicServerCodecBuilder extends QuicCodecBuilder<QuicServerCod
         if (generator == null) {
             generator = QuicConnectionIdGenerator.signGenerator();
         }
+        if (shards != null) {
+            generator = new ShardedQuicConnectionIdGenerator(generator, shardIndex, shards.connectionIdSeed());
+        }
         ChannelHandler handler = this.handler;
         ChannelHandler streamHandler = this.streamHandler;
         return new QuicheQuicServerCodec(config, localConnIdLength, tokenHandler, generator, flushStrategy,
                 sslEngineProvider, sslTaskExecutor, handler,
                 Quic.toOptionsArray(options), Quic.toAttributesArray(attrs),
-                streamHandler, Quic.toOptionsArray(streamOptions), Quic.toAttributesArray(streamAttrs));
+                streamHandler, Quic.toOptionsArray(streamOptions), Quic.toAttributesArray(streamAttrs),
+                shards, shardIndex, statelessResponseLimiter, maxConnections, maxHandshakes, admissionMetrics);
     }
 }
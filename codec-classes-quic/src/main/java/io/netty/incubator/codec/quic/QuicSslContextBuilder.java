@@ -162,6 +162,7 @@ public final class QuicSslContextBuilder {
     private Boolean earlyData;
     private BoringSSLKeylog keylog;
     private Mapping<? super String, ? extends QuicSslContext> mapping;
+    private QuicClientSessionStore sessionStore;
 
     private QuicSslContextBuilder(boolean forServer) {
         this.forServer = forServer;
@@ -351,6 +352,18 @@ public final class QuicSslContextBuilder {
         return this;
     }
 
+    /**
+     * Persist the sessions of the client in the given {@link QuicClientSessionStore}, so sessions can be resumed
+     * after a restart. The store can only be used by one {@link QuicSslContext}.
+     */
+    public QuicSslContextBuilder sessionStore(QuicClientSessionStore sessionStore) {
+        if (forServer) {
+            throw new UnsupportedOperationException("Only supported for client");
+        }
+        this.sessionStore = sessionStore;
+        return this;
+    }
+
     /**
      * Sets the client authentication mode.
      */
@@ -369,11 +382,11 @@ public final class QuicSslContextBuilder {
     public QuicSslContext build() {
         if (forServer) {
             return new QuicheQuicSslContext(true, sessionTimeout, sessionCacheSize, clientAuth, trustManagerFactory,
-                    keyManagerFactory, keyPassword, mapping, earlyData, keylog, applicationProtocols);
+                    keyManagerFactory, keyPassword, mapping, earlyData, keylog, null, applicationProtocols);
         } else {
             return new QuicheQuicSslContext(false, sessionTimeout, sessionCacheSize, clientAuth, trustManagerFactory,
                     keyManagerFactory, keyPassword, mapping, earlyData, keylog,
-                    applicationProtocols);
+                    sessionStore, applicationProtocols);
         }
     }
 
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * {@link SSLSessionContext} that is used by {@link QuicSslContext}.
+ */
+public interface QuicSslSessionContext extends SSLSessionContext {
+
+    /**
+     * Sets the keys that are used to encrypt and decrypt session tickets. The first key is used to encrypt new
+     * tickets, all keys can be used to decrypt tickets. Tickets that were encrypted with any key but the first are
+     * renewed.
+     * <p>
+     * Servers that use the same keys can resume the sessions of each other, which allows to use session resumption
+     * and 0-RTT even if a client ends up on another server the next time it connects. Once this method was called
+     * the internal session ticket keys of BoringSSL are not used anymore.
+     *
+     * @param keys  the keys, at least one needs to be provided.
+     * @see SslSessionTicketKeyRotator
+     */
+    void setTicketKeys(SslSessionTicketKey... keys);
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the rate of stateless responses (Version Negotiation and Retry packets) a QUIC server sends. Each of these
+ * responses is triggered by a single, possibly spoofed, Initial packet, so without a limit a flood of such packets
+ * can be used to amplify traffic towards a victim and to keep the server busy.
+ * <p>
+ * Responses are limited by a global token bucket and by a token bucket per source prefix ({@code /24} for IPv4,
+ * {@code /48} for IPv6). The per prefix buckets are stored in a fixed size table, so prefixes that hash to the same
+ * slot share a bucket. This keeps the memory usage bounded no matter how many different sources are seen.
+ * <p>
+ * An instance is thread-safe and can be shared between multiple codecs, for example when using
+ * {@link QuicServerCodecBuilder#buildShards(int)}.
+ */
+public final class QuicStatelessResponseLimiter {
+    private static final int PREFIX_BUCKETS = 4096;
+    private static final int IPV6_PREFIX_BYTES = 6;
+
+    private final long startNanos = System.nanoTime();
+    private final int prefixSeed;
+    private final long globalIntervalNanos;
+    private final long globalToleranceNanos;
+    private final long prefixIntervalNanos;
+    private final long prefixToleranceNanos;
+
+    // Both buckets are implemented via the generic cell rate algorithm, which only needs to store the theoretical
+    // arrival time of the next response. This allows us to update a bucket with a single CAS.
+    private final AtomicLong globalBucket = new AtomicLong();
+    private final AtomicLongArray prefixBuckets = new AtomicLongArray(PREFIX_BUCKETS);
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+
+    QuicStatelessResponseLimiter(long globalPerSecond, int globalBurst, long prefixPerSecond, int prefixBurst,
+                                 int prefixSeed) {
+        this.prefixSeed = prefixSeed;
+        globalIntervalNanos = TimeUnit.SECONDS.toNanos(1) / globalPerSecond;
+        globalToleranceNanos = globalIntervalNanos * (globalBurst - 1);
+        prefixIntervalNanos = TimeUnit.SECONDS.toNanos(1) / prefixPerSecond;
+        prefixToleranceNanos = prefixIntervalNanos * (prefixBurst - 1);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param globalPerSecond   the number of stateless responses that may be sent per second in total.
+     * @param globalBurst       the number of stateless responses that may be sent at once in total.
+     * @param prefixPerSecond   the number of stateless responses that may be sent per second to a single source
+     *                          prefix.
+     * @param prefixBurst       the number of stateless responses that may be sent at once to a single source prefix.
+     * @return                  the limiter.
+     */
+    public static QuicStatelessResponseLimiter newLimiter(int globalPerSecond, int globalBurst,
+                                                          int prefixPerSecond, int prefixBurst) {
+        ObjectUtil.checkInRange(globalPerSecond, 1, 1_000_000_000, "globalPerSecond");
+        ObjectUtil.checkPositive(globalBurst, "globalBurst");
+        ObjectUtil.checkInRange(prefixPerSecond, 1, 1_000_000_000, "prefixPerSecond");
+        ObjectUtil.checkPositive(prefixBurst, "prefixBurst");
+        // Use a random seed so it is not possible to predict which prefixes share a bucket.
+        return new QuicStatelessResponseLimiter(globalPerSecond, globalBurst, prefixPerSecond, prefixBurst,
+                PlatformDependent.threadLocalRandom().nextInt());
+    }
+
+    /**
+     * Returns the number of stateless responses that were sent.
+     *
+     * @return the number of sent responses.
+     */
+    public long sent() {
+        return sent.sum();
+    }
+
+    /**
+     * Returns the number of stateless responses that were suppressed because a limit was exceeded.
+     *
+     * @return the number of suppressed responses.
+     */
+    public long suppressed() {
+        return suppressed.sum();
+    }
+
+    /**
+     * Returns {@code true} if a stateless response to the given address may be sent now, {@code false} if it should
+     * be suppressed.
+     */
+    boolean tryAcquire(InetSocketAddress recipient) {
+        return tryAcquire(recipient, System.nanoTime() - startNanos);
+    }
+
+    boolean tryAcquire(InetSocketAddress recipient, long nowNanos) {
+        int slot = prefixSlot(recipient);
+        // Check the prefix first, so a flood from a single prefix does not use up the global budget.
+        if (acquire(prefixBuckets, slot, nowNanos, prefixIntervalNanos, prefixToleranceNanos)) {
+            if (acquire(globalBucket, nowNanos, globalIntervalNanos, globalToleranceNanos)) {
+                sent.increment();
+                return true;
+            }
+            // Nothing was sent, so give the token back to the prefix.
+            prefixBuckets.addAndGet(slot, -prefixIntervalNanos);
+        }
+        suppressed.increment();
+        return false;
+    }
+
+    /**
+     * Give back a response that was acquired via {@link #tryAcquire(InetSocketAddress)} but was not sent after all.
+     */
+    void release(InetSocketAddress recipient) {
+        prefixBuckets.addAndGet(prefixSlot(recipient), -prefixIntervalNanos);
+        globalBucket.addAndGet(-globalIntervalNanos);
+        sent.decrement();
+    }
+
+    private static boolean acquire(AtomicLong bucket, long nowNanos, long intervalNanos, long toleranceNanos) {
+        for (;;) {
+            long tat = bucket.get();
+            long newTat = Math.max(tat, nowNanos);
+            if (newTat - nowNanos > toleranceNanos) {
+                return false;
+            }
+            if (bucket.compareAndSet(tat, newTat + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean acquire(AtomicLongArray buckets, int slot, long nowNanos,
+                                   long intervalNanos, long toleranceNanos) {
+        for (;;) {
+            long tat = buckets.get(slot);
+            long newTat = Math.max(tat, nowNanos);
+            if (newTat - nowNanos > toleranceNanos) {
+                return false;
+            }
+            if (buckets.compareAndSet(slot, tat, newTat + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    private int prefixSlot(InetSocketAddress address) {
+        InetAddress addr = address.getAddress();
+        int hash = prefixSeed;
+        if (addr instanceof Inet4Address) {
+            // The hash code of an Inet4Address is the address itself, so we don't need to copy the bytes.
+            hash = (hash ^ (addr.hashCode() >>> 8)) * 0x01000193;
+        } else if (addr != null) {
+            byte[] bytes = addr.getAddress();
+            for (int i = 0; i < IPV6_PREFIX_BYTES; i++) {
+                hash = (hash ^ (bytes[i] & 0xFF)) * 0x01000193;
+            }
+        }
+        hash ^= hash >>> 16;
+        return hash & (PREFIX_BUCKETS - 1);
+    }
+}
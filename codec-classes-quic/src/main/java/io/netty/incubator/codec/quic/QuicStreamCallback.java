@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Handles the streams of a {@link QuicChannel} without creating a {@link QuicStreamChannel} for each of them.
+ * This avoids the overhead of a {@link io.netty.channel.Channel} and its {@link io.netty.channel.ChannelPipeline}
+ * for short-lived streams. See {@link QuicChannel#streamCallback(QuicStreamCallback)}.
+ * <p>
+ * All methods are called from the {@link io.netty.channel.EventLoop} of the {@link QuicChannel}.
+ */
+public interface QuicStreamCallback {
+
+    /**
+     * Data was received on the stream. The ownership of the {@link ByteBuf} is transferred, so it must be released
+     * once done with it.
+     *
+     * @param channel   the {@link QuicChannel} of the stream.
+     * @param streamId  the id of the stream.
+     * @param data      the data, which may be empty if {@code fin} is {@code true}.
+     * @param fin       {@code true} if the peer will not send any more data on this stream.
+     */
+    void streamRead(QuicChannel channel, long streamId, ByteBuf data, boolean fin);
+
+    /**
+     * The stream can accept more data after a previous
+     * {@link QuicChannel#writeStream(long, ByteBuf, boolean)} could not write everything.
+     *
+     * @param channel   the {@link QuicChannel} of the stream.
+     * @param streamId  the id of the stream.
+     */
+    default void streamWritable(QuicChannel channel, long streamId) { }
+
+    /**
+     * The stream failed, for example because it was reset by the peer.
+     *
+     * @param channel   the {@link QuicChannel} of the stream.
+     * @param streamId  the id of the stream.
+     * @param cause     the cause of the failure.
+     */
+    default void streamError(QuicChannel channel, long streamId, Throwable cause) { }
+}
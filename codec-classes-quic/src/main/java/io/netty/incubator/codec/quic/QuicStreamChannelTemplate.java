@@ -0,0 +1,170 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.MessageSizeEstimator;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.util.AttributeKey;
+import io.netty.util.internal.logging.InternalLogger;
+
+import java.util.Map;
+
+/**
+ * The options, attributes and handler that are applied to every {@link QuicStreamChannel} that is created by the
+ * remote peer. The options are resolved to the matching config setter once, so we don't need to go through
+ * {@link io.netty.channel.ChannelConfig#setOption(ChannelOption, Object)} for each of them on every new stream.
+ */
+final class QuicStreamChannelTemplate {
+
+    private final StreamOption[] options;
+    private final Map.Entry<AttributeKey<?>, Object>[] attrs;
+    private final ChannelHandler handler;
+    private final InternalLogger logger;
+
+    QuicStreamChannelTemplate(Map.Entry<ChannelOption<?>, Object>[] options,
+                              Map.Entry<AttributeKey<?>, Object>[] attrs, ChannelHandler handler,
+                              InternalLogger logger) {
+        this.options = new StreamOption[options.length];
+        for (int i = 0; i < options.length; i++) {
+            this.options[i] = compile(options[i].getKey(), options[i].getValue());
+        }
+        this.attrs = attrs;
+        this.handler = handler;
+        this.logger = logger;
+    }
+
+    void apply(QuicheQuicStreamChannel channel) {
+        QuicheQuicStreamChannelConfig config = (QuicheQuicStreamChannelConfig) channel.config();
+        for (StreamOption option : options) {
+            try {
+                if (!option.apply(config)) {
+                    logger.warn("Unknown channel option '{}' for channel '{}'", option.option, channel);
+                }
+            } catch (Throwable t) {
+                logger.warn("Failed to set channel option '{}' with value '{}' for channel '{}'",
+                        option.option, option.value, channel, t);
+            }
+        }
+        for (Map.Entry<AttributeKey<?>, Object> e: attrs) {
+            @SuppressWarnings("unchecked")
+            AttributeKey<Object> key = (AttributeKey<Object>) e.getKey();
+            channel.attr(key).set(e.getValue());
+        }
+        if (handler != null) {
+            channel.pipeline().addLast(handler);
+        }
+    }
+
+    private static StreamOption compile(ChannelOption<?> option, Object value) {
+        try {
+            if (option == ChannelOption.ALLOCATOR) {
+                DirectIoByteBufAllocator allocator = new DirectIoByteBufAllocator((ByteBufAllocator) value);
+                return new StreamOption(option, value) {
+                    @Override
+                    boolean apply(QuicheQuicStreamChannelConfig config) {
+                        config.allocator = allocator;
+                        return true;
+                    }
+                };
+            }
+            if (option == ChannelOption.RCVBUF_ALLOCATOR) {
+                RecvByteBufAllocator allocator = (RecvByteBufAllocator) value;
+                return new StreamOption(option, value) {
+                    @Override
+                    boolean apply(QuicheQuicStreamChannelConfig config) {
+                        config.setRecvByteBufAllocator(allocator);
+                        return true;
+                    }
+                };
+            }
+            if (option == ChannelOption.AUTO_READ) {
+                boolean autoRead = (Boolean) value;
+                return new StreamOption(option, value) {
+                    @Override
+                    boolean apply(QuicheQuicStreamChannelConfig config) {
+                        config.setAutoRead(autoRead);
+                        return true;
+                    }
+                };
+            }
+            if (option == ChannelOption.AUTO_CLOSE) {
+                boolean autoClose = (Boolean) value;
+                return new StreamOption(option, value) {
+                    @Override
+                    boolean apply(QuicheQuicStreamChannelConfig config) {
+                        config.setAutoClose(autoClose);
+                        return true;
+                    }
+                };
+            }
+            if (option == ChannelOption.WRITE_BUFFER_WATER_MARK) {
+                WriteBufferWaterMark waterMark = (WriteBufferWaterMark) value;
+                return new StreamOption(option, value) {
+                    @Override
+                    boolean apply(QuicheQuicStreamChannelConfig config) {
+                        config.setWriteBufferWaterMark(waterMark);
+                        return true;
+                    }
+                };
+            }
+            if (option == ChannelOption.MESSAGE_SIZE_ESTIMATOR) {
+                MessageSizeEstimator estimator = (MessageSizeEstimator) value;
+                return new StreamOption(option, value) {
+                    @Override
+                    boolean apply(QuicheQuicStreamChannelConfig config) {
+                        config.setMessageSizeEstimator(estimator);
+                        return true;
+                    }
+                };
+            }
+            if (option == QuicChannelOption.READ_FRAMES) {
+                boolean readFrames = (Boolean) value;
+                return new StreamOption(option, value) {
+                    @Override
+                    boolean apply(QuicheQuicStreamChannelConfig config) {
+                        config.setReadFrames(readFrames);
+                        return true;
+                    }
+                };
+            }
+        } catch (ClassCastException ignore) {
+            // Let setOption(...) fail and log it for every stream, the same as if we did not compile the option.
+        }
+        return new StreamOption(option, value);
+    }
+
+    /**
+     * A single option, by default applied via {@link io.netty.channel.ChannelConfig#setOption(ChannelOption, Object)}.
+     */
+    private static class StreamOption {
+        final ChannelOption<?> option;
+        final Object value;
+
+        StreamOption(ChannelOption<?> option, Object value) {
+            this.option = option;
+            this.value = value;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean apply(QuicheQuicStreamChannelConfig config) {
+            return config.setOption((ChannelOption<Object>) option, value);
+        }
+    }
+}
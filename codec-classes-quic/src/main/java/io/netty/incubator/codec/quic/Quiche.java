@@ -43,6 +43,7 @@ final class Quiche {
                 // netty_quic_boringssl
                 byte[].class, String.class, BoringSSLCertificateCallback.class,
                 BoringSSLCertificateVerifyCallback.class, BoringSSLHandshakeCompleteCallback.class,
+                BoringSSLSessionTicketCallback.class,
 
                 //netty_quic_quiche
                 QuicheLogger.class
@@ -112,6 +113,8 @@ final class Quiche {
 
     static final int SIZEOF_TIME_T = QuicheNativeStaticallyReferencedJniMethods.sizeofTimeT();
     static final int SIZEOF_LONG = QuicheNativeStaticallyReferencedJniMethods.sizeofLong();
+    static final int SIZEOF_HEADER_INFO_BATCH_RESULT =
+            QuicheNativeStaticallyReferencedJniMethods.sizeofHeaderInfoBatchResult();
 
     static final int TIMESPEC_OFFSETOF_TV_SEC =
             QuicheNativeStaticallyReferencedJniMethods.timespecOffsetofTvSec();
@@ -294,6 +297,15 @@ final class Quiche {
     static native int quiche_header_info(long bufAddr, int bufLength, int dcil, long versionAddr, long typeAddr,
                                          long scidAddr, long scidLenAddr, long dcidAddr, long dcidLenAddr,
                                          long tokenAddr, long tokenLenAddr);
+
+    /**
+     * Calls <a href="https://github.com/cloudflare/quiche/blob/0.6.0/include/quiche.h#L196">quiche_header_info</a>
+     * for each of the {@code count} packets. {@code packetsAddr} points to pairs of (memory address, length) stored as
+     * {@code int64_t}, the results are written to {@code resultsAddr} with {@link #SIZEOF_HEADER_INFO_BATCH_RESULT}
+     * bytes per packet and contain the offsets of the connection ids and token within the packet.
+     */
+    static native void quiche_header_info_batch(long packetsAddr, int count, int dcil, long tokenAddr, int tokenLen,
+                                                long resultsAddr);
     /**
      * See <a href="https://github.com/cloudflare/quiche/blob/0.6.0/include/quiche.h#L215">quiche_negotiate_version</a>.
      */
@@ -385,6 +397,45 @@ final class Quiche {
      */
     static native int quiche_conn_stream_send(long connAddr, long streamId, long bufAddr, int bufLen, boolean fin);
 
+    /**
+     * Calls {@code quiche_conn_stream_send} for each of the {@code iovCount} buffers, which are described by pairs of
+     * memory address and length stored at {@code iovAddr}, until one could not be written completely. The FIN is
+     * only set for the last buffer. Afterwards {@code quiche_conn_stream_capacity} is called, so all of this needs
+     * only one JNI call.
+     *
+     * @return  the error if nothing could be written, otherwise the number of written bytes and the capacity which
+     *          can be obtained via {@link #streamSendVectoredWritten(long)} and
+     *          {@link #streamSendVectoredCapacity(long)}.
+     */
+    static native long quiche_conn_stream_send_vectored(
+            long connAddr, long streamId, long iovAddr, int iovCount, boolean fin);
+
+    /**
+     * Same as {@link #quiche_conn_stream_send_vectored(long, long, long, int, boolean)} but sends {@code len} bytes
+     * of the given {@code byte[]}, starting at {@code offset}. The array is pinned during the call so the data is
+     * copied directly into the send buffer of quiche. As this blocks the GC, {@code len} should be bounded by the
+     * caller. Must only be used if {@link #canStreamSendArray()} returns {@code true}.
+     */
+    static native long quiche_conn_stream_send_array(
+            long connAddr, long streamId, byte[] array, int offset, int len, boolean fin);
+
+    /**
+     * Returns {@code true} if {@link #quiche_conn_stream_send_array(long, long, byte[], int, int, boolean)} should be
+     * used for heap buffers. This is not the case if debug logging is enabled, as quiche then calls back into Java
+     * while the array is pinned.
+     */
+    static boolean canStreamSendArray() {
+        return !DEBUG_LOGGING_ENABLED;
+    }
+
+    static int streamSendVectoredWritten(long res) {
+        return (int) (res >>> 32);
+    }
+
+    static int streamSendVectoredCapacity(long res) {
+        return (int) res;
+    }
+
     /**
      * See
      * <a href="https://github.com/cloudflare/quiche/blob/0.6.0/include/quiche.h#L271">quiche_conn_stream_shutdown</a>.
@@ -82,5 +82,7 @@ final class QuicheNativeStaticallyReferencedJniMethods {
     static native int sizeofTimeT();
     static native int sizeofLong();
 
+    static native int sizeofHeaderInfoBatchResult();
+
     private QuicheNativeStaticallyReferencedJniMethods() { }
 }
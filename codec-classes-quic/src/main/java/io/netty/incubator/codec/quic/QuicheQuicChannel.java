@@ -38,6 +38,7 @@ import io.netty.handler.ssl.SslHandshakeCompletionEvent;
 import io.netty.util.AttributeKey;
 import io.netty.util.collection.LongObjectHashMap;
 import io.netty.util.collection.LongObjectMap;
+import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.ImmediateEventExecutor;
 import io.netty.util.concurrent.ImmediateExecutor;
@@ -56,9 +57,11 @@ import java.nio.ByteBuffer;
 import java.nio.channels.AlreadyConnectedException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ConnectionPendingException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -115,24 +118,59 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
     };
 
     private static final ChannelMetadata METADATA = new ChannelMetadata(false);
-    private final long[] readableStreams = new long[128];
-    private final long[] writableStreams = new long[128];
+    private static final int STREAM_ID_ARRAY_SIZE = 128;
+    private static final int CALLBACK_STREAM_READ_SIZE = 8192;
+    // The urgency quiche uses for streams without an explicit priority.
+    private static final int DEFAULT_STREAM_URGENCY = 127;
+    // The maximum number of bytes of a byte[] that are passed to quiche_conn_stream_send_array(...) at once.
+    private static final int MAX_STREAM_SEND_ARRAY_LEN = 64 * 1024;
+    private static final Comparator<QuicheQuicStreamChannel> STREAM_READ_ORDER = (s1, s2) -> {
+        int res = Integer.compare(s1.readUrgency, s2.readUrgency);
+        return res != 0 ? res : Long.compare(s1.readSequence, s2.readSequence);
+    };
+    // The arrays are only needed while iterating over the readable / writable streams, so we share these between all
+    // channels that are served by the same thread. As user code that is called during the iteration may cause another
+    // iteration (for example for another connection) we need to keep a small pool of arrays.
+    private static final FastThreadLocal<ArrayDeque<long[]>> STREAM_ID_ARRAYS =
+            new FastThreadLocal<ArrayDeque<long[]>>() {
+                @Override
+                protected ArrayDeque<long[]> initialValue() {
+                    return new ArrayDeque<>(4);
+                }
+            };
 
     private final LongObjectMap<QuicheQuicStreamChannel> streams = new LongObjectHashMap<>();
+    // Streams handled by the streamCallback that wait for capacity, created lazily.
+    private LongObjectMap<Boolean> blockedCallbackStreams;
+    private QuicStreamCallback streamCallback;
+    // Streams that wait for their turn to read, ordered by urgency and then round-robin. Created lazily.
+    private PriorityQueue<QuicheQuicStreamChannel> scheduledStreamReads;
+    // Reused for every read round, null while a round is in progress.
+    private QuicheQuicStreamChannel[] streamReadRound = new QuicheQuicStreamChannel[8];
+    // Closed stream channels that can be reused for the next streams of the remote peer, only used if
+    // QuicChannelOption.STREAM_CHANNEL_POOL_SIZE is set.
+    private ArrayDeque<QuicheQuicStreamChannel> recycledStreamChannels;
+    private long streamReadSequence;
+    private boolean streamReadRoundScheduled;
+    private final Runnable streamReadRoundTask = this::runStreamReadRound;
     private final QuicheQuicChannelConfig config;
     private final boolean server;
     private final QuicStreamIdGenerator idGenerator;
-    private final ChannelHandler streamHandler;
-    private final Map.Entry<ChannelOption<?>, Object>[] streamOptionsArray;
-    private final Map.Entry<AttributeKey<?>, Object>[] streamAttrsArray;
+    private final QuicStreamChannelTemplate streamTemplate;
     private final TimeoutHandler timeoutHandler;
     private final EarlyDataSendCallback earlyDataSendCallback;
 
     private Executor sslTaskExecutor;
 
     private boolean inFireChannelReadCompleteQueue;
+    private boolean inParentWritabilityWaitList;
+    private Consumer<QuicheQuicChannel> parentWritabilityWaitList;
+    // Only written once before any SSL task is offloaded, so it is safe to read it from the sslTaskExecutor.
+    private Consumer<Runnable> sslTaskCompletions;
     private boolean fireChannelReadCompletePending;
     private ByteBuf finBuffer;
+    // Holds the (address, length) pairs for quiche_conn_stream_send_vectored(...), created lazily.
+    private ByteBuf streamIovBuffer;
     private ChannelPromise connectPromise;
     private ScheduledFuture<?> connectTimeoutFuture;
     private QuicConnectionAddress connectAddress;
@@ -150,6 +188,8 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
     private boolean recvStreamPending;
     private boolean streamReadable;
     private boolean handshakeCompletionNotified;
+    // Notified once the handshake completed or the channel was removed before it did.
+    private Consumer<QuicheQuicChannel> handshakeDoneListener;
 
     private int reantranceGuard = 0;
     private static final int IN_RECV = 1 << 1;
@@ -201,9 +241,8 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
         this.local = local;
         this.remote = remote;
 
-        this.streamHandler = streamHandler;
-        this.streamOptionsArray = streamOptionsArray;
-        this.streamAttrsArray = streamAttrsArray;
+        this.streamTemplate = new QuicStreamChannelTemplate(
+                streamOptionsArray, streamAttrsArray, streamHandler, logger);
         this.earlyDataSendCallback = earlyDataSendCallback;
         timeoutHandler = new TimeoutHandler(timeoutTask);
         this.sslTaskExecutor = sslTaskExecutor == null ? ImmediateExecutor.INSTANCE : sslTaskExecutor;
@@ -264,6 +303,7 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
             case NOT_HANDSHAKING:
             case FINISHED:
                 handshakeCompletionNotified = true;
+                notifyHandshakeDone();
                 String sniHostname = connection.engine().sniHostname;
                 if (sniHostname != null) {
                     connection.engine().sniHostname = null;
@@ -276,6 +316,91 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
         }
     }
 
+    @Override
+    public void streamCallback(QuicStreamCallback callback) {
+        if (eventLoop().inEventLoop()) {
+            streamCallback = callback;
+        } else {
+            eventLoop().execute(() -> streamCallback = callback);
+        }
+    }
+
+    @Override
+    public long openStream(QuicStreamType type) throws Exception {
+        checkInEventLoop();
+        long streamId = newLocalStream(type);
+        connectionSendAndFlush();
+        return streamId;
+    }
+
+    @Override
+    public int writeStream(long streamId, ByteBuf buffer, boolean fin) throws Exception {
+        checkInEventLoop();
+        long res;
+        if (buffer.isDirect() || buffer.hasArray() && Quiche.canStreamSendArray()) {
+            res = streamSend(streamId, buffer, fin);
+        } else {
+            ByteBuf tmpBuffer = alloc().directBuffer(buffer.readableBytes());
+            try {
+                tmpBuffer.writeBytes(buffer, buffer.readerIndex(), buffer.readableBytes());
+                res = streamSend(streamId, tmpBuffer, fin);
+            } finally {
+                tmpBuffer.release();
+            }
+        }
+        int written = 0;
+        if (res < 0) {
+            // Throws if this is not QUICHE_ERR_DONE, which means there is no capacity left.
+            Quiche.throwIfError((int) res);
+        } else {
+            written = Quiche.streamSendVectoredWritten(res);
+        }
+        buffer.skipBytes(written);
+        if (buffer.isReadable()) {
+            if (blockedCallbackStreams == null) {
+                blockedCallbackStreams = new LongObjectHashMap<>();
+            }
+            blockedCallbackStreams.put(streamId, Boolean.TRUE);
+        }
+        connectionSendAndFlush();
+        return written;
+    }
+
+    @Override
+    public ChannelFuture resetStream(long streamId, int error) {
+        ChannelPromise promise = newPromise();
+        if (eventLoop().inEventLoop()) {
+            resetStream0(streamId, error, promise);
+        } else {
+            eventLoop().execute(() -> resetStream0(streamId, error, promise));
+        }
+        return promise;
+    }
+
+    private void resetStream0(long streamId, int error, ChannelPromise promise) {
+        if (blockedCallbackStreams != null) {
+            blockedCallbackStreams.remove(streamId);
+        }
+        streamShutdown(streamId, true, true, error, promise);
+    }
+
+    private void checkInEventLoop() {
+        if (!eventLoop().inEventLoop()) {
+            throw new IllegalStateException("Must be called from the EventLoop");
+        }
+    }
+
+    private long newLocalStream(QuicStreamType type) throws Exception {
+        long streamId = idGenerator.nextStreamId(type == QuicStreamType.BIDIRECTIONAL);
+        Quiche.throwIfError(streamSend0(streamId, Unpooled.EMPTY_BUFFER, false));
+        if (type == QuicStreamType.UNIDIRECTIONAL) {
+            UNI_STREAMS_LEFT_UPDATER.decrementAndGet(QuicheQuicChannel.this);
+        } else {
+            BIDI_STREAMS_LEFT_UPDATER.decrementAndGet(QuicheQuicChannel.this);
+        }
+        return streamId;
+    }
+
     @Override
     public long peerAllowedStreams(QuicStreamType type) {
         switch (type) {
@@ -288,6 +413,15 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
         }
     }
 
+    private static long[] acquireStreamIdArray() {
+        long[] array = STREAM_ID_ARRAYS.get().pollLast();
+        return array == null ? new long[STREAM_ID_ARRAY_SIZE] : array;
+    }
+
+    private static void releaseStreamIdArray(long[] array) {
+        STREAM_ID_ARRAYS.get().addLast(array);
+    }
+
     void attachQuicheConnection(QuicheQuicConnection connection) {
         this.connection = connection;
 
@@ -451,6 +585,10 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
                 finBuffer.release();
                 finBuffer = null;
             }
+            if (streamIovBuffer != null) {
+                streamIovBuffer.release();
+                streamIovBuffer = null;
+            }
             state = CLOSED;
 
             timeoutHandler.cancel();
@@ -466,9 +604,9 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
         return new DefaultChannelPipeline(this) {
             @Override
             protected void onUnhandledInboundMessage(ChannelHandlerContext ctx, Object msg) {
-                if (msg instanceof QuicStreamChannel) {
-                    QuicStreamChannel channel = (QuicStreamChannel) msg;
-                    Quic.setupChannel(channel, streamOptionsArray, streamAttrsArray, streamHandler, logger);
+                if (msg instanceof QuicheQuicStreamChannel) {
+                    QuicheQuicStreamChannel channel = (QuicheQuicStreamChannel) msg;
+                    streamTemplate.apply(channel);
                     ctx.channel().eventLoop().register(channel);
                 } else {
                     super.onUnhandledInboundMessage(ctx, msg);
@@ -756,6 +894,11 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
             stream.unsafe().close(voidPromise());
         }
         streams.clear();
+        blockedCallbackStreams = null;
+        recycledStreamChannels = null;
+        if (scheduledStreamReads != null) {
+            scheduledStreamReads.clear();
+        }
     }
 
     void streamPriority(long streamId, byte priority, boolean incremental) throws Exception {
@@ -763,10 +906,103 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
                priority, incremental));
     }
 
+    int streamReadBudget() {
+        return config.getStreamReadBudget();
+    }
+
+    /**
+     * Schedule a read for the given stream, which used up its read budget, in the next round.
+     */
+    void scheduleStreamRead(QuicheQuicStreamChannel stream) {
+        if (enqueueStreamRead(stream) && !streamReadRoundScheduled) {
+            streamReadRoundScheduled = true;
+            eventLoop().execute(streamReadRoundTask);
+        }
+    }
+
+    private boolean enqueueStreamRead(QuicheQuicStreamChannel stream) {
+        if (stream.readScheduled) {
+            return false;
+        }
+        if (scheduledStreamReads == null) {
+            scheduledStreamReads = new PriorityQueue<>(STREAM_READ_ORDER);
+        }
+        QuicStreamPriority priority = stream.priority();
+        stream.readUrgency = priority == null ? DEFAULT_STREAM_URGENCY : priority.urgency();
+        stream.readSequence = streamReadSequence++;
+        stream.readScheduled = true;
+        scheduledStreamReads.add(stream);
+        return true;
+    }
+
+    /**
+     * Let all streams that are scheduled right now read, the most urgent first. Streams that use up their read budget
+     * again are scheduled for the next round.
+     */
+    private void readScheduledStreams() {
+        PriorityQueue<QuicheQuicStreamChannel> queue = scheduledStreamReads;
+        if (queue == null || queue.isEmpty()) {
+            return;
+        }
+        int size = queue.size();
+        if (size == 1) {
+            QuicheQuicStreamChannel stream = queue.poll();
+            stream.readScheduled = false;
+            stream.readable();
+            return;
+        }
+        QuicheQuicStreamChannel[] round = streamReadRound;
+        if (round == null || round.length < size) {
+            // Either we were called while already reading a round or the array is too small.
+            round = new QuicheQuicStreamChannel[size];
+        }
+        streamReadRound = null;
+        for (int i = 0; i < size; i++) {
+            QuicheQuicStreamChannel stream = queue.poll();
+            stream.readScheduled = false;
+            round[i] = stream;
+        }
+        try {
+            for (int i = 0; i < size; i++) {
+                round[i].readable();
+            }
+        } finally {
+            Arrays.fill(round, 0, size, null);
+            streamReadRound = round;
+        }
+    }
+
+    private void runStreamReadRound() {
+        streamReadRoundScheduled = false;
+        if (isConnDestroyed()) {
+            return;
+        }
+        readScheduledStreams();
+        // Reading may have produced window updates, so ensure these are sent.
+        connectionSendAndFlush();
+    }
+
     void streamClosed(long streamId) {
         streams.remove(streamId);
     }
 
+    /**
+     * Keep the given closed stream channel, so it can be reused for the next stream that is created by the remote
+     * peer.
+     */
+    void recycleStreamChannel(QuicheQuicStreamChannel stream) {
+        int poolSize = config.getStreamChannelPoolSize();
+        if (poolSize == 0 || isConnDestroyed()) {
+            return;
+        }
+        if (recycledStreamChannels == null) {
+            recycledStreamChannels = new ArrayDeque<>(Math.min(poolSize, 16));
+        }
+        if (recycledStreamChannels.size() < poolSize) {
+            recycledStreamChannels.add(stream);
+        }
+    }
+
     boolean isStreamLocalCreated(long streamId) {
         return (streamId & 0x1) == (server ? 1 : 0);
     }
@@ -817,30 +1053,84 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
         }
     }
 
-    int streamSend(long streamId, ByteBuf buffer, boolean fin) throws ClosedChannelException {
-        if (buffer.nioBufferCount() == 1) {
-            return streamSend0(streamId, buffer, fin);
+    /**
+     * Send all readable bytes of the given direct {@link ByteBuf}, which may consist of multiple components, with one
+     * native call. See {@link Quiche#quiche_conn_stream_send_vectored(long, long, long, int, boolean)} for the
+     * returned value.
+     */
+    long streamSendVectored(long streamId, ByteBuf buffer, boolean fin) throws ClosedChannelException {
+        long connAddr = connectionAddressChecked();
+        int count = buffer.nioBufferCount();
+        if (count <= 1) {
+            ByteBuf iov = streamIovBuffer(1);
+            if (count == 0) {
+                // Nothing to write, just use an empty buffer so quiche can still send the FIN if needed.
+                buffer = Unpooled.EMPTY_BUFFER;
+            }
+            iov.setLong(0, Quiche.memoryAddress(buffer) + buffer.readerIndex());
+            iov.setLong(8, buffer.readableBytes());
+            return Quiche.quiche_conn_stream_send_vectored(connAddr, streamId, Quiche.memoryAddress(iov), 1, fin);
         }
-        ByteBuffer[] nioBuffers  = buffer.nioBuffers();
-        int lastIdx = nioBuffers.length - 1;
-        int res = 0;
-        for (int i = 0; i < lastIdx; i++) {
+        ByteBuffer[] nioBuffers = buffer.nioBuffers();
+        ByteBuf iov = streamIovBuffer(nioBuffers.length);
+        for (int i = 0; i < nioBuffers.length; i++) {
             ByteBuffer nioBuffer = nioBuffers[i];
-            while (nioBuffer.hasRemaining()) {
-                int localRes = streamSend(streamId, nioBuffer, false);
-                if (localRes <= 0) {
-                    return res;
-                }
-                res += localRes;
+            iov.setLong(i * 16, Quiche.memoryAddressWithPosition(nioBuffer));
+            iov.setLong(i * 16 + 8, nioBuffer.remaining());
+        }
+        return Quiche.quiche_conn_stream_send_vectored(
+                connAddr, streamId, Quiche.memoryAddress(iov), nioBuffers.length, fin);
+    }
 
-                nioBuffer.position(nioBuffer.position() + localRes);
+    /**
+     * Send all readable bytes of the given {@link ByteBuf}. Heap buffers that are backed by a single array are sent
+     * without copying these into direct memory first.
+     */
+    long streamSend(long streamId, ByteBuf buffer, boolean fin) throws ClosedChannelException {
+        if (buffer.hasArray() && Quiche.canStreamSendArray()) {
+            return streamSendArray(streamId, buffer, fin);
+        }
+        return streamSendVectored(streamId, buffer, fin);
+    }
+
+    private long streamSendArray(long streamId, ByteBuf buffer, boolean fin) throws ClosedChannelException {
+        long connAddr = connectionAddressChecked();
+        byte[] array = buffer.array();
+        int offset = buffer.arrayOffset() + buffer.readerIndex();
+        int remaining = buffer.readableBytes();
+        int written = 0;
+        for (;;) {
+            // The array is pinned while quiche copies it, which blocks the GC. Only pin it for a bounded number of
+            // bytes at once.
+            int len = Math.min(remaining, MAX_STREAM_SEND_ARRAY_LEN);
+            long res = Quiche.quiche_conn_stream_send_array(
+                    connAddr, streamId, array, offset, len, fin && len == remaining);
+            if (res < 0) {
+                // If we did write something already, report that and no capacity. The error is returned on the next
+                // try.
+                return written == 0 ? res : (long) written << 32;
+            }
+            int chunkWritten = Quiche.streamSendVectoredWritten(res);
+            written += chunkWritten;
+            offset += chunkWritten;
+            remaining -= chunkWritten;
+            if (remaining == 0 || chunkWritten < len) {
+                return (long) written << 32 | (Quiche.streamSendVectoredCapacity(res) & 0xffffffffL);
             }
         }
-        int localRes = streamSend(streamId, nioBuffers[lastIdx], fin);
-        if (localRes > 0) {
-            res += localRes;
+    }
+
+    private ByteBuf streamIovBuffer(int count) {
+        int size = count * 16;
+        ByteBuf iov = streamIovBuffer;
+        if (iov == null || iov.capacity() < size) {
+            if (iov != null) {
+                iov.release();
+            }
+            iov = Quiche.allocateNativeOrder(Math.max(size, 16 * 16));
+            streamIovBuffer = iov;
         }
-        return res;
+        return iov;
     }
 
     void connectionSendAndFlush() {
@@ -857,11 +1147,6 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
                 Quiche.memoryAddress(buffer) + buffer.readerIndex(), buffer.readableBytes(), fin);
     }
 
-    private int streamSend(long streamId, ByteBuffer buffer, boolean fin) throws ClosedChannelException {
-        return Quiche.quiche_conn_stream_send(connectionAddressChecked(), streamId,
-                Quiche.memoryAddressWithPosition(buffer), buffer.remaining(), fin);
-    }
-
     StreamRecvResult streamRecv(long streamId, ByteBuf buffer) throws Exception {
         if (finBuffer == null) {
             finBuffer = alloc().directBuffer(1);
@@ -885,7 +1170,50 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
         ((QuicChannelUnsafe) unsafe()).connectionRecv(recipient, sender, buffer);
     }
 
+    /**
+     * Set the {@link Consumer} that is notified once the handshake completed or the channel was removed before.
+     */
+    void handshakeDoneListener(Consumer<QuicheQuicChannel> handshakeDoneListener) {
+        this.handshakeDoneListener = handshakeDoneListener;
+    }
+
+    /**
+     * Notify the handshake done listener if it was not notified yet.
+     */
+    void notifyHandshakeDone() {
+        Consumer<QuicheQuicChannel> listener = handshakeDoneListener;
+        if (listener != null) {
+            handshakeDoneListener = null;
+            listener.accept(this);
+        }
+    }
+
+    /**
+     * Set the {@link Consumer} that is notified once this channel wrote to the parent {@link Channel} while it
+     * was not writable. {@link #writable()} is expected to be called once the parent becomes writable again.
+     */
+    void parentWritabilityWaitList(Consumer<QuicheQuicChannel> parentWritabilityWaitList) {
+        this.parentWritabilityWaitList = parentWritabilityWaitList;
+    }
+
+    /**
+     * Set the {@link Consumer} that is used to run the completions of SSL tasks that were offloaded to the
+     * {@code sslTaskExecutor} on the {@link io.netty.channel.EventLoop}. This allows to batch these.
+     */
+    void sslTaskCompletions(Consumer<Runnable> sslTaskCompletions) {
+        this.sslTaskCompletions = sslTaskCompletions;
+    }
+
+    private void waitForParentWritability() {
+        Consumer<QuicheQuicChannel> waitList = parentWritabilityWaitList;
+        if (waitList != null && !inParentWritabilityWaitList) {
+            inParentWritabilityWaitList = true;
+            waitList.accept(this);
+        }
+    }
+
     void writable() {
+        inParentWritabilityWaitList = false;
         boolean written = connectionSend();
         handleWritableStreams();
         written |= connectionSend();
@@ -915,7 +1243,7 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
             if (Quiche.quiche_conn_is_established(connAddr) ||
                     Quiche.quiche_conn_is_in_early_data(connAddr)) {
                 long writableIterator = Quiche.quiche_conn_writable(connAddr);
-
+                long[] writableStreams = acquireStreamIdArray();
                 try {
                     // For streams we always process all streams when at least on read was requested.
                     for (;;) {
@@ -942,6 +1270,11 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
                                 } else if (streamChannel.writable(capacity)) {
                                     mayNeedWrite = true;
                                 }
+                            } else if (blockedCallbackStreams != null &&
+                                    blockedCallbackStreams.containsKey(streamId)) {
+                                if (callbackStreamWritable(connAddr, streamId)) {
+                                    mayNeedWrite = true;
+                                }
                             }
                         }
                         if (writable < writableStreams.length) {
@@ -950,6 +1283,7 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
                         }
                     }
                 } finally {
+                    releaseStreamIdArray(writableStreams);
                     Quiche.quiche_stream_iter_free(writableIterator);
                 }
             }
@@ -959,6 +1293,28 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
         }
     }
 
+    private boolean callbackStreamWritable(long connAddr, long streamId) {
+        QuicStreamCallback callback = streamCallback;
+        int capacity = Quiche.quiche_conn_stream_capacity(connAddr, streamId);
+        if (capacity == 0 && callback != null) {
+            // Still no capacity, keep the stream registered so we notify the callback once there is some.
+            return false;
+        }
+        blockedCallbackStreams.remove(streamId);
+        if (callback == null) {
+            return false;
+        }
+        if (capacity > 0) {
+            callback.streamWritable(this, streamId);
+            return true;
+        }
+        if (capacity < 0 && capacity != Quiche.QUICHE_ERR_STREAM_STOPPED &&
+                !Quiche.quiche_conn_stream_finished(connAddr, streamId)) {
+            callback.streamError(this, streamId, Quiche.newException(capacity));
+        }
+        return false;
+    }
+
     /**
      * Called once we receive a channelReadComplete event. This method will take care of calling
      * {@link ChannelPipeline#fireChannelReadComplete()} if needed and also to handle pending flushes of
@@ -1002,60 +1358,121 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
         pipeline().fireExceptionCaught(cause);
     }
 
-    private boolean runTasksDirectly() {
-        return sslTaskExecutor == null || sslTaskExecutor == ImmediateExecutor.INSTANCE ||
-                sslTaskExecutor == ImmediateEventExecutor.INSTANCE;
-    }
-
-    private void runAllTaskSend(Executor sslTaskExecutor, Runnable task) {
-        sslTaskExecutor.execute(decorateTaskSend(sslTaskExecutor, task));
+    /**
+     * Runs all SSL tasks that should be run directly on the {@link io.netty.channel.EventLoop} and returns the first
+     * task that needs to be offloaded to the {@code sslTaskExecutor}, or {@code null} if all tasks were run.
+     */
+    private QuicheQuicConnection.SslTask runSslTasksInline(QuicheQuicConnection.SslTask task) {
+        Executor executor = sslTaskExecutor;
+        if (executor == null || executor == ImmediateExecutor.INSTANCE ||
+                executor == ImmediateEventExecutor.INSTANCE) {
+            // Consume all tasks
+            do {
+                task.run();
+            } while ((task = connection.sslTask()) != null);
+            return null;
+        }
+        if (!(executor instanceof AdaptiveSslTaskExecutor)) {
+            return task;
+        }
+        AdaptiveSslTaskExecutor adaptiveExecutor = (AdaptiveSslTaskExecutor) executor;
+        do {
+            if (!adaptiveExecutor.runInline(task.type())) {
+                return task;
+            }
+            runSslTask(adaptiveExecutor, task);
+        } while ((task = connection.sslTask()) != null);
+        return null;
     }
 
-    private Runnable decorateTaskSend(Executor sslTaskExecutor, Runnable task) {
-        return () -> {
+    private static void runSslTask(Executor executor, QuicheQuicConnection.SslTask task) {
+        if (executor instanceof AdaptiveSslTaskExecutor) {
+            long start = System.nanoTime();
             try {
                 task.run();
             } finally {
-                // Move back to the EventLoop.
-                eventLoop().execute(() -> {
-                    if (connection != null) {
-                        Runnable nextTask = connection.sslTask();
-                        // Consume all tasks before moving back to the EventLoop.
-                        if (nextTask == null) {
-                            // Call connection send to continue handshake if needed.
-                            if (connectionSend()) {
-                                forceFlushParent();
-                            }
-                        } else {
-                            sslTaskExecutor.execute(decorateTaskSend(sslTaskExecutor, nextTask));
-                        }
+                ((AdaptiveSslTaskExecutor) executor).record(task.type(), System.nanoTime() - start);
+            }
+        } else {
+            task.run();
+        }
+    }
+
+    private void offloadSslTask(QuicheQuicConnection.SslTask task, boolean recv) {
+        sslTaskExecutor.execute(new OffloadedSslTask(task, recv));
+    }
+
+    /**
+     * Runs a SSL task on the {@code sslTaskExecutor} and then continues the handshake on the
+     * {@link io.netty.channel.EventLoop}. The same instance is used for both steps, so we only need to create a
+     * single object per offloaded task.
+     */
+    private final class OffloadedSslTask implements Runnable {
+        private final QuicheQuicConnection.SslTask task;
+        private final boolean recv;
+        private boolean done;
+
+        OffloadedSslTask(QuicheQuicConnection.SslTask task, boolean recv) {
+            this.task = task;
+            this.recv = recv;
+        }
+
+        @Override
+        public void run() {
+            if (!done) {
+                done = true;
+                try {
+                    runSslTask(sslTaskExecutor, task);
+                } finally {
+                    // Move back to the EventLoop.
+                    Consumer<Runnable> completions = sslTaskCompletions;
+                    if (completions == null) {
+                        eventLoop().execute(this);
+                    } else {
+                        completions.accept(this);
                     }
-                });
+                }
+            } else if (connection != null) {
+                QuicheQuicConnection.SslTask nextTask = connection.sslTask();
+                if (nextTask != null) {
+                    nextTask = runSslTasksInline(nextTask);
+                }
+                if (nextTask == null) {
+                    if (recv) {
+                        ((QuicChannelUnsafe) unsafe()).processReceived(connection.address());
+                    }
+                    // Call connection send to continue handshake if needed.
+                    if (connectionSend()) {
+                        forceFlushParent();
+                    }
+                } else {
+                    offloadSslTask(nextTask, recv);
+                }
             }
-        };
+        }
     }
 
     private boolean connectionSendSegments(SegmentedDatagramPacketAllocator segmentedDatagramPacketAllocator) {
-        List<ByteBuf> bufferList = new ArrayList<>(segmentedDatagramPacketAllocator.maxNumSegments());
         long connAddr = connection.address();
         int maxDatagramSize = Quiche.quiche_conn_max_send_udp_payload_size(connAddr);
+        // All packets are written back to back into one buffer, this way we can hand over the segments as one flat
+        // buffer and don't need to allocate a buffer per packet.
+        SegmentedDatagramPacketBatch batch = new SegmentedDatagramPacketBatch(
+                alloc(), segmentedDatagramPacketAllocator, maxDatagramSize);
         boolean packetWasWritten = false;
         boolean close = false;
         try {
             for (;;) {
                 int len = calculateSendBufferLength(connAddr, maxDatagramSize);
-                ByteBuf out = alloc().directBuffer(len);
+                ByteBuf out = batch.buffer(len);
 
                 ByteBuffer sendInfo = connection.nextSendInfo();
-                InetSocketAddress sendToAddress = this.remote;
 
                 boolean done;
-                int writerIndex = out.writerIndex();
                 int written = Quiche.quiche_conn_send(
-                        connAddr, Quiche.memoryAddress(out) + writerIndex, out.writableBytes(),
+                        connAddr, Quiche.memoryAddress(out) + out.writerIndex(), len,
                         Quiche.memoryAddressWithPosition(sendInfo));
                 if (written == 0) {
-                    out.release();
                     // No need to create a new datagram packet. Just try again.
                     continue;
                 }
@@ -1066,95 +1483,58 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
                     done = true;
                     close = Quiche.shouldClose(written);
                     if (tryFailConnectPromise(e)) {
-                        // We are done, release the buffer and send what we did build up so far.
-                        out.release();
+                        // We are done, the buffer is released in the finally block.
                         return packetWasWritten;
                     }
                     fireExceptionEvents(e);
                 }
                 if (done) {
-                    // We are done, release the buffer and send what we did build up so far.
-                    out.release();
-
-                    int size = bufferList.size();
-                    switch (size) {
-                        case 0:
-                            // Nothing more to write.
-                            return packetWasWritten;
-                        case 1:
-                            // We can write a normal datagram packet.
-                            parent().write(new DatagramPacket(bufferList.get(0), sendToAddress));
-                            return true;
-                        default:
-                            // We had more than one buffer, create a segmented packet.
-                            parent().write(segmentedDatagramPacketAllocator.newPacket(
-                                    Unpooled.wrappedBuffer(bufferList.toArray(new ByteBuf[0])),
-                                    bufferList.get(size - 1).readableBytes(), sendToAddress));
-                            return true;
+                    DatagramPacket packet = batch.take();
+                    if (packet == null) {
+                        // Nothing more to write.
+                        return packetWasWritten;
                     }
+                    // Send what we did build up so far.
+                    parent().write(packet);
+                    return true;
                 }
-                out.writerIndex(writerIndex + written);
 
-                int size = bufferList.size();
-                int segmentSize = -1;
                 if (connection.isSendInfoChanged()) {
                     // Change the cached address and let the user know there was a connection migration.
                     InetSocketAddress oldRemote = remote;
-                    remote = QuicheSendInfo.getToAddress(sendInfo);
-                    local = QuicheSendInfo.getFromAddress(sendInfo);
+                    remote = connection.sendToAddress();
+                    local = connection.sendFromAddress();
                     pipeline().fireUserEventTriggered(
                             new QuicConnectionEvent(oldRemote, remote));
-                    if (size > 0) {
-                        // We have something in the out list already, we need to send this now and so we set the
-                        // segmentSize.
-                        segmentSize = bufferList.get(size - 1).readableBytes();
-                    }
-                } else if (size > 0) {
-                    int lastReadable = bufferList.get(size - 1).readableBytes();
-                    // Check if we either need to send now because the last buffer we added has a smaller size then this
-                    // one or if we reached the maximum number of segments that we can send.
-                    if (lastReadable != out.readableBytes() ||
-                            size == segmentedDatagramPacketAllocator.maxNumSegments()) {
-                        segmentSize = lastReadable;
+                }
+
+                // What we have so far needs to be sent first if the address changed or if this packet is bigger.
+                DatagramPacket previous = batch.add(written, remote);
+                if (previous != null) {
+                    boolean stop = writePacket(previous, maxDatagramSize, len);
+                    packetWasWritten = true;
+                    if (stop) {
+                        // Nothing left in the window, write the packet we just got and continue later.
+                        parent().write(batch.take());
+                        return true;
                     }
                 }
 
-                // If the segmentSize is not -1 we know we need to send now what was in the out list (which might be
-                // nothing as well).
-                if (segmentSize != -1) {
-                    switch (size) {
-                        case 0:
-                            // There was nothing in the out list, just move on.
-                            break;
-                        case 1:
-                            // Only one buffer in the out list, there is no need to use segments.
-                            boolean stop = writePacket
-                                    (new DatagramPacket(bufferList.get(0), sendToAddress), maxDatagramSize, len);
-                            packetWasWritten = true;
-                            if (stop) {
-                                // Nothing left in the window, continue later
-                                return true;
-                            }
-                            break;
-                        default:
-                            // Create a packet with segments in.
-                            boolean stopWriting = writePacket(segmentedDatagramPacketAllocator.newPacket(
-                                    Unpooled.wrappedBuffer(bufferList.toArray(
-                                            new ByteBuf[0])), segmentSize, sendToAddress), maxDatagramSize, len);
-                            packetWasWritten = true;
-                            if (stopWriting) {
-                                // Nothing left in the window, continue later
-                                return true;
-                            }
-                            break;
+                // Send now if we reached the maximum number of segments or if this packet is smaller than the others
+                // and so must be the last segment.
+                DatagramPacket complete = batch.takeIfComplete();
+                if (complete != null) {
+                    boolean stop = writePacket(complete, maxDatagramSize, len);
+                    packetWasWritten = true;
+                    if (stop) {
+                        // Nothing left in the window, continue later
+                        return true;
                     }
-                    // We processed everything that was in the list, clear it.
-                    bufferList.clear();
                 }
-                // store for later, so we can make use of segments.
-                bufferList.add(out);
             }
         } finally {
+            // Everything that was written to the parent holds its own reference.
+            batch.release();
             if (close) {
                 // Close now... now way to recover.
                 unsafe().close(newPromise());
@@ -1200,8 +1580,8 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
             if (connection.isSendInfoChanged()) {
                 // Change the cached address
                 InetSocketAddress oldRemote = remote;
-                remote = QuicheSendInfo.getToAddress(sendInfo);
-                local = QuicheSendInfo.getFromAddress(sendInfo);
+                remote = connection.sendToAddress();
+                local = connection.sendFromAddress();
                 pipeline().fireUserEventTriggered(
                         new QuicConnectionEvent(oldRemote, remote));
             }
@@ -1265,21 +1645,20 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
             } else {
                 packetWasWritten = connectionSendSimple();
             }
+            if (packetWasWritten && !parent().isWritable()) {
+                // We hit backpressure, ensure we are notified once the parent is writable again.
+                waitForParentWritability();
+            }
 
             // Process / schedule all tasks that were created.
-            Runnable task = connection.sslTask();
+            QuicheQuicConnection.SslTask task = connection.sslTask();
             if (task != null) {
-                if (runTasksDirectly()) {
-                    // Consume all tasks
-                    do {
-                        task.run();
-                    } while ((task = connection.sslTask()) != null);
-
+                task = runSslTasksInline(task);
+                if (task == null) {
                     // Let's try again sending after we did process all tasks.
                     return packetWasWritten | connectionSend();
-                } else {
-                    runAllTaskSend(sslTaskExecutor, task);
                 }
+                offloadSslTask(task, false);
             }
 
             if (packetWasWritten) {
@@ -1295,18 +1674,13 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
 
         void connectStream(QuicStreamType type, ChannelHandler handler,
                            Promise<QuicStreamChannel> promise) {
-            long streamId = idGenerator.nextStreamId(type == QuicStreamType.BIDIRECTIONAL);
+            final long streamId;
             try {
-                Quiche.throwIfError(streamSend0(streamId, Unpooled.EMPTY_BUFFER, false));
+                streamId = newLocalStream(type);
             } catch (Exception e) {
                 promise.setFailure(e);
                 return;
             }
-            if (type == QuicStreamType.UNIDIRECTIONAL) {
-                UNI_STREAMS_LEFT_UPDATER.decrementAndGet(QuicheQuicChannel.this);
-            } else {
-                BIDI_STREAMS_LEFT_UPDATER.decrementAndGet(QuicheQuicChannel.this);
-            }
             QuicheQuicStreamChannel streamChannel = addNewStreamChannel(streamId);
             if (handler != null) {
                 streamChannel.pipeline().addLast(handler);
@@ -1409,12 +1783,9 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
                 int bufferReaderIndex = buffer.readerIndex();
                 long memoryAddress = Quiche.memoryAddress(buffer) + bufferReaderIndex;
 
-                ByteBuffer recvInfo = connection.nextRecvInfo();
-                QuicheRecvInfo.setRecvInfo(recvInfo, sender, recipient);
-
                 SocketAddress oldRemote = remote;
 
-                if (connection.isRecvInfoChanged()) {
+                if (connection.isRecvInfoChanged(sender)) {
                     // Update the cached address
                     remote = sender;
                     pipeline().fireUserEventTriggered(
@@ -1426,6 +1797,8 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
                 try {
                     do  {
                         // Call quiche_conn_recv(...) until we consumed all bytes or we did receive some error.
+                        // The quiche_recv_info is shared per thread so we need to fill it before each call.
+                        ByteBuffer recvInfo = connection.recvInfo(sender, recipient);
                         int res = Quiche.quiche_conn_recv(connAddr, memoryAddress, bufferReadable,
                                 Quiche.memoryAddressWithPosition(recvInfo));
                         boolean done;
@@ -1441,19 +1814,14 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
                         }
 
                         // Process / schedule all tasks that were created.
-                        Runnable task = connection.sslTask();
+                        QuicheQuicConnection.SslTask task = connection.sslTask();
                         if (task != null) {
-                            if (runTasksDirectly()) {
-                                // Consume all tasks
-                                do {
-                                    task.run();
-                                } while ((task = connection.sslTask()) != null);
-                                processReceived(connAddr);
-                            } else {
-                                runAllTaskRecv(sslTaskExecutor, task);
-                            }
-                        } else {
+                            task = runSslTasksInline(task);
+                        }
+                        if (task == null) {
                             processReceived(connAddr);
+                        } else {
+                            offloadSslTask(task, true);
                         }
 
                         if (done) {
@@ -1515,35 +1883,6 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
             }
         }
 
-        private void runAllTaskRecv(Executor sslTaskExecutor, Runnable task) {
-            sslTaskExecutor.execute(decorateTaskRecv(sslTaskExecutor, task));
-        }
-
-        private Runnable decorateTaskRecv(Executor sslTaskExecutor, Runnable task) {
-            return () -> {
-                try {
-                    task.run();
-                } finally {
-                    // Move back to the EventLoop.
-                    eventLoop().execute(() -> {
-                        if (connection != null) {
-                            Runnable nextTask = connection.sslTask();
-                            // Consume all tasks before moving back to the EventLoop.
-                            if (nextTask == null) {
-                                processReceived(connection.address());
-
-                                // Call connection send to continue handshake if needed.
-                                if (connectionSend()) {
-                                    forceFlushParent();
-                                }
-                            } else {
-                                sslTaskExecutor.execute(decorateTaskRecv(sslTaskExecutor, nextTask));
-                            }
-                        }
-                    });
-                }
-            };
-        }
         void recv() {
             if ((reantranceGuard & IN_RECV) != 0 || isConnDestroyed()) {
                 return;
@@ -1570,23 +1909,37 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
             long connAddr = connection.address();
             long readableIterator = Quiche.quiche_conn_readable(connAddr);
             if (readableIterator != -1) {
+                long[] readableStreams = acquireStreamIdArray();
                 try {
                     // For streams we always process all streams when at least on read was requested.
                     if (recvStreamPending && streamReadable) {
+                        // Most of the time only a single stream is readable, in this case there is nothing to order
+                        // and so we can just let it read without going through the scheduledStreamReads queue.
+                        QuicheQuicStreamChannel singleReadable = null;
                         for (;;) {
                             int readable = Quiche.quiche_stream_iter_next(
                                     readableIterator, readableStreams);
                             for (int i = 0; i < readable; i++) {
                                 long streamId = readableStreams[i];
                                 QuicheQuicStreamChannel streamChannel = streams.get(streamId);
-                                if (streamChannel == null) {
+                                QuicStreamCallback callback = streamCallback;
+                                if (streamChannel == null && callback != null) {
+                                    recvCallbackStream(callback, streamId);
+                                } else if (streamChannel == null) {
                                     recvStreamPending = false;
                                     fireChannelReadCompletePending = true;
                                     streamChannel = addNewStreamChannel(streamId);
                                     streamChannel.readable();
                                     pipeline().fireChannelRead(streamChannel);
-                                } else {
-                                    streamChannel.readable();
+                                } else if (singleReadable == null && !streamChannel.readScheduled &&
+                                        (scheduledStreamReads == null || scheduledStreamReads.isEmpty())) {
+                                    singleReadable = streamChannel;
+                                } else if (singleReadable != streamChannel) {
+                                    if (singleReadable != null) {
+                                        enqueueStreamRead(singleReadable);
+                                        singleReadable = null;
+                                    }
+                                    enqueueStreamRead(streamChannel);
                                 }
                             }
                             if (readable < readableStreams.length) {
@@ -1595,13 +1948,46 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
                                 break;
                             }
                         }
+                        if (singleReadable != null) {
+                            singleReadable.readable();
+                        } else {
+                            readScheduledStreams();
+                        }
                     }
                 } finally {
+                    releaseStreamIdArray(readableStreams);
                     Quiche.quiche_stream_iter_free(readableIterator);
                 }
             }
         }
 
+        private void recvCallbackStream(QuicStreamCallback callback, long streamId) {
+            ByteBuf buffer = null;
+            try {
+                for (;;) {
+                    buffer = alloc().directBuffer(CALLBACK_STREAM_READ_SIZE);
+                    StreamRecvResult result = streamRecv(streamId, buffer);
+                    boolean fin = result == StreamRecvResult.FIN;
+                    if (buffer.isReadable() || fin) {
+                        ByteBuf data = buffer;
+                        buffer = null;
+                        callback.streamRead(QuicheQuicChannel.this, streamId, data, fin);
+                    } else {
+                        buffer.release();
+                        buffer = null;
+                    }
+                    if (result != StreamRecvResult.OK) {
+                        return;
+                    }
+                }
+            } catch (Throwable cause) {
+                if (buffer != null) {
+                    buffer.release();
+                }
+                callback.streamError(QuicheQuicChannel.this, streamId, cause);
+            }
+        }
+
         private void recvDatagram() {
             if (!supportsDatagram) {
                 return;
@@ -1699,8 +2085,17 @@ final class QuicheQuicChannel extends AbstractChannel implements QuicChannel {
         }
 
         private QuicheQuicStreamChannel addNewStreamChannel(long streamId) {
-            QuicheQuicStreamChannel streamChannel = new QuicheQuicStreamChannel(
-                    QuicheQuicChannel.this, streamId);
+            QuicheQuicStreamChannel streamChannel = null;
+            boolean recyclable = !isStreamLocalCreated(streamId) && config.getStreamChannelPoolSize() > 0;
+            if (recyclable && recycledStreamChannels != null) {
+                streamChannel = recycledStreamChannels.poll();
+            }
+            if (streamChannel == null) {
+                streamChannel = new QuicheQuicStreamChannel(QuicheQuicChannel.this, streamId);
+            } else {
+                streamChannel.reset(streamId);
+            }
+            streamChannel.recyclable = recyclable;
             QuicheQuicStreamChannel old = streams.put(streamId, streamChannel);
             assert old == null;
             streamChannel.writable(streamCapacity(streamId));
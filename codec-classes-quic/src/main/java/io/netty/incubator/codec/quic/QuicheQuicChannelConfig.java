@@ -22,6 +22,7 @@ import io.netty.channel.DefaultChannelConfig;
 import io.netty.channel.MessageSizeEstimator;
 import io.netty.channel.RecvByteBufAllocator;
 import io.netty.channel.WriteBufferWaterMark;
+import io.netty.util.internal.ObjectUtil;
 
 import java.util.Map;
 
@@ -33,6 +34,8 @@ final class QuicheQuicChannelConfig extends DefaultChannelConfig implements Quic
     private volatile QLogConfiguration qLogConfiguration;
     private volatile SegmentedDatagramPacketAllocator segmentedDatagramPacketAllocator =
             SegmentedDatagramPacketAllocator.NONE;
+    private volatile int streamReadBudget = 64 * 1024;
+    private volatile int streamChannelPoolSize;
 
     QuicheQuicChannelConfig(Channel channel) {
         super(channel);
@@ -41,7 +44,8 @@ final class QuicheQuicChannelConfig extends DefaultChannelConfig implements Quic
     @Override
     public Map<ChannelOption<?>, Object> getOptions() {
         return getOptions(super.getOptions(),
-                QuicChannelOption.QLOG, QuicChannelOption.SEGMENTED_DATAGRAM_PACKET_ALLOCATOR);
+                QuicChannelOption.QLOG, QuicChannelOption.SEGMENTED_DATAGRAM_PACKET_ALLOCATOR,
+                QuicChannelOption.STREAM_READ_BUDGET, QuicChannelOption.STREAM_CHANNEL_POOL_SIZE);
     }
 
     @SuppressWarnings("unchecked")
@@ -53,6 +57,12 @@ final class QuicheQuicChannelConfig extends DefaultChannelConfig implements Quic
         if (option == QuicChannelOption.SEGMENTED_DATAGRAM_PACKET_ALLOCATOR) {
             return (T) getSegmentedDatagramPacketAllocator();
         }
+        if (option == QuicChannelOption.STREAM_READ_BUDGET) {
+            return (T) Integer.valueOf(getStreamReadBudget());
+        }
+        if (option == QuicChannelOption.STREAM_CHANNEL_POOL_SIZE) {
+            return (T) Integer.valueOf(getStreamChannelPoolSize());
+        }
         return super.getOption(option);
     }
 
@@ -66,6 +76,14 @@ final class QuicheQuicChannelConfig extends DefaultChannelConfig implements Quic
             setSegmentedDatagramPacketAllocator((SegmentedDatagramPacketAllocator) value);
             return true;
         }
+        if (option == QuicChannelOption.STREAM_READ_BUDGET) {
+            setStreamReadBudget((Integer) value);
+            return true;
+        }
+        if (option == QuicChannelOption.STREAM_CHANNEL_POOL_SIZE) {
+            setStreamChannelPoolSize((Integer) value);
+            return true;
+        }
         return super.setOption(option, value);
     }
 
@@ -155,4 +173,20 @@ final class QuicheQuicChannelConfig extends DefaultChannelConfig implements Quic
             SegmentedDatagramPacketAllocator segmentedDatagramPacketAllocator) {
         this.segmentedDatagramPacketAllocator = segmentedDatagramPacketAllocator;
     }
+
+    int getStreamReadBudget() {
+        return streamReadBudget;
+    }
+
+    private void setStreamReadBudget(int streamReadBudget) {
+        this.streamReadBudget = ObjectUtil.checkPositiveOrZero(streamReadBudget, "streamReadBudget");
+    }
+
+    int getStreamChannelPoolSize() {
+        return streamChannelPoolSize;
+    }
+
+    private void setStreamChannelPoolSize(int streamChannelPoolSize) {
+        this.streamChannelPoolSize = ObjectUtil.checkPositiveOrZero(streamChannelPoolSize, "streamChannelPoolSize");
+    }
 }
@@ -21,7 +21,6 @@ import io.netty.channel.ChannelPromise;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.nio.ByteBuffer;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
 
@@ -44,11 +43,10 @@ final class QuicheQuicClientCodec extends QuicheQuicCodec {
 
     @Override
     protected QuicheQuicChannel quicPacketRead(
-            ChannelHandlerContext ctx, InetSocketAddress sender, InetSocketAddress recipient,
+            ChannelHandlerContext ctx, InetSocketAddress sender, InetSocketAddress recipient, ByteBuf packet,
             QuicPacketType type, int version, ByteBuf scid, ByteBuf dcid,
             ByteBuf token) {
-        ByteBuffer key = dcid.internalNioBuffer(dcid.readerIndex(), dcid.readableBytes());
-        return getChannel(key);
+        return getChannel(dcid);
     }
 
     @Override
@@ -21,16 +21,18 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.MessageSizeEstimator;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.util.internal.logging.InternalLogger;
-import io.netty.util.internal.logging.InternalLoggerFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import io.netty.util.internal.PlatformDependent;
 
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static io.netty.incubator.codec.quic.Quiche.allocateNativeOrder;
 
@@ -38,18 +40,50 @@ import static io.netty.incubator.codec.quic.Quiche.allocateNativeOrder;
  * Abstract base class for QUIC codecs.
  */
 abstract class QuicheQuicCodec extends ChannelDuplexHandler {
-    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(QuicheQuicCodec.class);
+    private static final int INGRESS_SCRATCH_SIZE = QuicHeaderParser.MAX_BATCH_SIZE * Quic.MAX_DATAGRAM_SIZE;
 
-    private final Map<ByteBuffer, QuicheQuicChannel> connections = new HashMap<>();
+    private final ConnectionIdMap<QuicheQuicChannel> connections = new ConnectionIdMap<>();
     private final Queue<QuicheQuicChannel> needsFireChannelReadComplete = new ArrayDeque<>();
+    // Connections that wrote while the parent channel was not writable, in the order in which they hit backpressure.
+    private final Queue<QuicheQuicChannel> needsWritability = new ArrayDeque<>();
+    private final Consumer<QuicheQuicChannel> needsWritabilityAdder = needsWritability::add;
+    // Completions of SSL tasks that were offloaded to the sslTaskExecutor. These are added by other threads and are
+    // processed in batches, so all the tasks that complete within one EventLoop run only need a single wakeup.
+    private final Queue<Runnable> sslTaskCompletions = PlatformDependent.newMpscQueue();
+    private final AtomicBoolean sslTaskCompletionsScheduled = new AtomicBoolean();
+    private final Consumer<Runnable> sslTaskCompletionsAdder = this::addSslTaskCompletion;
+    private ChannelHandlerContext ctx;
+    private Runnable sslTaskCompletionsTask;
+    // Packets that were received but not processed yet. These are parsed in batches to reduce the number of JNI calls.
+    private final ByteBuf[] receivedPackets = new ByteBuf[QuicHeaderParser.MAX_BATCH_SIZE];
+    private final InetSocketAddress[] receivedSenders = new InetSocketAddress[QuicHeaderParser.MAX_BATCH_SIZE];
+    private final InetSocketAddress[] receivedRecipients = new InetSocketAddress[QuicHeaderParser.MAX_BATCH_SIZE];
+    private int numReceivedPackets;
+    // Used to copy received packets that are not backed by direct memory or are read-only, so we don't need to
+    // allocate a new buffer for each of these. It is large enough to hold a full batch of packets.
+    private ByteBuf ingressScratch;
     private final int maxTokenLength;
     private final FlushStrategy flushStrategy;
+    private final long maxFlushDelayNanos;
 
     private MessageSizeEstimator.Handle estimatorHandle;
     private QuicHeaderParser headerParser;
     private QuicHeaderParser.QuicHeaderProcessor parserCallback;
+    // Set while a batch is parsed, as the handler may be removed from within the callback and so we must not free
+    // the batch or the parser before parseBatch(...) returns.
+    private boolean parsingBatch;
+    private boolean removed;
     private int pendingBytes;
     private int pendingPackets;
+    private long firstPendingWriteNanos;
+    // Flushes that are triggered by the connections are coalesced, so the packets of all connections are flushed
+    // together and the transport can write them with as few syscalls as possible (for example via sendmmsg).
+    private boolean coalesceFlushes;
+    private boolean flushPending;
+    private boolean flushTaskScheduled;
+    private Runnable flushTask;
+    private Runnable delayedFlushTask;
+    private ScheduledFuture<?> delayedFlushFuture;
 
     protected final QuicheConfig config;
     protected final int localConnIdLength;
@@ -61,28 +95,44 @@ abstract class QuicheQuicCodec extends ChannelDuplexHandler {
         this.config = config;
         this.localConnIdLength = localConnIdLength;
         this.maxTokenLength = maxTokenLength;
-        this.flushStrategy = flushStrategy;
+        this.flushStrategy = flushStrategy.instanceForCodec();
+        this.maxFlushDelayNanos = this.flushStrategy.maxFlushDelayNanos();
     }
 
     protected QuicheQuicChannel getChannel(ByteBuffer key) {
         return connections.get(key);
     }
 
+    protected QuicheQuicChannel getChannel(ByteBuf key) {
+        return connections.get(key);
+    }
+
     protected void putChannel(QuicheQuicChannel channel) {
+        channel.parentWritabilityWaitList(needsWritabilityAdder);
+        channel.sslTaskCompletions(sslTaskCompletionsAdder);
         connections.put(channel.key(), channel);
     }
 
-    protected void removeChannel(QuicheQuicChannel channel) {
-        connections.remove(channel.key());
+    protected boolean removeChannel(QuicheQuicChannel channel) {
+        return connections.remove(channel.key(), channel);
+    }
+
+    protected int numChannels() {
+        return connections.size();
     }
 
     @Override
     public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
         senderSockaddrMemory = allocateNativeOrder(Quiche.SIZEOF_SOCKADDR_STORAGE);
         recipientSockaddrMemory = allocateNativeOrder(Quiche.SIZEOF_SOCKADDR_STORAGE);
         headerParser = new QuicHeaderParser(maxTokenLength, localConnIdLength);
         parserCallback = (sender, recipient, buffer, type, version, scid, dcid, token) -> {
-            QuicheQuicChannel channel = quicPacketRead(ctx, sender, recipient,
+            if (removed) {
+                // The handler was removed while processing the batch, just drop the rest.
+                return;
+            }
+            QuicheQuicChannel channel = quicPacketRead(ctx, sender, recipient, buffer,
                     type, version, scid,
                     dcid, token);
             if (channel != null) {
@@ -93,6 +143,14 @@ abstract class QuicheQuicCodec extends ChannelDuplexHandler {
             }
         };
         estimatorHandle = ctx.channel().config().getMessageSizeEstimator().newHandle();
+        delayedFlushTask = () -> delayedFlush(ctx);
+        flushTask = () -> {
+            flushTaskScheduled = false;
+            if (pendingBytes > 0 && !ctx.isRemoved()) {
+                flushNow(ctx);
+            }
+        };
+        sslTaskCompletionsTask = () -> processSslTaskCompletions(ctx);
     }
 
     @Override
@@ -100,55 +158,161 @@ abstract class QuicheQuicCodec extends ChannelDuplexHandler {
         try {
             // Use a copy of the array as closing the channel may cause an unwritable event that could also
             // remove channels.
-            for (QuicheQuicChannel ch : connections.values().toArray(new QuicheQuicChannel[0])) {
+            for (QuicheQuicChannel ch : connections.values()) {
                 ch.forceClose();
+                // Go through removeChannel(...) so sub-classes can release any state they hold for the channel.
+                removeChannel(ch);
             }
             connections.clear();
 
             needsFireChannelReadComplete.clear();
-        } finally {
-            config.free();
-            if (senderSockaddrMemory != null) {
-                senderSockaddrMemory.release();
+            needsWritability.clear();
+            if (delayedFlushFuture != null) {
+                delayedFlushFuture.cancel(false);
+                delayedFlushFuture = null;
             }
-            if (recipientSockaddrMemory != null) {
-                recipientSockaddrMemory.release();
-            }
-            if (headerParser != null) {
-                headerParser.close();
-                headerParser = null;
+        } finally {
+            removed = true;
+            if (!parsingBatch) {
+                // Otherwise this is done once parseBatch(...) returns.
+                freeResources();
             }
         }
     }
 
+    private void freeResources() {
+        releaseReceivedPackets();
+        if (ingressScratch != null) {
+            ingressScratch.release();
+            ingressScratch = null;
+        }
+        config.free();
+        if (senderSockaddrMemory != null) {
+            senderSockaddrMemory.release();
+        }
+        if (recipientSockaddrMemory != null) {
+            recipientSockaddrMemory.release();
+        }
+        if (headerParser != null) {
+            headerParser.close();
+            headerParser = null;
+        }
+    }
+
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         DatagramPacket packet = (DatagramPacket) msg;
+        ByteBuf buffer = packet.content();
+        // Must be computed before we copy, as the copy releases the content of the packet.
+        int segmentSize = SegmentedDatagramPackets.segmentSize(packet);
+        if (!buffer.isDirect() || buffer.isReadOnly()) {
+            // We need a direct buffer as otherwise we can not access the memoryAddress. Also quiche_conn_recv(...)
+            // may modify the input buffer, so we can't use read-only buffers.
+            buffer = copyToIngressScratch(ctx, buffer);
+        }
         try {
-            ByteBuf buffer = ((DatagramPacket) msg).content();
-            if (!buffer.isDirect()) {
-                // We need a direct buffer as otherwise we can not access the memoryAddress.
-                // Let's do a copy to direct memory.
-                ByteBuf direct = ctx.alloc().directBuffer(buffer.readableBytes());
-                try {
-                    direct.writeBytes(buffer, buffer.readerIndex(), buffer.readableBytes());
-                    handleQuicPacket(packet.sender(), packet.recipient(), direct);
-                } finally {
-                    direct.release();
+            if (segmentSize > 0) {
+                // The packet was coalesced via UDP_GRO, split it into its segments. Each segment is a slice of the
+                // received buffer so we don't need to copy.
+                int idx = buffer.readerIndex();
+                int end = buffer.writerIndex();
+                while (idx < end) {
+                    int length = Math.min(segmentSize, end - idx);
+                    addReceivedPacket(packet.sender(), packet.recipient(), buffer.retainedSlice(idx, length));
+                    idx += length;
                 }
             } else {
-                handleQuicPacket(packet.sender(), packet.recipient(), buffer);
+                addReceivedPacket(packet.sender(), packet.recipient(), buffer.retain());
+            }
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Copy the readable bytes of the given buffer into the ingress scratch buffer and return a slice of it. The given
+     * buffer is released.
+     */
+    private ByteBuf copyToIngressScratch(ChannelHandlerContext ctx, ByteBuf buffer) {
+        int length = buffer.readableBytes();
+        try {
+            if (length <= INGRESS_SCRATCH_SIZE && ingressScratch != null && ingressScratch.writableBytes() < length) {
+                // Process all queued packets, which makes the whole scratch buffer usable again if no slices of it
+                // are still in use.
+                processReceivedPackets();
+                if (ingressScratch != null && ingressScratch.writableBytes() < length) {
+                    ingressScratch.release();
+                    ingressScratch = null;
+                }
+            }
+            if (length > INGRESS_SCRATCH_SIZE || removed) {
+                // Too big to fit, which can only happen with UDP_GRO, or the handler was removed while processing
+                // the queued packets and so the scratch buffer was already released.
+                return ctx.alloc().directBuffer(length).writeBytes(buffer, buffer.readerIndex(), length);
+            }
+            if (ingressScratch == null) {
+                ingressScratch = ctx.alloc().directBuffer(INGRESS_SCRATCH_SIZE, INGRESS_SCRATCH_SIZE);
             }
+            int idx = ingressScratch.writerIndex();
+            ingressScratch.writeBytes(buffer, buffer.readerIndex(), length);
+            return ingressScratch.retainedSlice(idx, length);
         } finally {
-            packet.release();
+            buffer.release();
         }
     }
 
-    private void handleQuicPacket(InetSocketAddress sender, InetSocketAddress recipient, ByteBuf buffer) {
+    private void addReceivedPacket(InetSocketAddress sender, InetSocketAddress recipient, ByteBuf buffer) {
+        if (removed) {
+            // The handler was removed while processing a previous batch.
+            buffer.release();
+            return;
+        }
+        // Queue the packet so we can parse the headers of the whole burst that was read with one call.
+        int idx = numReceivedPackets++;
+        receivedPackets[idx] = buffer;
+        receivedSenders[idx] = sender;
+        receivedRecipients[idx] = recipient;
+        if (numReceivedPackets == receivedPackets.length) {
+            processReceivedPackets();
+        }
+    }
+
+    private void processReceivedPackets() {
+        if (numReceivedPackets == 0 || removed) {
+            return;
+        }
+        parsingBatch = true;
         try {
-            headerParser.parse(sender, recipient, buffer, parserCallback);
-        } catch (Exception e) {
-            LOGGER.debug("Error while processing QUIC packet", e);
+            headerParser.parseBatch(receivedSenders, receivedRecipients, receivedPackets, numReceivedPackets,
+                    parserCallback);
+        } finally {
+            parsingBatch = false;
+            if (removed) {
+                freeResources();
+            } else {
+                releaseReceivedPackets();
+            }
+        }
+    }
+
+    private void releaseReceivedPackets() {
+        for (int i = 0; i < numReceivedPackets; i++) {
+            receivedPackets[i].release();
+            receivedPackets[i] = null;
+            receivedSenders[i] = null;
+            receivedRecipients[i] = null;
+        }
+        numReceivedPackets = 0;
+        if (ingressScratch != null) {
+            if (ingressScratch.refCnt() == 1) {
+                // All the slices were released, so we can reuse the whole scratch buffer.
+                ingressScratch.clear();
+            } else {
+                // There are still slices in use, which happens if the batch was full while we were splitting a
+                // UDP_GRO datagram. Let these own the memory and use a new scratch buffer for the next copy.
+                ingressScratch.release();
+                ingressScratch = null;
+            }
         }
     }
 
@@ -158,6 +322,7 @@ abstract class QuicheQuicCodec extends ChannelDuplexHandler {
      * @param ctx the {@link ChannelHandlerContext}.
      * @param sender the {@link InetSocketAddress} of the sender of the QUIC packet
      * @param recipient the {@link InetSocketAddress} of the recipient of the QUIC packet
+     * @param packet the raw QUIC packet. The ownership is not transferred.
      * @param type the type of the packet.
      * @param version the QUIC version
      * @param scid the source connection id.
@@ -168,32 +333,78 @@ abstract class QuicheQuicCodec extends ChannelDuplexHandler {
      * @throws Exception  thrown if there is an error during processing.
      */
     protected abstract QuicheQuicChannel quicPacketRead(ChannelHandlerContext ctx, InetSocketAddress sender,
-                                                        InetSocketAddress recipient, QuicPacketType type, int version,
+                                                        InetSocketAddress recipient, ByteBuf packet,
+                                                        QuicPacketType type, int version,
                                                         ByteBuf scid, ByteBuf dcid, ByteBuf token) throws Exception;
 
     @Override
     public final void channelReadComplete(ChannelHandlerContext ctx) {
-        for (;;) {
-            QuicheQuicChannel channel = needsFireChannelReadComplete.poll();
-            if (channel == null) {
-                break;
+        // Let all connections that received data in this read loop produce their packets before we flush once.
+        coalesceFlushes = true;
+        try {
+            processReceivedPackets();
+            for (;;) {
+                QuicheQuicChannel channel = needsFireChannelReadComplete.poll();
+                if (channel == null) {
+                    break;
+                }
+                channel.recvComplete();
+                if (channel.freeIfClosed()) {
+                    removeChannel(channel);
+                }
+            }
+        } finally {
+            stopCoalesceFlushes(ctx);
+        }
+    }
+
+    private void stopCoalesceFlushes(ChannelHandlerContext ctx) {
+        coalesceFlushes = false;
+        if (flushPending) {
+            flushPending = false;
+            if (pendingBytes > 0) {
+                flushNow(ctx);
             }
-            channel.recvComplete();
-            if (channel.freeIfClosed()) {
-                connections.remove(channel.key());
+        }
+    }
+
+    private void addSslTaskCompletion(Runnable completion) {
+        sslTaskCompletions.add(completion);
+        if (sslTaskCompletionsScheduled.compareAndSet(false, true)) {
+            ctx.executor().execute(sslTaskCompletionsTask);
+        }
+    }
+
+    private void processSslTaskCompletions(ChannelHandlerContext ctx) {
+        // Reset the flag before we drain the queue, so we never miss a completion that is added concurrently.
+        sslTaskCompletionsScheduled.set(false);
+        // Let all connections continue their handshakes before we flush once.
+        coalesceFlushes = true;
+        try {
+            for (;;) {
+                Runnable completion = sslTaskCompletions.poll();
+                if (completion == null) {
+                    break;
+                }
+                completion.run();
             }
+        } finally {
+            stopCoalesceFlushes(ctx);
         }
     }
 
     @Override
     public final void channelWritabilityChanged(ChannelHandlerContext ctx) {
         if (ctx.channel().isWritable()) {
-            Iterator<Map.Entry<ByteBuffer, QuicheQuicChannel>> entries = connections.entrySet().iterator();
-            while (entries.hasNext()) {
-                QuicheQuicChannel channel = entries.next().getValue();
-                // TODO: Be a bit smarter about this.
+            // Only notify the connections that actually hit backpressure. Channels that hit backpressure again while
+            // we drain the list are added to the tail, so they will not be served before the others had their turn.
+            int size = needsWritability.size();
+            while (size-- > 0 && ctx.channel().isWritable()) {
+                QuicheQuicChannel channel = needsWritability.poll();
                 channel.writable();
-                removeIfClosed(entries, channel);
+                if (channel.freeIfClosed()) {
+                    removeChannel(channel);
+                }
             }
         } else {
             // As we batch flushes we need to ensure we at least try to flush a batch once the channel becomes
@@ -208,6 +419,11 @@ abstract class QuicheQuicCodec extends ChannelDuplexHandler {
     public final void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)  {
         int size = estimatorHandle.size(msg);
         if (size > 0) {
+            if (pendingPackets == 0 && maxFlushDelayNanos > 0) {
+                // This is the first write since the last flush, ensure we flush within the max delay.
+                firstPendingWriteNanos = System.nanoTime();
+                scheduleDelayedFlush(ctx, maxFlushDelayNanos);
+            }
             pendingBytes += size;
             pendingPackets ++;
         }
@@ -225,19 +441,68 @@ abstract class QuicheQuicCodec extends ChannelDuplexHandler {
     @Override
     public final void flush(ChannelHandlerContext ctx) {
         if (pendingBytes > 0) {
-            flushNow(ctx);
+            if (coalesceFlushes) {
+                // We are in the read loop, the flush will happen once all connections were processed.
+                flushPending = true;
+            } else if (!ctx.channel().isWritable()) {
+                // Make room in the outbound buffer as fast as possible.
+                flushNow(ctx);
+            } else if (!flushTaskScheduled) {
+                if (hasPendingTasks(ctx.executor())) {
+                    // Flushes outside of the read loop (for example triggered by timeouts or writes to streams) are
+                    // queued behind the tasks that are already pending, as these may produce packets of other
+                    // connections that can then be written together. Tasks that are submitted later run after the
+                    // flush.
+                    flushTaskScheduled = true;
+                    ctx.executor().execute(flushTask);
+                } else {
+                    // Nothing is queued that could add more packets, so deferring would only add latency.
+                    flushNow(ctx);
+                }
+            }
+            // Otherwise a flush is already queued and will also write our packets.
         }
     }
 
+    private static boolean hasPendingTasks(EventExecutor executor) {
+        return executor instanceof SingleThreadEventExecutor &&
+                ((SingleThreadEventExecutor) executor).pendingTasks() > 0;
+    }
+
+    /**
+     * Write a packet that does not belong to any connection (for example a stateless response) and flush it together
+     * with the packets of the connections.
+     */
+    protected final void writeAndFlushBatched(ChannelHandlerContext ctx, Object msg) {
+        write(ctx, msg, ctx.voidPromise());
+        flush(ctx);
+    }
+
     private void flushNow(ChannelHandlerContext ctx) {
+        flushStrategy.flushed(pendingPackets, pendingBytes, ctx.channel().isWritable());
         pendingBytes = 0;
         pendingPackets = 0;
         ctx.flush();
     }
 
-    private static void removeIfClosed(Iterator<?> iterator, QuicheQuicChannel current) {
-        if (current.freeIfClosed()) {
-            iterator.remove();
+    private void scheduleDelayedFlush(ChannelHandlerContext ctx, long delayNanos) {
+        // If there is already a scheduled flush we just let it run and reschedule if needed, this is cheaper than
+        // cancel and schedule a new one on each flush.
+        if (delayedFlushFuture == null) {
+            delayedFlushFuture = ctx.executor().schedule(delayedFlushTask, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void delayedFlush(ChannelHandlerContext ctx) {
+        delayedFlushFuture = null;
+        if (pendingPackets == 0 || ctx.isRemoved()) {
+            return;
+        }
+        long remainingNanos = maxFlushDelayNanos - (System.nanoTime() - firstPendingWriteNanos);
+        if (remainingNanos <= 0) {
+            flushNow(ctx);
+        } else {
+            scheduleDelayedFlush(ctx, remainingNanos);
         }
     }
 }
@@ -17,6 +17,7 @@ package io.netty.incubator.codec.quic;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.util.ReferenceCounted;
+import io.netty.util.concurrent.FastThreadLocal;
 
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
@@ -25,29 +26,31 @@ import java.util.function.Supplier;
 final class QuicheQuicConnection {
     private static final int TOTAL_RECV_INFO_SIZE = Quiche.SIZEOF_QUICHE_RECV_INFO +
             Quiche.SIZEOF_SOCKADDR_STORAGE + Quiche.SIZEOF_SOCKADDR_STORAGE;
+
+    // The quiche_recv_info and quiche_send_info structs are only used within the scope of a single
+    // quiche_conn_recv / quiche_conn_send call, so there is no need to keep them around per connection. We share them
+    // between all connections that are served by the same thread.
+    private static final FastThreadLocal<InfoScratch> INFO_SCRATCH = new FastThreadLocal<InfoScratch>() {
+        @Override
+        protected InfoScratch initialValue() {
+            return new InfoScratch();
+        }
+
+        @Override
+        protected void onRemoval(InfoScratch scratch) {
+            scratch.release();
+        }
+    };
+
     private final QuicheQuicSslEngine engine;
     final long ssl;
     private ReferenceCounted refCnt;
 
-    // This block of memory is used to store the following structs (in this order):
-    // - quiche_recv_info
-    // - sockaddr_storage
-    // - quiche_recv_info
-    // - sockaddr_storage
-    // - quiche_send_info
-    // - quiche_send_info
-    //
-    // We need to have every stored 2 times as we need to check if the last sockaddr has changed between
-    // quiche_conn_recv and quiche_conn_send calls. If this happens we know a QUIC connection migration did happen.
-    private final ByteBuf recvInfoBuffer;
-    private final ByteBuf sendInfoBuffer;
-
-    private boolean recvInfoFirst = true;
-    private boolean sendInfoFirst = true;
-    private final ByteBuffer recvInfoBuffer1;
-    private final ByteBuffer recvInfoBuffer2;
-    private final ByteBuffer sendInfoBuffer1;
-    private final ByteBuffer sendInfoBuffer2;
+    // The addresses we last saw for this connection. These are used to detect if a QUIC connection migration did
+    // happen between quiche_conn_recv and quiche_conn_send calls.
+    private InetSocketAddress recvFrom;
+    private InetSocketAddress sendFrom;
+    private InetSocketAddress sendTo;
 
     private long connection;
 
@@ -56,19 +59,6 @@ final class QuicheQuicConnection {
         this.ssl = ssl;
         this.engine = engine;
         this.refCnt = refCnt;
-        // TODO: Maybe cache these per thread as we only use them temporary within a limited scope.
-        recvInfoBuffer = Quiche.allocateNativeOrder(2 * TOTAL_RECV_INFO_SIZE);
-        sendInfoBuffer = Quiche.allocateNativeOrder(2 * Quiche.SIZEOF_QUICHE_SEND_INFO);
-
-        // Let's memset the memory.
-        recvInfoBuffer.setZero(0, recvInfoBuffer.capacity());
-        sendInfoBuffer.setZero(0, sendInfoBuffer.capacity());
-
-        recvInfoBuffer1 = recvInfoBuffer.nioBuffer(0, TOTAL_RECV_INFO_SIZE);
-        recvInfoBuffer2 = recvInfoBuffer.nioBuffer(TOTAL_RECV_INFO_SIZE, TOTAL_RECV_INFO_SIZE);
-
-        sendInfoBuffer1 = sendInfoBuffer.nioBuffer(0, Quiche.SIZEOF_QUICHE_SEND_INFO);
-        sendInfoBuffer2 = sendInfoBuffer.nioBuffer(Quiche.SIZEOF_QUICHE_SEND_INFO, Quiche.SIZEOF_QUICHE_SEND_INFO);
         this.engine.connection = this;
     }
 
@@ -93,12 +83,15 @@ final class QuicheQuicConnection {
             }
         }
         if (release) {
-            recvInfoBuffer.release();
-            sendInfoBuffer.release();
+            // Don't keep this connection reachable via the thread-local scratch memory.
+            InfoScratch scratch = INFO_SCRATCH.getIfExists();
+            if (scratch != null && scratch.sendOwner == this) {
+                scratch.sendOwner = null;
+            }
         }
     }
 
-    Runnable sslTask() {
+    SslTask sslTask() {
         final Runnable task;
         synchronized (this) {
             if (connection != -1) {
@@ -110,14 +103,35 @@ final class QuicheQuicConnection {
         if (task == null) {
             return null;
         }
+        return new SslTask(task);
+    }
+
+    /**
+     * A task that was produced by BoringSSL for this connection.
+     */
+    final class SslTask implements Runnable {
+        private final Runnable task;
+
+        private SslTask(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Returns the type of the underlying task, which identifies what kind of work it does (for example
+         * certificate selection, certificate verification or signing).
+         */
+        Class<?> type() {
+            return task.getClass();
+        }
 
-        return () -> {
+        @Override
+        public void run() {
             if (connection == -1) {
                 return;
             }
 
             task.run();
-        };
+        }
     }
 
     QuicConnectionAddress sourceId() {
@@ -150,38 +164,82 @@ final class QuicheQuicConnection {
 
     void initInfo(InetSocketAddress local, InetSocketAddress remote) {
         assert connection != -1;
-        assert recvInfoBuffer.refCnt() != 0;
-        assert sendInfoBuffer.refCnt() != 0;
 
-        // Fill both quiche_recv_info structs with the same address.
-        QuicheRecvInfo.setRecvInfo(recvInfoBuffer1, remote, local);
-        QuicheRecvInfo.setRecvInfo(recvInfoBuffer2, remote, local);
-
-        // Fill both quiche_send_info structs with the same address.
-        QuicheSendInfo.setSendInfo(sendInfoBuffer1, local, remote);
-        QuicheSendInfo.setSendInfo(sendInfoBuffer2, local, remote);
+        recvFrom = remote;
+        sendFrom = local;
+        sendTo = remote;
     }
 
-    ByteBuffer nextRecvInfo() {
-        assert recvInfoBuffer.refCnt() != 0;
-        recvInfoFirst = !recvInfoFirst;
-        return recvInfoFirst ? recvInfoBuffer1 : recvInfoBuffer2;
+    /**
+     * Returns the {@code quiche_recv_info} that should be used for the next {@code quiche_conn_recv} call. The returned
+     * {@link ByteBuffer} is shared with all other connections that are served by the current thread and so must be
+     * filled again before each call.
+     */
+    ByteBuffer recvInfo(InetSocketAddress from, InetSocketAddress to) {
+        ByteBuffer recvInfo = INFO_SCRATCH.get().recvInfo;
+        QuicheRecvInfo.setRecvInfo(recvInfo, from, to);
+        return recvInfo;
     }
 
+    /**
+     * Returns the {@code quiche_send_info} that should be used for the next {@code quiche_conn_send} call. The returned
+     * {@link ByteBuffer} is shared with all other connections that are served by the current thread and so must not be
+     * used after any other connection may have been processed.
+     */
     ByteBuffer nextSendInfo() {
-        assert sendInfoBuffer.refCnt() != 0;
-        sendInfoFirst = !sendInfoFirst;
-        return sendInfoFirst ? sendInfoBuffer1 : sendInfoBuffer2;
+        InfoScratch scratch = INFO_SCRATCH.get();
+        if (scratch.sendOwner != this) {
+            // Some other connection used the memory since our last call, restore the addresses we saw last so we can
+            // compare these later.
+            QuicheSendInfo.setSendInfo(scratch.previousSendInfo, sendFrom, sendTo);
+            scratch.sendOwner = this;
+        }
+        return scratch.sendInfo;
     }
 
+    /**
+     * Returns {@code true} if the address that was filled in by the last {@code quiche_conn_send} call is different
+     * to the one that was used before.
+     */
     boolean isSendInfoChanged() {
-        assert sendInfoBuffer.refCnt() != 0;
-        return !QuicheSendInfo.isSameAddress(sendInfoBuffer1, sendInfoBuffer2);
+        InfoScratch scratch = INFO_SCRATCH.get();
+        assert scratch.sendOwner == this;
+        if (QuicheSendInfo.isSameAddress(scratch.sendInfo, scratch.previousSendInfo)) {
+            return false;
+        }
+        sendTo = QuicheSendInfo.getToAddress(scratch.sendInfo);
+        sendFrom = QuicheSendInfo.getFromAddress(scratch.sendInfo);
+
+        // Swap the buffers so we will compare with the new address from now on.
+        ByteBuffer previous = scratch.previousSendInfo;
+        scratch.previousSendInfo = scratch.sendInfo;
+        scratch.sendInfo = previous;
+        return true;
     }
 
-    boolean isRecvInfoChanged() {
-        assert recvInfoBuffer.refCnt() != 0;
-        return !QuicheRecvInfo.isSameAddress(recvInfoBuffer1, recvInfoBuffer2);
+    /**
+     * Returns the address that was filled in by the last {@code quiche_conn_send} call that changed the address.
+     */
+    InetSocketAddress sendToAddress() {
+        return sendTo;
+    }
+
+    /**
+     * Returns the local address that was filled in by the last {@code quiche_conn_send} call that changed the address.
+     */
+    InetSocketAddress sendFromAddress() {
+        return sendFrom;
+    }
+
+    /**
+     * Returns {@code true} if the given address is different to the one we received from before.
+     */
+    boolean isRecvInfoChanged(InetSocketAddress from) {
+        if (from.equals(recvFrom)) {
+            return false;
+        }
+        recvFrom = from;
+        return true;
     }
 
     boolean isClosed() {
@@ -199,4 +257,36 @@ final class QuicheQuicConnection {
             super.finalize();
         }
     }
+
+    private static final class InfoScratch {
+        // This block of memory is used to store the following structs (in this order):
+        // - quiche_recv_info
+        // - sockaddr_storage
+        // - sockaddr_storage
+        // - quiche_send_info
+        // - quiche_send_info
+        //
+        // We need to store quiche_send_info 2 times as we need to check if the sockaddr has changed between
+        // quiche_conn_send calls. If this happens we know a QUIC connection migration did happen.
+        private final ByteBuf buffer;
+        final ByteBuffer recvInfo;
+        ByteBuffer sendInfo;
+        ByteBuffer previousSendInfo;
+        QuicheQuicConnection sendOwner;
+
+        InfoScratch() {
+            buffer = Quiche.allocateNativeOrder(TOTAL_RECV_INFO_SIZE + 2 * Quiche.SIZEOF_QUICHE_SEND_INFO);
+            // Let's memset the memory.
+            buffer.setZero(0, buffer.capacity());
+            recvInfo = buffer.nioBuffer(0, TOTAL_RECV_INFO_SIZE);
+            sendInfo = buffer.nioBuffer(TOTAL_RECV_INFO_SIZE, Quiche.SIZEOF_QUICHE_SEND_INFO);
+            previousSendInfo = buffer.nioBuffer(
+                    TOTAL_RECV_INFO_SIZE + Quiche.SIZEOF_QUICHE_SEND_INFO, Quiche.SIZEOF_QUICHE_SEND_INFO);
+        }
+
+        void release() {
+            sendOwner = null;
+            buffer.release();
+        }
+    }
 }
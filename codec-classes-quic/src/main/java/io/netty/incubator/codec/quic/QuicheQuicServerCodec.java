@@ -29,6 +29,7 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static io.netty.incubator.codec.quic.Quiche.allocateNativeOrder;
@@ -38,6 +39,8 @@ import static io.netty.incubator.codec.quic.Quiche.allocateNativeOrder;
  */
 final class QuicheQuicServerCodec extends QuicheQuicCodec {
     private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(QuicheQuicServerCodec.class);
+    // Stateless responses are small, so we can write multiple of these into one buffer.
+    private static final int RESPONSE_BUFFER_SIZE = 16 * Quic.MAX_DATAGRAM_SIZE;
 
     private final Function<QuicChannel, ? extends QuicSslEngine> sslEngineProvider;
     private final Executor sslTaskExecutor;
@@ -49,8 +52,17 @@ final class QuicheQuicServerCodec extends QuicheQuicCodec {
     private final ChannelHandler streamHandler;
     private final Map.Entry<ChannelOption<?>, Object>[] streamOptionsArray;
     private final Map.Entry<AttributeKey<?>, Object>[] streamAttrsArray;
+    private final QuicheQuicServerShards shards;
+    private final int shardIndex;
+    private final QuicStatelessResponseLimiter statelessResponseLimiter;
+    private final int maxConnections;
+    private final int maxHandshakes;
+    private final QuicServerAdmissionMetrics admissionMetrics;
+    private final Consumer<QuicheQuicChannel> handshakeDoneListener = this::handshakeDone;
+    private int handshakes;
     private ByteBuf mintTokenBuffer;
     private ByteBuf connIdBuffer;
+    private ByteBuf responseBuffer;
 
     QuicheQuicServerCodec(QuicheConfig config,
                           int localConnIdLength,
@@ -64,8 +76,17 @@ final class QuicheQuicServerCodec extends QuicheQuicCodec {
                           Map.Entry<AttributeKey<?>, Object>[] attrsArray,
                           ChannelHandler streamHandler,
                           Map.Entry<ChannelOption<?>, Object>[] streamOptionsArray,
-                          Map.Entry<AttributeKey<?>, Object>[] streamAttrsArray) {
+                          Map.Entry<AttributeKey<?>, Object>[] streamAttrsArray,
+                          QuicheQuicServerShards shards,
+                          int shardIndex,
+                          QuicStatelessResponseLimiter statelessResponseLimiter,
+                          int maxConnections,
+                          int maxHandshakes,
+                          QuicServerAdmissionMetrics admissionMetrics) {
         super(config, localConnIdLength, tokenHandler.maxTokenLength(), flushStrategy);
+        if (shards != null && localConnIdLength == 0) {
+            throw new IllegalArgumentException("localConnIdLength must be > 0 when using shards");
+        }
         this.tokenHandler = tokenHandler;
         this.connectionIdAddressGenerator = connectionIdAddressGenerator;
         this.sslEngineProvider = sslEngineProvider;
@@ -76,6 +97,17 @@ final class QuicheQuicServerCodec extends QuicheQuicCodec {
         this.streamHandler = streamHandler;
         this.streamOptionsArray = streamOptionsArray;
         this.streamAttrsArray = streamAttrsArray;
+        this.shards = shards;
+        this.shardIndex = shardIndex;
+        this.statelessResponseLimiter = statelessResponseLimiter;
+        this.maxConnections = maxConnections;
+        this.maxHandshakes = maxHandshakes;
+        this.admissionMetrics = admissionMetrics;
+    }
+
+    // package-private for testing only
+    QuicheQuicServerShards shards() {
+        return shards;
     }
 
     @Override
@@ -83,10 +115,16 @@ final class QuicheQuicServerCodec extends QuicheQuicCodec {
         super.handlerAdded(ctx);
         connIdBuffer = Quiche.allocateNativeOrder(localConnIdLength);
         mintTokenBuffer = allocateNativeOrder(tokenHandler.maxTokenLength());
+        if (shards != null) {
+            shards.register(shardIndex, ctx);
+        }
     }
 
     @Override
     public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (shards != null) {
+            shards.unregister(shardIndex, ctx);
+        }
         super.handlerRemoved(ctx);
         if (connIdBuffer != null) {
             connIdBuffer.release();
@@ -94,43 +132,178 @@ final class QuicheQuicServerCodec extends QuicheQuicCodec {
         if (mintTokenBuffer != null) {
             mintTokenBuffer.release();
         }
+        if (responseBuffer != null) {
+            responseBuffer.release();
+            responseBuffer = null;
+        }
     }
 
     @Override
     protected QuicheQuicChannel quicPacketRead(ChannelHandlerContext ctx, InetSocketAddress sender,
-                                               InetSocketAddress recipient, QuicPacketType type, int version,
+                                               InetSocketAddress recipient, ByteBuf packet,
+                                               QuicPacketType type, int version,
                                                ByteBuf scid, ByteBuf dcid, ByteBuf token) throws Exception {
-        ByteBuffer dcidByteBuffer = dcid.internalNioBuffer(dcid.readerIndex(), dcid.readableBytes());
-        QuicheQuicChannel channel = getChannel(dcidByteBuffer);
+        QuicheQuicChannel channel = getChannel(dcid);
         if (channel == null && type == QuicPacketType.ZERO_RTT && connectionIdAddressGenerator.isIdempotent()) {
             // 0 rtt packet should obtain the server generated dcid
-            channel = getChannel(connectionIdAddressGenerator.newId(dcidByteBuffer, localConnIdLength));
+            connIdBuffer.clear();
+            connectionIdAddressGenerator.writeId(dcid, connIdBuffer, localConnIdLength);
+            channel = getChannel(connIdBuffer);
         }
         if (channel == null) {
+            if (forwardToOwningShard(sender, recipient, packet, type, dcid)) {
+                return null;
+            }
             return handleServer(ctx, sender, recipient, type, version, scid, dcid, token);
         }
 
         return channel;
     }
 
+    /**
+     * Forward the packet to the shard that owns the connection if the kernel delivered it to the wrong socket.
+     * This may happen if the 4-tuple of the connection changed (for example because of a NAT rebinding).
+     *
+     * @return {@code true} if the packet was forwarded and so should not be processed by this codec.
+     */
+    private boolean forwardToOwningShard(InetSocketAddress sender, InetSocketAddress recipient, ByteBuf packet,
+                                         QuicPacketType type, ByteBuf dcid) {
+        if (shards == null || type == QuicPacketType.INITIAL || type == QuicPacketType.ZERO_RTT) {
+            // Initial and 0-RTT packets use a connection id that was chosen by the client so these don't carry
+            // any shard information.
+            return false;
+        }
+        if (dcid.readableBytes() != localConnIdLength) {
+            return false;
+        }
+        int owner = ShardedQuicConnectionIdGenerator.shardIndex(dcid);
+        if (owner == shardIndex || owner >= shards.numShards() ||
+                !ShardedQuicConnectionIdGenerator.hasValidTag(dcid, shards.connectionIdSeed())) {
+            // Not generated by one of the other shards, most likely spoofed. Handle it like any other packet for an
+            // unknown connection so we don't pay for the copy and the hop to the other EventLoop.
+            return false;
+        }
+        return shards.forward(owner, sender, recipient, packet);
+    }
+
+    /**
+     * Returns {@code true} if a new connection for the given sender can be created, {@code false} if the attempt
+     * should be rejected.
+     * <p>
+     * As the connection attempt is dropped the client will retry once its own timer fires. When tokens are validated
+     * the sender already went through a Retry at this point, so a flood of spoofed Initial packets never uses up any
+     * of the slots.
+     */
+    private boolean admit(InetSocketAddress sender) {
+        if (numChannels() >= maxConnections) {
+            if (admissionMetrics != null) {
+                admissionMetrics.connectionRejected();
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Rejected connection from {} as the maximum number of connections ({}) was reached",
+                        sender, maxConnections);
+            }
+            return false;
+        }
+        if (handshakes >= maxHandshakes) {
+            if (admissionMetrics != null) {
+                admissionMetrics.handshakeRejected();
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Rejected connection from {} as the maximum number of handshakes ({}) was reached",
+                        sender, maxHandshakes);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private void handshakeDone(QuicheQuicChannel channel) {
+        handshakes--;
+        if (admissionMetrics != null) {
+            admissionMetrics.handshakeDone();
+        }
+    }
+
+    @Override
+    protected boolean removeChannel(QuicheQuicChannel channel) {
+        if (!super.removeChannel(channel)) {
+            return false;
+        }
+        // If the handshake did not complete yet we need to release the slot now.
+        channel.notifyHandshakeDone();
+        if (admissionMetrics != null) {
+            admissionMetrics.connectionRemoved();
+        }
+        return true;
+    }
+
+    private boolean tryAcquireStatelessResponse(InetSocketAddress sender) {
+        if (statelessResponseLimiter == null || statelessResponseLimiter.tryAcquire(sender)) {
+            return true;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Suppressed stateless response to {} as the rate limit was exceeded", sender);
+        }
+        return false;
+    }
+
+    private void releaseStatelessResponse(InetSocketAddress sender) {
+        if (statelessResponseLimiter != null) {
+            statelessResponseLimiter.release(sender);
+        }
+    }
+
+    /**
+     * Returns the buffer into which the next stateless response should be written. There are at least
+     * {@link Quic#MAX_DATAGRAM_SIZE} bytes writable.
+     */
+    private ByteBuf responseBuffer(ChannelHandlerContext ctx) {
+        ByteBuf buffer = responseBuffer;
+        if (buffer != null) {
+            if (buffer.writableBytes() >= Quic.MAX_DATAGRAM_SIZE) {
+                return buffer;
+            }
+            if (buffer.refCnt() == 1) {
+                // All the responses that were written into the buffer were released, so we can reuse it.
+                return buffer.clear();
+            }
+            buffer.release();
+        }
+        responseBuffer = buffer = ctx.alloc().directBuffer(RESPONSE_BUFFER_SIZE, RESPONSE_BUFFER_SIZE);
+        return buffer;
+    }
+
+    private void writeStatelessResponse(ChannelHandlerContext ctx, ByteBuf out, int index, int length,
+                                        InetSocketAddress recipient) {
+        out.writerIndex(index + length);
+        // Don't flush directly, this allows to write all the responses that are triggered by one read with as few
+        // syscalls as possible.
+        writeAndFlushBatched(ctx, new DatagramPacket(out.retainedSlice(index, length), recipient));
+    }
+
     private QuicheQuicChannel handleServer(ChannelHandlerContext ctx, InetSocketAddress sender,
                                            InetSocketAddress recipient,
                                  @SuppressWarnings("unused") QuicPacketType type, int version,
                                  ByteBuf scid, ByteBuf dcid, ByteBuf token) throws Exception {
         if (!Quiche.quiche_version_is_supported(version)) {
             // Version is not supported, try to negotiate it.
-            ByteBuf out = ctx.alloc().directBuffer(Quic.MAX_DATAGRAM_SIZE);
+            if (!tryAcquireStatelessResponse(sender)) {
+                return null;
+            }
+            ByteBuf out = responseBuffer(ctx);
             int outWriterIndex = out.writerIndex();
 
             int res = Quiche.quiche_negotiate_version(
                     Quiche.memoryAddress(scid) + scid.readerIndex(), scid.readableBytes(),
                     Quiche.memoryAddress(dcid) + dcid.readerIndex(), dcid.readableBytes(),
-                    Quiche.memoryAddress(out) + outWriterIndex, out.writableBytes());
+                    Quiche.memoryAddress(out) + outWriterIndex, Quic.MAX_DATAGRAM_SIZE);
             if (res < 0) {
-                out.release();
+                // Nothing is sent, so give the permit back.
+                releaseStatelessResponse(sender);
                 Quiche.throwIfError(res);
             } else {
-                ctx.writeAndFlush(new DatagramPacket(out.writerIndex(outWriterIndex + res), sender));
+                writeStatelessResponse(ctx, out, outWriterIndex, res, sender);
             }
             return null;
         }
@@ -142,29 +315,42 @@ final class QuicheQuicServerCodec extends QuicheQuicCodec {
             mintTokenBuffer.clear();
             connIdBuffer.clear();
 
-            // The remote peer did not send a token.
+            // The remote peer did not send a token. A handler that can mint tokens will trigger a Retry, so make sure
+            // we are allowed to send it before we spend the work to mint the token.
+            boolean acquired = false;
+            if (tokenHandler.maxTokenLength() > 0) {
+                if (!tryAcquireStatelessResponse(sender)) {
+                    return null;
+                }
+                acquired = statelessResponseLimiter != null;
+            }
             if (tokenHandler.writeToken(mintTokenBuffer, dcid, sender)) {
-                ByteBuffer connId = connectionIdAddressGenerator.newId(
-                        dcid.internalNioBuffer(dcid.readerIndex(), dcid.readableBytes()), localConnIdLength);
-                connIdBuffer.writeBytes(connId);
+                connectionIdAddressGenerator.writeId(dcid, connIdBuffer, localConnIdLength);
 
-                ByteBuf out = ctx.alloc().directBuffer(Quic.MAX_DATAGRAM_SIZE);
+                ByteBuf out = responseBuffer(ctx);
                 int outWriterIndex = out.writerIndex();
                 int written = Quiche.quiche_retry(Quiche.memoryAddress(scid) + scid.readerIndex(), scid.readableBytes(),
                         Quiche.memoryAddress(dcid) + dcid.readerIndex(), dcid.readableBytes(),
                         Quiche.memoryAddress(connIdBuffer) + connIdBuffer.readerIndex(), connIdBuffer.readableBytes(),
                         Quiche.memoryAddress(mintTokenBuffer) + mintTokenBuffer.readerIndex(),
                         mintTokenBuffer.readableBytes(),
-                        version, Quiche.memoryAddress(out) + outWriterIndex, out.writableBytes());
+                        version, Quiche.memoryAddress(out) + outWriterIndex, Quic.MAX_DATAGRAM_SIZE);
 
                 if (written < 0) {
-                    out.release();
+                    if (acquired) {
+                        // Nothing is sent, so give the permit back.
+                        statelessResponseLimiter.release(sender);
+                    }
                     Quiche.throwIfError(written);
                 } else {
-                    ctx.writeAndFlush(new DatagramPacket(out.writerIndex(outWriterIndex + written), sender));
+                    writeStatelessResponse(ctx, out, outWriterIndex, written, sender);
                 }
                 return null;
             }
+            if (acquired) {
+                // No Retry will be sent after all.
+                statelessResponseLimiter.release(sender);
+            }
             offset = 0;
             noToken = true;
         } else {
@@ -185,18 +371,20 @@ final class QuicheQuicServerCodec extends QuicheQuicCodec {
 
         if (noToken) {
             connIdBuffer.clear();
-            key = connectionIdAddressGenerator.newId(
-                    dcid.internalNioBuffer(dcid.readerIndex(), dcid.readableBytes()), localConnIdLength);
-            connIdBuffer.writeBytes(key.duplicate());
+            connectionIdAddressGenerator.writeId(dcid, connIdBuffer, localConnIdLength);
             scidAddr = Quiche.memoryAddress(connIdBuffer) + connIdBuffer.readerIndex();
             scidLen = localConnIdLength;
             ocidAddr = -1;
             ocidLen = -1;
 
-            QuicheQuicChannel existingChannel = getChannel(key);
+            QuicheQuicChannel existingChannel = getChannel(connIdBuffer);
             if (existingChannel != null) {
                 return existingChannel;
             }
+            // Only allocate the key once we know we need to create a new channel.
+            byte[] bytes = new byte[localConnIdLength];
+            connIdBuffer.getBytes(connIdBuffer.readerIndex(), bytes);
+            key = ByteBuffer.wrap(bytes);
         } else {
             scidAddr = Quiche.memoryAddress(dcid) + dcid.readerIndex();
             scidLen = localConnIdLength;
@@ -207,6 +395,9 @@ final class QuicheQuicServerCodec extends QuicheQuicCodec {
             dcid.getBytes(dcid.readerIndex(), bytes);
             key = ByteBuffer.wrap(bytes);
         }
+        if (!admit(sender)) {
+            return null;
+        }
         QuicheQuicChannel channel = QuicheQuicChannel.forServer(
                 ctx.channel(), key, recipient, sender, config.isDatagramSupported(),
                 streamHandler, streamOptionsArray, streamAttrsArray, this::removeChannel, sslTaskExecutor);
@@ -244,6 +435,11 @@ final class QuicheQuicServerCodec extends QuicheQuicCodec {
         channel.attachQuicheConnection(connection);
 
         putChannel(channel);
+        handshakes++;
+        channel.handshakeDoneListener(handshakeDoneListener);
+        if (admissionMetrics != null) {
+            admissionMetrics.connectionAdded();
+        }
         ctx.channel().eventLoop().register(channel);
         channel.pipeline().fireUserEventTriggered(new QuicConnectionEvent(null, sender));
         return channel;
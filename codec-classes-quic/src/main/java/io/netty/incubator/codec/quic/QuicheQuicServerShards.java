@@ -0,0 +1,117 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps track of all the {@link QuicheQuicServerCodec}s that share the same port via {@code SO_REUSEPORT} and
+ * allows to forward packets to the shard that owns the connection.
+ */
+final class QuicheQuicServerShards {
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(QuicheQuicServerShards.class);
+
+    // Limits the number of forwarded packets that wait to be processed by a shard, so a flood of packets with spoofed
+    // connection ids can not queue up an unbounded number of copies and tasks.
+    private static final int MAX_PENDING_FORWARDS = 1024;
+
+    private final AtomicReferenceArray<ChannelHandlerContext> contexts;
+    private final AtomicIntegerArray pendingForwards;
+    private final int connectionIdSeed = PlatformDependent.threadLocalRandom().nextInt();
+
+    QuicheQuicServerShards(int numShards) {
+        contexts = new AtomicReferenceArray<>(numShards);
+        pendingForwards = new AtomicIntegerArray(numShards);
+    }
+
+    int numShards() {
+        return contexts.length();
+    }
+
+    /**
+     * Returns the secret seed that is used to tag the connection ids of all the shards.
+     */
+    int connectionIdSeed() {
+        return connectionIdSeed;
+    }
+
+    void register(int shardIndex, ChannelHandlerContext ctx) {
+        if (!contexts.compareAndSet(shardIndex, null, ctx)) {
+            throw new IllegalStateException("Shard " + shardIndex + " was already added to a pipeline");
+        }
+    }
+
+    void unregister(int shardIndex, ChannelHandlerContext ctx) {
+        contexts.compareAndSet(shardIndex, ctx, null);
+    }
+
+    /**
+     * Forward a copy of the given packet to the codec of the shard with the given index.
+     *
+     * @return {@code true} if the packet was forwarded or dropped because the shard is overloaded, {@code false} if
+     *         the shard is not active.
+     */
+    boolean forward(int shardIndex, InetSocketAddress sender, InetSocketAddress recipient, ByteBuf packet) {
+        ChannelHandlerContext ctx = contexts.get(shardIndex);
+        if (ctx == null) {
+            return false;
+        }
+        if (pendingForwards.incrementAndGet(shardIndex) > MAX_PENDING_FORWARDS) {
+            pendingForwards.decrementAndGet(shardIndex);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Dropped QUIC packet from {} as too many packets are pending for shard {}",
+                        sender, shardIndex);
+            }
+            return true;
+        }
+        // The packet is owned by the caller and will be released once we return, so we need to make a copy.
+        ByteBuf copy = ctx.alloc().directBuffer(packet.readableBytes())
+                .writeBytes(packet, packet.readerIndex(), packet.readableBytes());
+        DatagramPacket forwarded = new DatagramPacket(copy, recipient, sender);
+        try {
+            ctx.executor().execute(() -> {
+                pendingForwards.decrementAndGet(shardIndex);
+                if (ctx.isRemoved()) {
+                    forwarded.release();
+                    return;
+                }
+                QuicheQuicCodec codec = (QuicheQuicCodec) ctx.handler();
+                try {
+                    codec.channelRead(ctx, forwarded);
+                } catch (Exception e) {
+                    LOGGER.debug("Error while processing forwarded QUIC packet", e);
+                } finally {
+                    codec.channelReadComplete(ctx);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingForwards.decrementAndGet(shardIndex);
+            forwarded.release();
+            return false;
+        }
+        return true;
+    }
+}
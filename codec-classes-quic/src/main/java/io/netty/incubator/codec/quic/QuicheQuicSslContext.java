@@ -27,7 +27,6 @@ import javax.crypto.NoSuchPaddingException;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLSession;
-import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509ExtendedKeyManager;
@@ -52,6 +51,7 @@ import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
 import java.util.function.LongFunction;
 
+import static io.netty.util.internal.ObjectUtil.checkNonEmpty;
 import static io.netty.util.internal.ObjectUtil.checkNotNull;
 
 final class QuicheQuicSslContext extends QuicSslContext {
@@ -64,13 +64,15 @@ final class QuicheQuicSslContext extends QuicSslContext {
     private final QuicheQuicSslSessionContext sessionCtx;
     private final QuicheQuicSslEngineMap engineMap = new QuicheQuicSslEngineMap();
     private final QuicClientSessionCache sessionCache;
+    private final BoringSSLSessionTicketCallback sessionTicketCallback = new BoringSSLSessionTicketCallback();
+    private boolean sessionTicketCallbackSet;
     final NativeSslContext nativeSslContext;
 
     QuicheQuicSslContext(boolean server, long sessionTimeout, long sessionCacheSize,
                          ClientAuth clientAuth, TrustManagerFactory trustManagerFactory,
                          KeyManagerFactory keyManagerFactory, String password,
                          Mapping<? super String, ? extends QuicSslContext> mapping,
-                         Boolean earlyData, BoringSSLKeylog keylog,
+                         Boolean earlyData, BoringSSLKeylog keylog, QuicClientSessionStore sessionStore,
                          String... applicationProtocols) {
         Quic.ensureAvailability();
         this.server = server;
@@ -106,19 +108,24 @@ final class QuicheQuicSslContext extends QuicSslContext {
         }
         sessionCache = server ? null : new QuicClientSessionCache();
         int verifyMode = server ? boringSSLVerifyModeForServer(this.clientAuth) : BoringSSL.SSL_VERIFY_PEER;
+        BoringSSLCertificateCallback certificateCallback =
+                new BoringSSLCertificateCallback(engineMap, keyManager, password);
         nativeSslContext = new NativeSslContext(BoringSSL.SSLContext_new(server, applicationProtocols,
                 new BoringSSLHandshakeCompleteCallback(engineMap),
-                new BoringSSLCertificateCallback(engineMap, keyManager, password),
+                certificateCallback,
                 new BoringSSLCertificateVerifyCallback(engineMap, trustManager),
                 mapping == null ? null : new BoringSSLTlsextServernameCallback(engineMap, mapping),
                 keylog == null ? null : new BoringSSLKeylogCallback(engineMap, keylog),
                 server ? null : new BoringSSLSessionCallback(engineMap, sessionCache), privateKeyMethod, verifyMode,
-                BoringSSL.subjectNames(trustManager.getAcceptedIssuers())));
+                BoringSSL.subjectNames(trustManager.getAcceptedIssuers())), certificateCallback);
         apn = new QuicheQuicApplicationProtocolNegotiator(applicationProtocols);
         if (this.sessionCache != null) {
             // Cache is handled via our own implementation.
             this.sessionCache.setSessionCacheSize((int) sessionCacheSize);
             this.sessionCache.setSessionTimeout((int) sessionTimeout);
+            if (sessionStore != null) {
+                this.sessionCache.setSessionStore(sessionStore);
+            }
         } else {
             // Cache is handled by BoringSSL internally
             BoringSSL.SSLContext_setSessionCacheSize(
@@ -275,7 +282,7 @@ final class QuicheQuicSslContext extends QuicSslContext {
     }
 
     @Override
-    public SSLSessionContext sessionContext() {
+    public QuicSslSessionContext sessionContext() {
         return sessionCtx;
     }
 
@@ -338,6 +345,22 @@ final class QuicheQuicSslContext extends QuicSslContext {
         }
     }
 
+    void setTicketKeys(SslSessionTicketKey... keys) {
+        checkNonEmpty(keys, "keys");
+        for (int i = 0; i < keys.length; i++) {
+            checkNotNull(keys[i], "keys[" + i + "]");
+        }
+        sessionTicketCallback.setSessionTicketKeys(keys);
+        synchronized (this) {
+            if (!sessionTicketCallbackSet) {
+                // Only set the callback once the keys are known, as until then we want to use the internal keys
+                // of BoringSSL.
+                BoringSSL.SSLContext_set_session_ticket_callback(nativeSslContext.address(), sessionTicketCallback);
+                sessionTicketCallbackSet = true;
+            }
+        }
+    }
+
     @SuppressWarnings("deprecation")
     private static final class QuicheQuicApplicationProtocolNegotiator implements ApplicationProtocolNegotiator {
         private final List<String> protocols;
@@ -356,7 +379,7 @@ final class QuicheQuicSslContext extends QuicSslContext {
         }
     }
 
-    private static final class QuicheQuicSslSessionContext implements SSLSessionContext {
+    private static final class QuicheQuicSslSessionContext implements QuicSslSessionContext {
 
         private final QuicheQuicSslContext context;
 
@@ -399,6 +422,11 @@ final class QuicheQuicSslContext extends QuicSslContext {
             context.setSessionCacheSize(size);
         }
 
+        @Override
+        public void setTicketKeys(SslSessionTicketKey... keys) {
+            context.setTicketKeys(keys);
+        }
+
         @Override
         public int getSessionCacheSize() {
             return (int) context.sessionCacheSize();
@@ -407,17 +435,26 @@ final class QuicheQuicSslContext extends QuicSslContext {
 
     static final class NativeSslContext extends AbstractReferenceCounted {
         private final long ctx;
+        private final BoringSSLCertificateCallback certificateCallback;
 
-        NativeSslContext(long ctx) {
+        NativeSslContext(long ctx, BoringSSLCertificateCallback certificateCallback) {
             this.ctx = ctx;
+            this.certificateCallback = certificateCallback;
         }
 
         long address() {
             return ctx;
         }
 
+        BoringSSLCertificateCallback certificateCallback() {
+            return certificateCallback;
+        }
+
         @Override
         protected void deallocate() {
+            // The cached certificates are stored in the CRYPTO_BUFFER_POOL of the SSL_CTX, so these need to be
+            // released first.
+            certificateCallback.free();
             BoringSSL.SSLContext_free(ctx);
         }
 
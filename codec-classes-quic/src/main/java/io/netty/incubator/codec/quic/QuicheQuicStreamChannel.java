@@ -27,6 +27,7 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.DefaultChannelId;
 import io.netty.channel.DefaultChannelPipeline;
+import io.netty.channel.DefaultMessageSizeEstimator;
 import io.netty.channel.EventLoop;
 import io.netty.channel.PendingWriteQueue;
 import io.netty.channel.RecvByteBufAllocator;
@@ -34,6 +35,8 @@ import io.netty.channel.VoidChannelPromise;
 import io.netty.channel.socket.ChannelInputShutdownEvent;
 import io.netty.channel.socket.ChannelInputShutdownReadComplete;
 import io.netty.channel.socket.ChannelOutputShutdownException;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import io.netty.util.DefaultAttributeMap;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.PromiseNotifier;
@@ -48,18 +51,21 @@ import java.util.concurrent.RejectedExecutionException;
 /**
  * {@link QuicStreamChannel} implementation that uses <a href="https://github.com/cloudflare/quiche">quiche</a>.
  */
-final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicStreamChannel {
+final class QuicheQuicStreamChannel implements QuicStreamChannel {
     private static final ChannelMetadata METADATA = new ChannelMetadata(false);
     private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(QuicheQuicStreamChannel.class);
     private final QuicheQuicChannel parent;
-    private final ChannelId id;
     private final ChannelPipeline pipeline;
     private final QuicStreamChannelUnsafe unsafe;
-    private final ChannelPromise closePromise;
-    private final PendingWriteQueue queue;
+    // These are replaced when the channel is reused for another stream, see reset(long).
+    private ChannelId id;
+    private ChannelPromise closePromise;
+    private DefaultAttributeMap attributes;
+    // Only created once we need to queue a write, most short-lived streams never need it.
+    private PendingWriteQueue queue;
 
-    private final QuicStreamChannelConfig config;
-    private final QuicStreamAddress address;
+    private QuicStreamChannelConfig config;
+    private QuicStreamAddress address;
 
     private boolean readable;
     private boolean readPending;
@@ -67,6 +73,14 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
     private boolean inWriteQueued;
     private boolean finReceived;
     private boolean finSent;
+    private boolean removedFromParent;
+    // Set if the channel should be handed back to the parent once it was closed, unregistered and removed.
+    boolean recyclable;
+
+    // Only used by the read scheduling of the parent QuicheQuicChannel.
+    int readUrgency;
+    long readSequence;
+    boolean readScheduled;
 
     private volatile boolean registered;
     private volatile boolean writable = true;
@@ -86,7 +100,6 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
         config = new QuicheQuicStreamChannelConfig(this);
         this.address = new QuicStreamAddress(streamId);
         this.closePromise = newPromise();
-        queue = new PendingWriteQueue(this);
         // Local created unidirectional streams have the input shutdown by spec. There will never be any data for
         // these to be read.
         if (parent.streamType(streamId) == QuicStreamType.UNIDIRECTIONAL && parent.isStreamLocalCreated(streamId)) {
@@ -94,6 +107,62 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
         }
     }
 
+    /**
+     * Reset the state of this closed channel so it can be reused for the stream with the given id. Everything that a
+     * user could have changed or that is bound to the old stream is replaced.
+     */
+    void reset(long streamId) {
+        assert !active && !registered && pipeline.first() == null;
+        id = DefaultChannelId.newInstance();
+        address = new QuicStreamAddress(streamId);
+        config = new QuicheQuicStreamChannelConfig(this);
+        closePromise = newPromise();
+        attributes = null;
+        queue = null;
+        unsafe.recvHandle = null;
+        readable = false;
+        readPending = false;
+        inRecv = false;
+        inWriteQueued = false;
+        finReceived = false;
+        finSent = false;
+        removedFromParent = false;
+        readUrgency = 0;
+        readSequence = 0;
+        readScheduled = false;
+        writable = true;
+        active = true;
+        inputShutdown = false;
+        outputShutdown = false;
+        priority = null;
+        capacity = 0;
+    }
+
+    private void recycleIfDone() {
+        // The pipeline caches the handle of the MessageSizeEstimator that was used first, so only reuse the channel
+        // if it still uses the default one.
+        if (recyclable && removedFromParent && !registered && !readScheduled && pipeline.first() == null &&
+                config.getMessageSizeEstimator() == DefaultMessageSizeEstimator.DEFAULT) {
+            recyclable = false;
+            parent.recycleStreamChannel(this);
+        }
+    }
+
+    @Override
+    public <T> Attribute<T> attr(AttributeKey<T> key) {
+        DefaultAttributeMap attributes = this.attributes;
+        if (attributes == null) {
+            this.attributes = attributes = new DefaultAttributeMap();
+        }
+        return attributes.attr(key);
+    }
+
+    @Override
+    public <T> boolean hasAttr(AttributeKey<T> key) {
+        DefaultAttributeMap attributes = this.attributes;
+        return attributes != null && attributes.hasAttr(key);
+    }
+
     @Override
     public QuicStreamAddress localAddress() {
         return address;
@@ -273,6 +342,8 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
             parent().streamClosed(streamId());
             inputShutdown = true;
             outputShutdown = true;
+            removedFromParent = true;
+            recycleIfDone();
         }
     }
 
@@ -504,7 +575,7 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
             } catch (Exception ignore) {
                 // Just ignore
             } finally {
-                if (!queue.isEmpty()) {
+                if (queue != null && !queue.isEmpty()) {
                     // Only fail if the queue is non-empty.
                     queue.removeAndFailAll(new ClosedChannelException());
                 }
@@ -561,6 +632,7 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
                     pipeline.fireChannelUnregistered();
                 }
                 promise.setSuccess();
+                recycleIfDone();
             });
         }
 
@@ -628,7 +700,7 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
             boolean wasFinSent = QuicheQuicStreamChannel.this.finSent;
             inWriteQueued = true;
             try {
-                if (queue.isEmpty()) {
+                if (queue == null || queue.isEmpty()) {
                     return false;
                 }
                 boolean written = false;
@@ -659,9 +731,10 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
         @Override
         public void write(Object msg, ChannelPromise promise) {
             assert eventLoop().inEventLoop();
+            // Heap buffers that are backed by a single array can be sent without copying these to direct memory first.
             if (msg instanceof ByteBuf) {
                 ByteBuf buffer = (ByteBuf)  msg;
-                if (!buffer.isDirect()) {
+                if (needsDirectCopy(buffer)) {
                     ByteBuf tmpBuffer = alloc().directBuffer(buffer.readableBytes());
                     tmpBuffer.writeBytes(buffer, buffer.readerIndex(), buffer.readableBytes());
                     buffer.release();
@@ -670,7 +743,7 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
             } else if (msg instanceof QuicStreamFrame) {
                 QuicStreamFrame frame = (QuicStreamFrame) msg;
                 ByteBuf buffer = frame.content();
-                if (!buffer.isDirect()) {
+                if (needsDirectCopy(buffer)) {
                     ByteBuf tmpBuffer = alloc().directBuffer(buffer.readableBytes());
                     tmpBuffer.writeBytes(buffer, buffer.readerIndex(), buffer.readableBytes());
                     buffer.release();
@@ -683,7 +756,7 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
                 return;
             }
 
-            if (!queue.isEmpty()) {
+            if (queue != null && !queue.isEmpty()) {
                 // Something is queued already.
                 queue.add(msg, promise);
                 if (finSent) {
@@ -702,6 +775,9 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
                     promise.setSuccess();
                     mayNeedWritabilityUpdate = capacity == 0;
                 } else {
+                    if (queue == null) {
+                        queue = new PendingWriteQueue(QuicheQuicStreamChannel.this);
+                    }
                     queue.add(msg, promise);
                     mayNeedWritabilityUpdate = true;
                 }
@@ -717,6 +793,10 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
             }
         }
 
+        private boolean needsDirectCopy(ByteBuf buffer) {
+            return !buffer.isDirect() && !(buffer.hasArray() && Quiche.canStreamSendArray());
+        }
+
         private boolean write0(Object msg) throws Exception {
             if (type() == QuicStreamType.UNIDIRECTIONAL && !isLocalCreated()) {
                 throw new UnsupportedOperationException(
@@ -744,20 +824,29 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
 
             boolean sendSomething = false;
             try {
-                do {
-                    int res = parent().streamSend(streamId(), buffer, fin);
-
-                    // Update the capacity as well.
-                    int cap = parent.streamCapacity(streamId());
-                    if (cap >= 0) {
-                        capacity = cap;
-                    }
-                    if (Quiche.throwIfError(res) || (readable && res == 0)) {
-                        return false;
+                // Send all components of the buffer and fetch the new capacity with one native call.
+                long res = parent().streamSend(streamId(), buffer, fin);
+                if (res < 0) {
+                    if (Quiche.throwIfError((int) res)) {
+                        // QUICHE_ERR_DONE, there is no capacity left.
+                        capacity = 0;
                     }
-                    sendSomething = true;
-                    buffer.skipBytes(res);
-                } while (buffer.isReadable());
+                    return false;
+                }
+                int cap = Quiche.streamSendVectoredCapacity(res);
+                if (cap >= 0) {
+                    capacity = cap;
+                }
+                int written = Quiche.streamSendVectoredWritten(res);
+                if (readable && written == 0) {
+                    return false;
+                }
+                sendSomething = true;
+                buffer.skipBytes(written);
+                if (buffer.isReadable()) {
+                    // Not everything could be written, we will continue once the stream is writable again.
+                    return false;
+                }
 
                 if (fin) {
                     finSent = true;
@@ -850,10 +939,17 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
                 @SuppressWarnings("deprecation")
                 RecvByteBufAllocator.Handle allocHandle = this.recvBufAllocHandle();
                 boolean readFrames = config.isReadFrames();
+                int readBudget = parent().streamReadBudget();
+                long bytesRead = 0;
 
                 // We should loop as long as a read() was requested and there is anything left to read, which means the
                 // stream was marked as readable before.
                 while (active && readPending && readable) {
+                    if (readBudget > 0 && bytesRead >= readBudget) {
+                        // Give the other streams of the connection a chance to read, we continue in the next round.
+                        parent().scheduleStreamRead(QuicheQuicStreamChannel.this);
+                        break;
+                    }
                     allocHandle.reset(config);
                     ByteBuf byteBuf = null;
                     QuicheQuicChannel parent = parent();
@@ -883,6 +979,7 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
                                     throw new Error();
                             }
                             allocHandle.lastBytesRead(byteBuf.readableBytes());
+                            bytesRead += byteBuf.readableBytes();
                             if (allocHandle.lastBytesRead() <= 0) {
                                 byteBuf.release();
                                 if (finReceived && readFrames) {
@@ -908,7 +1005,8 @@ final class QuicheQuicStreamChannel extends DefaultAttributeMap implements QuicS
                                 pipeline.fireChannelRead(byteBuf);
                             }
                             byteBuf = null;
-                            continueReading = allocHandle.continueReading();
+                            continueReading = allocHandle.continueReading() &&
+                                    (readBudget <= 0 || bytesRead < readBudget);
                         }
 
                         if (readCompleteNeeded) {
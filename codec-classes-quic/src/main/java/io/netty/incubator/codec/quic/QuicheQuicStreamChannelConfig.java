@@ -29,11 +29,17 @@ final class QuicheQuicStreamChannelConfig extends DefaultChannelConfig implement
     // If you receive a FIN you should still keep the stream open until you write a FIN as well.
     private volatile boolean allowHalfClosure = true;
     private volatile boolean readFrames;
+    // Most streams use the default allocator, so share the wrapper for it.
+    private static final DirectIoByteBufAllocator DEFAULT_ALLOCATOR =
+            new DirectIoByteBufAllocator(ByteBufAllocator.DEFAULT);
+
     volatile DirectIoByteBufAllocator allocator;
 
     QuicheQuicStreamChannelConfig(QuicStreamChannel channel) {
         super(channel);
-        allocator = new DirectIoByteBufAllocator(super.getAllocator());
+        ByteBufAllocator allocator = super.getAllocator();
+        this.allocator = allocator == ByteBufAllocator.DEFAULT ?
+                DEFAULT_ALLOCATOR : new DirectIoByteBufAllocator(allocator);
     }
 
     @Override
@@ -15,6 +15,8 @@
  */
 package io.netty.incubator.codec.quic;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.internal.ObjectUtil;
 
 import java.nio.ByteBuffer;
@@ -22,6 +24,12 @@ import java.security.SecureRandom;
 
 final class SecureRandomQuicConnectionIdGenerator implements QuicConnectionIdGenerator {
     private static final SecureRandom RANDOM = new SecureRandom();
+    private static final FastThreadLocal<byte[]> ID_BYTES = new FastThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[Quiche.QUICHE_MAX_CONN_ID_LEN];
+        }
+    };
 
     static final QuicConnectionIdGenerator INSTANCE = new SecureRandomQuicConnectionIdGenerator();
 
@@ -41,6 +49,19 @@ final class SecureRandomQuicConnectionIdGenerator implements QuicConnectionIdGen
         return newId(length);
     }
 
+    @Override
+    public void writeId(ByteBuf out, int length) {
+        ObjectUtil.checkInRange(length, 0, maxConnectionIdLength(), "length");
+        byte[] bytes = ID_BYTES.get();
+        RANDOM.nextBytes(bytes);
+        out.writeBytes(bytes, 0, length);
+    }
+
+    @Override
+    public void writeId(ByteBuf input, ByteBuf out, int length) {
+        writeId(out, length);
+    }
+
     @Override
     public int maxConnectionIdLength() {
         return Quiche.QUICHE_MAX_CONN_ID_LEN;
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Collects the packets of a connection back to back in one buffer, so they can be sent as the segments of a single
+ * {@link DatagramPacket} via {@code UDP_SEGMENT} (GSO). All segments of a batch go to the same address and all of
+ * them, except the last one, have the same size.
+ * <p>
+ * The buffer is shared by all connections that are served by the same thread. Each batch is handed over as a
+ * retained slice and the next batch is written into the unused tail, so a small packet does not pin a buffer that is
+ * big enough for {@link SegmentedDatagramPacketAllocator#maxNumSegments()} packets.
+ */
+final class SegmentedDatagramPacketBatch {
+
+    private static final FastThreadLocal<ByteBuf[]> SPARE_BUFFER = new FastThreadLocal<ByteBuf[]>() {
+        @Override
+        protected ByteBuf[] initialValue() {
+            return new ByteBuf[1];
+        }
+
+        @Override
+        protected void onRemoval(ByteBuf[] spare) {
+            if (spare[0] != null) {
+                spare[0].release();
+                spare[0] = null;
+            }
+        }
+    };
+
+    private final ByteBufAllocator alloc;
+    private final SegmentedDatagramPacketAllocator allocator;
+    private final int maxNumSegments;
+    private final int bufferSize;
+
+    private ByteBuf out;
+    // The number and size of the segments in out that were not taken yet.
+    private int numSegments;
+    private int segmentSize;
+    private int lastSegmentSize;
+    private InetSocketAddress address;
+
+    SegmentedDatagramPacketBatch(ByteBufAllocator alloc, SegmentedDatagramPacketAllocator allocator,
+                                 int maxDatagramSize) {
+        this.alloc = alloc;
+        this.allocator = allocator;
+        this.maxNumSegments = allocator.maxNumSegments();
+        this.bufferSize = maxNumSegments * maxDatagramSize;
+    }
+
+    /**
+     * Returns a buffer with at least {@code len} writable bytes. The next packet must be written at its
+     * {@link ByteBuf#writerIndex()} and then passed to {@link #add(int, InetSocketAddress)}.
+     */
+    ByteBuf buffer(int len) {
+        if (out == null) {
+            // Take the buffer, so a send of another connection that is triggered while we use it allocates its own.
+            ByteBuf[] spare = SPARE_BUFFER.get();
+            out = spare[0];
+            spare[0] = null;
+            if (out != null && out.writableBytes() < len) {
+                out.release();
+                out = null;
+            }
+            if (out == null) {
+                out = alloc.directBuffer(Math.max(bufferSize, len));
+            }
+        } else if (out.writableBytes() < len) {
+            // Not enough space left, move the segments that were not taken yet to a new buffer.
+            ByteBuf newOut = alloc.directBuffer(Math.max(bufferSize, out.readableBytes() + len));
+            newOut.writeBytes(out);
+            out.release();
+            out = newOut;
+        }
+        return out;
+    }
+
+    /**
+     * Adds the packet of {@code written} bytes, that was written into {@link #buffer(int)}, to the batch. Returns the
+     * segments that need to be sent before it, or {@code null} if the packet could be added to the current batch.
+     */
+    DatagramPacket add(int written, InetSocketAddress address) {
+        out.writerIndex(out.writerIndex() + written);
+        DatagramPacket previous = null;
+        // All segments must go to the same address and all, except the last one, must have the same size.
+        if (numSegments > 0 && (written > segmentSize || !address.equals(this.address))) {
+            previous = newPacket(out.readRetainedSlice(out.readableBytes() - written));
+            numSegments = 0;
+        }
+        if (numSegments == 0) {
+            segmentSize = written;
+            this.address = address;
+        }
+        numSegments++;
+        lastSegmentSize = written;
+        return previous;
+    }
+
+    /**
+     * Returns the current batch if it needs to be sent now, which is the case if the maximum number of segments was
+     * reached or if the last packet was smaller than the others and so must be the last segment.
+     */
+    DatagramPacket takeIfComplete() {
+        if (numSegments == maxNumSegments || (numSegments > 0 && lastSegmentSize < segmentSize)) {
+            return take();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the current batch or {@code null} if it is empty.
+     */
+    DatagramPacket take() {
+        if (numSegments == 0) {
+            return null;
+        }
+        DatagramPacket packet = newPacket(out.readRetainedSlice(out.readableBytes()));
+        numSegments = 0;
+        return packet;
+    }
+
+    private DatagramPacket newPacket(ByteBuf buffer) {
+        if (numSegments == 1) {
+            // Only one segment, there is no need to use segments.
+            return new DatagramPacket(buffer, address);
+        }
+        return allocator.newPacket(buffer, segmentSize, address);
+    }
+
+    /**
+     * Gives back the buffer, so its unused tail can be used by the next send. Segments that were not taken are
+     * dropped.
+     */
+    void release() {
+        ByteBuf buffer = out;
+        if (buffer == null) {
+            return;
+        }
+        out = null;
+        numSegments = 0;
+        buffer.readerIndex(buffer.writerIndex());
+        ByteBuf[] spare = SPARE_BUFFER.get();
+        if (buffer.isWritable() && (spare[0] == null || spare[0].writableBytes() < buffer.writableBytes())) {
+            ByteBuf old = spare[0];
+            spare[0] = buffer;
+            buffer = old;
+        }
+        if (buffer != null) {
+            buffer.release();
+        }
+    }
+}
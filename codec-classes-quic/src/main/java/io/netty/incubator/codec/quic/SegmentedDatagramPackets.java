@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+/**
+ * Utility methods to detect {@link DatagramPacket}s that were coalesced via {@code UDP_GRO} by the kernel and so
+ * contain multiple QUIC packets of the same size. As the native transports are optional we can not reference their
+ * classes directly.
+ */
+final class SegmentedDatagramPackets {
+    private static final InternalLogger LOGGER = InternalLoggerFactory.getInstance(SegmentedDatagramPackets.class);
+    private static final Class<?> UNIX_SEGMENTED_DATAGRAM_PACKET_CLASS;
+
+    static {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName("io.netty.channel.unix.SegmentedDatagramPacket", false,
+                    SegmentedDatagramPackets.class.getClassLoader());
+        } catch (Throwable cause) {
+            LOGGER.debug("io.netty.channel.unix.SegmentedDatagramPacket not available, UDP_GRO will not be used",
+                    cause);
+            clazz = null;
+        }
+        UNIX_SEGMENTED_DATAGRAM_PACKET_CLASS = clazz;
+    }
+
+    private SegmentedDatagramPackets() { }
+
+    /**
+     * Returns the size of each segment if the given {@link DatagramPacket} was coalesced via {@code UDP_GRO} and so
+     * needs to be split, {@code 0} otherwise.
+     */
+    static int segmentSize(DatagramPacket packet) {
+        if (UNIX_SEGMENTED_DATAGRAM_PACKET_CLASS != null && UNIX_SEGMENTED_DATAGRAM_PACKET_CLASS.isInstance(packet)) {
+            int segmentSize = UnixSegmentedDatagramPackets.segmentSize(packet);
+            if (segmentSize < packet.content().readableBytes()) {
+                return segmentSize;
+            }
+        }
+        return 0;
+    }
+
+    // Only loaded once we know the class is on the classpath.
+    private static final class UnixSegmentedDatagramPackets {
+        static int segmentSize(DatagramPacket packet) {
+            return ((io.netty.channel.unix.SegmentedDatagramPacket) packet).segmentSize();
+        }
+    }
+}
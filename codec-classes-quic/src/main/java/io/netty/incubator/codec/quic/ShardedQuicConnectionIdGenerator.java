@@ -0,0 +1,135 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.ObjectUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link QuicConnectionIdGenerator} which wraps another {@link QuicConnectionIdGenerator} and encodes the index of
+ * the shard that owns the connection into the first byte of every generated connection id. This allows a sharded
+ * server to find the shard that is responsible for a packet even if the kernel delivered it to another socket.
+ * <p>
+ * The second byte contains a tag that is derived from the rest of the id and a secret seed that is shared by all the
+ * shards. This allows to cheaply drop most of the packets with spoofed connection ids before these are forwarded.
+ */
+final class ShardedQuicConnectionIdGenerator implements QuicConnectionIdGenerator {
+    // The shard index is stored in a single byte.
+    static final int MAX_SHARDS = 256;
+
+    private final QuicConnectionIdGenerator delegate;
+    private final byte shardIndex;
+    private final int seed;
+
+    ShardedQuicConnectionIdGenerator(QuicConnectionIdGenerator delegate, int shardIndex) {
+        this(delegate, shardIndex, 0);
+    }
+
+    ShardedQuicConnectionIdGenerator(QuicConnectionIdGenerator delegate, int shardIndex, int seed) {
+        this.delegate = ObjectUtil.checkNotNull(delegate, "delegate");
+        this.shardIndex = (byte) ObjectUtil.checkInRange(shardIndex, 0, MAX_SHARDS - 1, "shardIndex");
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the shard index that is encoded in the given connection id.
+     *
+     * @param connId    the connection id.
+     * @return          the index of the shard that generated the id.
+     */
+    static int shardIndex(ByteBuf connId) {
+        return connId.getUnsignedByte(connId.readerIndex());
+    }
+
+    /**
+     * Returns {@code true} if the tag of the given connection id matches, which means it was most likely generated
+     * by one of the shards that use the given seed.
+     *
+     * @param connId    the connection id.
+     * @param seed      the seed that is shared by the shards.
+     * @return          {@code true} if the tag matches.
+     */
+    static boolean hasValidTag(ByteBuf connId, int seed) {
+        int idx = connId.readerIndex();
+        int length = connId.readableBytes();
+        return length < 2 || connId.getByte(idx + 1) == tag(connId, idx, length, seed);
+    }
+
+    private static byte tag(ByteBuf id, int idx, int length, int seed) {
+        int hash = (seed ^ (id.getByte(idx) & 0xFF)) * 0x01000193;
+        for (int i = 2; i < length; i++) {
+            hash = (hash ^ (id.getByte(idx + i) & 0xFF)) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        return (byte) (hash ^ (hash >>> 8));
+    }
+
+    private void encodeShard(ByteBuf id, int idx, int length) {
+        id.setByte(idx, shardIndex);
+        if (length >= 2) {
+            id.setByte(idx + 1, tag(id, idx, length, seed));
+        }
+    }
+
+    @Override
+    public ByteBuffer newId(int length) {
+        ObjectUtil.checkPositive(length, "length");
+        return encodeShard(delegate.newId(length));
+    }
+
+    @Override
+    public ByteBuffer newId(ByteBuffer input, int length) {
+        ObjectUtil.checkPositive(length, "length");
+        return encodeShard(delegate.newId(input, length));
+    }
+
+    @Override
+    public void writeId(ByteBuf out, int length) {
+        ObjectUtil.checkPositive(length, "length");
+        int idx = out.writerIndex();
+        delegate.writeId(out, length);
+        encodeShard(out, idx, out.writerIndex() - idx);
+    }
+
+    @Override
+    public void writeId(ByteBuf input, ByteBuf out, int length) {
+        ObjectUtil.checkPositive(length, "length");
+        int idx = out.writerIndex();
+        delegate.writeId(input, out, length);
+        encodeShard(out, idx, out.writerIndex() - idx);
+    }
+
+    private ByteBuffer encodeShard(ByteBuffer id) {
+        // Copy the id as we don't know if the delegate returned a buffer that we are allowed to modify.
+        byte[] bytes = new byte[id.remaining()];
+        id.duplicate().get(bytes);
+        encodeShard(Unpooled.wrappedBuffer(bytes), 0, bytes.length);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    @Override
+    public int maxConnectionIdLength() {
+        return delegate.maxConnectionIdLength();
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return delegate.isIdempotent();
+    }
+}
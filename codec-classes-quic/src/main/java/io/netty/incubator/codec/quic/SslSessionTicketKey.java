@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.util.internal.ObjectUtil;
+
+import java.util.Arrays;
+
+/**
+ * Session Ticket Key.
+ */
+public final class SslSessionTicketKey {
+    /**
+     * Size of session ticket key name.
+     */
+    public static final int NAME_SIZE = 16;
+    /**
+     * Size of session ticket key HMAC key.
+     */
+    public static final int HMAC_KEY_SIZE = 16;
+    /**
+     * Size of session ticket key AES key.
+     */
+    public static final int AES_KEY_SIZE = 16;
+    /**
+     * Size of session ticket key.
+     */
+    public static final int TICKET_KEY_SIZE = NAME_SIZE + HMAC_KEY_SIZE + AES_KEY_SIZE;
+
+    final byte[] name;
+    final byte[] hmacKey;
+    final byte[] aesKey;
+
+    /**
+     * Construct a SessionTicketKey.
+     *
+     * @param name      the name of the session ticket key
+     * @param hmacKey   the HMAC key of the session ticket key
+     * @param aesKey    the AES key of the session ticket key
+     */
+    public SslSessionTicketKey(byte[] name, byte[] hmacKey, byte[] aesKey) {
+        this.name = checkLength(name, NAME_SIZE, "name").clone();
+        this.hmacKey = checkLength(hmacKey, HMAC_KEY_SIZE, "hmacKey").clone();
+        this.aesKey = checkLength(aesKey, AES_KEY_SIZE, "aesKey").clone();
+    }
+
+    private static byte[] checkLength(byte[] bytes, int length, String name) {
+        ObjectUtil.checkNotNull(bytes, name);
+        if (bytes.length != length) {
+            throw new IllegalArgumentException(name + " must be " + length + " bytes: " + bytes.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Get name.
+     *
+     * @return the name of the session ticket key
+     */
+    public byte[] name() {
+        return name.clone();
+    }
+
+    /**
+     * Get HMAC key.
+     *
+     * @return the HMAC key of the session ticket key
+     */
+    public byte[] hmacKey() {
+        return hmacKey.clone();
+    }
+
+    /**
+     * Get AES Key.
+     *
+     * @return the AES key of the session ticket key
+     */
+    public byte[] aesKey() {
+        return aesKey.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SslSessionTicketKey that = (SslSessionTicketKey) o;
+        return Arrays.equals(name, that.name) && Arrays.equals(hmacKey, that.hmacKey) &&
+                Arrays.equals(aesKey, that.aesKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(name);
+    }
+
+    @Override
+    public String toString() {
+        // Never include the key material.
+        return "SslSessionTicketKey{name=" + Arrays.toString(name) + '}';
+    }
+}
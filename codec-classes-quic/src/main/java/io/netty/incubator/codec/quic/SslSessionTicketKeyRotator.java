@@ -0,0 +1,149 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.util.internal.ObjectUtil;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Derives {@link SslSessionTicketKey}s from a shared secret and rotates them periodically.
+ * <p>
+ * The keys only depend on the secret and the current time interval, so all servers that use the same secret and
+ * interval will use the same keys at the same time without any further coordination. This allows them to resume
+ * the sessions of each other, as long as their clocks are roughly in sync.
+ * <p>
+ * Tickets are always encrypted with the key of the current interval. The keys of the previous and the next interval
+ * can be used to decrypt tickets as well, so a ticket is accepted for at least one interval and servers with clocks
+ * that are slightly ahead are tolerated. The session timeout should therefore not be larger than the interval.
+ */
+public final class SslSessionTicketKeyRotator {
+    private static final int MIN_SECRET_LENGTH = 16;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte[] LABEL = "netty quic session ticket key".getBytes(StandardCharsets.US_ASCII);
+
+    private final SecretKeySpec secret;
+    private final long intervalMillis;
+    private final LongSupplier clock;
+
+    SslSessionTicketKeyRotator(byte[] secret, long intervalMillis, LongSupplier clock) {
+        this.secret = new SecretKeySpec(secret, ALGORITHM);
+        this.intervalMillis = intervalMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param secret    the secret that is shared between all servers, must be at least {@code 16} bytes.
+     * @param interval  the interval after which the keys are rotated.
+     * @param unit      the {@link TimeUnit} of {@code interval}.
+     * @return          the rotator.
+     */
+    public static SslSessionTicketKeyRotator newRotator(byte[] secret, long interval, TimeUnit unit) {
+        ObjectUtil.checkNotNull(secret, "secret");
+        if (secret.length < MIN_SECRET_LENGTH) {
+            throw new IllegalArgumentException(
+                    "secret must be at least " + MIN_SECRET_LENGTH + " bytes: " + secret.length);
+        }
+        ObjectUtil.checkNotNull(unit, "unit");
+        long intervalMillis = ObjectUtil.checkPositive(unit.toMillis(interval), "interval (in millis)");
+        return new SslSessionTicketKeyRotator(secret.clone(), intervalMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Returns the keys that should be used right now. The first key is used for encryption.
+     *
+     * @return the keys.
+     */
+    public SslSessionTicketKey[] currentKeys() {
+        long interval = clock.getAsLong() / intervalMillis;
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secret);
+            return new SslSessionTicketKey[] {
+                    deriveKey(mac, interval), deriveKey(mac, interval - 1), deriveKey(mac, interval + 1)
+            };
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SslSessionTicketKey deriveKey(Mac mac, long interval) {
+        byte[] nameAndHmacKey = derive(mac, interval, (byte) 1);
+        byte[] aesKey = derive(mac, interval, (byte) 2);
+        try {
+            return new SslSessionTicketKey(
+                    Arrays.copyOfRange(nameAndHmacKey, 0, SslSessionTicketKey.NAME_SIZE),
+                    Arrays.copyOfRange(nameAndHmacKey, SslSessionTicketKey.NAME_SIZE,
+                            SslSessionTicketKey.NAME_SIZE + SslSessionTicketKey.HMAC_KEY_SIZE),
+                    Arrays.copyOf(aesKey, SslSessionTicketKey.AES_KEY_SIZE));
+        } finally {
+            Arrays.fill(nameAndHmacKey, (byte) 0);
+            Arrays.fill(aesKey, (byte) 0);
+        }
+    }
+
+    private static byte[] derive(Mac mac, long interval, byte counter) {
+        mac.update(LABEL);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            mac.update((byte) (interval >>> shift));
+        }
+        mac.update(counter);
+        return mac.doFinal();
+    }
+
+    /**
+     * Sets the {@link #currentKeys()} on the given {@link QuicSslContext}s.
+     *
+     * @param contexts  the contexts to update.
+     */
+    public void rotate(QuicSslContext... contexts) {
+        ObjectUtil.checkNotNull(contexts, "contexts");
+        SslSessionTicketKey[] keys = currentKeys();
+        for (QuicSslContext context: contexts) {
+            context.sessionContext().setTicketKeys(keys);
+        }
+    }
+
+    /**
+     * Sets the {@link #currentKeys()} on the given {@link QuicSslContext}s and schedules a rotation at the start of
+     * every interval.
+     *
+     * @param executor  the {@link ScheduledExecutorService} that is used to schedule the rotations.
+     * @param contexts  the contexts to update.
+     * @return          the {@link ScheduledFuture} that can be used to stop the rotations.
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService executor, QuicSslContext... contexts) {
+        ObjectUtil.checkNotNull(executor, "executor");
+        QuicSslContext[] copy = ObjectUtil.checkNotNull(contexts, "contexts").clone();
+        rotate(copy);
+        // Rotate a bit after the start of the next interval, so we are sure to pick up the new keys even if the task
+        // runs a bit early.
+        long slackMillis = Math.min(intervalMillis / 10, 1000);
+        long initialDelayMillis = intervalMillis - clock.getAsLong() % intervalMillis + slackMillis;
+        return executor.scheduleAtFixedRate(() -> rotate(copy), initialDelayMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+}
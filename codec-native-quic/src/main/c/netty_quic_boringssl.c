@@ -19,6 +19,8 @@
 #include <string.h>
 #include <errno.h>
 #include <openssl/ssl.h>
+#include <openssl/hmac.h>
+#include <openssl/rand.h>
 
 #include "netty_jni_util.h"
 #include "netty_quic.h"
@@ -67,6 +69,9 @@ static jmethodID keylogCallbackMethod = NULL;
 static jclass sessionCallbackClass = NULL;
 static jmethodID sessionCallbackMethod = NULL;
 
+static jclass sessionTicketCallbackClass = NULL;
+static jmethodID sessionTicketCallbackMethod = NULL;
+
 static jclass byteArrayClass = NULL;
 static jclass stringClass = NULL;
 
@@ -76,6 +81,7 @@ static int certificateCallbackIdx = -1;
 static int servernameCallbackIdx = -1;
 static int keylogCallbackIdx = -1;
 static int sessionCallbackIdx = -1;
+static int sessionTicketCallbackIdx = -1;
 static int sslPrivateKeyMethodIdx = -1;
 static int sslTaskIdx = -1;
 static int alpn_data_idx = -1;
@@ -932,6 +938,74 @@ int new_session_callback(SSL *ssl, SSL_SESSION *session) {
     return 0;
 }
 
+// The layout of a session ticket key as used by SslSessionTicketKey: name | hmac key | aes key
+#define SESSION_TICKET_KEY_NAME_LEN 16
+#define SESSION_TICKET_KEY_HMAC_LEN 16
+#define SESSION_TICKET_KEY_AES_LEN 16
+#define SESSION_TICKET_KEY_LEN (SESSION_TICKET_KEY_NAME_LEN + SESSION_TICKET_KEY_HMAC_LEN + SESSION_TICKET_KEY_AES_LEN)
+
+// See https://commondatastorage.googleapis.com/chromium-boringssl-docs/ssl.h.html#SSL_CTX_set_tlsext_ticket_key_cb
+static int quic_tlsext_ticket_key_cb(SSL *ssl, uint8_t *key_name, uint8_t *iv, EVP_CIPHER_CTX *ctx, HMAC_CTX *hctx, int enc) {
+    SSL_CTX* ssl_ctx = SSL_get_SSL_CTX(ssl);
+    if (ssl_ctx == NULL) {
+        return -1;
+    }
+
+    JNIEnv* e = NULL;
+    if (quic_get_java_env(&e) != JNI_OK) {
+        return -1;
+    }
+
+    jobject sessionTicketCallback = SSL_CTX_get_ex_data(ssl_ctx, sessionTicketCallbackIdx);
+    if (sessionTicketCallback == NULL) {
+        return -1;
+    }
+
+    // Execute the java callback
+    jbyteArray keys = (*e)->CallObjectMethod(e, sessionTicketCallback, sessionTicketCallbackMethod);
+    if (keys == NULL) {
+        return -1;
+    }
+    int numKeys = (*e)->GetArrayLength(e, keys) / SESSION_TICKET_KEY_LEN;
+    if (numKeys == 0) {
+        return -1;
+    }
+
+    int ret = 0;
+    uint8_t key[SESSION_TICKET_KEY_LEN];
+    uint8_t* hmac_key = key + SESSION_TICKET_KEY_NAME_LEN;
+    uint8_t* aes_key = hmac_key + SESSION_TICKET_KEY_HMAC_LEN;
+    if (enc == 1) {
+        // Always use the first key to encrypt new tickets.
+        (*e)->GetByteArrayRegion(e, keys, 0, SESSION_TICKET_KEY_LEN, (jbyte*) key);
+        if (RAND_bytes(iv, EVP_CIPHER_iv_length(EVP_aes_128_cbc())) <= 0 ||
+                EVP_EncryptInit_ex(ctx, EVP_aes_128_cbc(), NULL, aes_key, iv) != 1 ||
+                HMAC_Init_ex(hctx, hmac_key, SESSION_TICKET_KEY_HMAC_LEN, EVP_sha256(), NULL) != 1) {
+            ret = -1;
+        } else {
+            memcpy(key_name, key, SESSION_TICKET_KEY_NAME_LEN);
+            ret = 1;
+        }
+    } else {
+        for (int i = 0; i < numKeys; i++) {
+            (*e)->GetByteArrayRegion(e, keys, i * SESSION_TICKET_KEY_LEN, SESSION_TICKET_KEY_LEN, (jbyte*) key);
+            if (memcmp(key_name, key, SESSION_TICKET_KEY_NAME_LEN) == 0) {
+                if (HMAC_Init_ex(hctx, hmac_key, SESSION_TICKET_KEY_HMAC_LEN, EVP_sha256(), NULL) != 1 ||
+                        EVP_DecryptInit_ex(ctx, EVP_aes_128_cbc(), NULL, aes_key, iv) != 1) {
+                    ret = -1;
+                } else {
+                    // Ask for a new ticket if the ticket was not encrypted with the current key.
+                    ret = i == 0 ? 1 : 2;
+                }
+                break;
+            }
+        }
+        // If no key matched we return 0 which will result in a full handshake.
+    }
+    OPENSSL_cleanse(key, SESSION_TICKET_KEY_LEN);
+    return ret;
+}
+
 static jlong netty_boringssl_SSLContext_new0(JNIEnv* env, jclass clazz, jboolean server, jbyteArray alpn_protos, jobject handshakeCompleteCallback, jobject certificateCallback, jobject verifyCallback, jobject servernameCallback, jobject keylogCallback, jobject sessionCallback, jobject privateKeyMethod, jint verifyMode, jobjectArray subjectNames) {
     jobject handshakeCompleteCallbackRef = NULL;
     jobject certificateCallbackRef = NULL;
@@ -1108,6 +1182,11 @@ static void netty_boringssl_SSLContext_free(JNIEnv* env, jclass clazz, jlong ctx
         (*env)->DeleteGlobalRef(env, privateKeyMethodRef);
     }
 
+    jobject sessionTicketCallbackRef = SSL_CTX_get_ex_data(ssl_ctx, sessionTicketCallbackIdx);
+    if (sessionTicketCallbackRef != NULL) {
+        (*env)->DeleteGlobalRef(env, sessionTicketCallbackRef);
+    }
+
     alpn_data* data = SSL_CTX_get_ex_data(ssl_ctx, alpn_data_idx);
     OPENSSL_free(data);
 
@@ -1141,6 +1220,17 @@ static void netty_boringssl_SSLContext_set_early_data_enabled(JNIEnv* env, jclas
     SSL_CTX_set_early_data_enabled((SSL_CTX*) ctx, enabled == JNI_TRUE ? 1 : 0);
 }
 
+static void netty_boringssl_SSLContext_set_session_ticket_callback(JNIEnv* env, jclass clazz, jlong ctx, jobject sessionTicketCallback) {
+    SSL_CTX* ssl_ctx = (SSL_CTX*) ctx;
+    // This is only called once per SSL_CTX, the reference is deleted when the SSL_CTX is freed.
+    jobject sessionTicketCallbackRef = (*env)->NewGlobalRef(env, sessionTicketCallback);
+    if (sessionTicketCallbackRef == NULL) {
+        return;
+    }
+    SSL_CTX_set_ex_data(ssl_ctx, sessionTicketCallbackIdx, sessionTicketCallbackRef);
+    SSL_CTX_set_tlsext_ticket_key_cb(ssl_ctx, quic_tlsext_ticket_key_cb);
+}
+
 jlong netty_boringssl_SSL_new0(JNIEnv* env, jclass clazz, jlong ctx, jboolean server, jstring hostname) {
     SSL* ssl = SSL_new((SSL_CTX*) ctx);
 
@@ -1223,6 +1313,10 @@ void netty_boringssl_EVP_PKEY_free(JNIEnv* env, jclass clazz, jlong privateKey)
     EVP_PKEY_free((EVP_PKEY*) privateKey); // Safe to call with NULL as well.
 }
 
+void netty_boringssl_EVP_PKEY_up_ref(JNIEnv* env, jclass clazz, jlong privateKey) {
+    EVP_PKEY_up_ref((EVP_PKEY*) privateKey);
+}
+
 jlong netty_boringssl_CRYPTO_BUFFER_stack_new(JNIEnv* env, jclass clazz, jlong ssl, jobjectArray x509Chain){
     CRYPTO_BUFFER_POOL* pool = NULL;
     SSL_CTX* ctx = SSL_get_SSL_CTX((SSL*) ssl);
@@ -1241,6 +1335,27 @@ void netty_boringssl_CRYPTO_BUFFER_stack_free(JNIEnv* env, jclass clazz, jlong c
     sk_CRYPTO_BUFFER_pop_free((STACK_OF(CRYPTO_BUFFER) *) chain, CRYPTO_BUFFER_free);
 }
 
+jlong netty_boringssl_CRYPTO_BUFFER_stack_dup(JNIEnv* env, jclass clazz, jlong chain) {
+    const STACK_OF(CRYPTO_BUFFER) *stack = (const STACK_OF(CRYPTO_BUFFER) *) chain;
+    STACK_OF(CRYPTO_BUFFER) *copy = sk_CRYPTO_BUFFER_new_null();
+    if (copy == NULL) {
+        return 0;
+    }
+    int len = sk_CRYPTO_BUFFER_num(stack);
+    for (int i = 0; i < len; i++) {
+        // The buffers are shared between the stacks, so we only need to increment the reference count.
+        CRYPTO_BUFFER *buffer = sk_CRYPTO_BUFFER_value(stack, i);
+        CRYPTO_BUFFER_up_ref(buffer);
+        if (sk_CRYPTO_BUFFER_push(copy, buffer) <= 0) {
+            // If we cant push for whatever reason ensure we release the buffer.
+            CRYPTO_BUFFER_free(buffer);
+            sk_CRYPTO_BUFFER_pop_free(copy, CRYPTO_BUFFER_free);
+            return 0;
+        }
+    }
+    return (jlong) copy;
+}
+
 jstring netty_boringssl_ERR_last_error(JNIEnv* env, jclass clazz) {
     char buf[ERR_LEN];
     unsigned long err = ERR_get_error();
@@ -1285,14 +1400,17 @@ static const JNINativeMethod fixed_method_table[] = {
   { "SSLContext_setSessionCacheTimeout", "(JJ)J", (void *) netty_boringssl_SSLContext_setSessionCacheTimeout },
   { "SSLContext_setSessionCacheSize", "(JJ)J", (void *) netty_boringssl_SSLContext_setSessionCacheSize },
   { "SSLContext_set_early_data_enabled", "(JZ)V", (void *) netty_boringssl_SSLContext_set_early_data_enabled },
+  { "SSLContext_set_session_ticket_callback", "(JLjava/lang/Object;)V", (void *) netty_boringssl_SSLContext_set_session_ticket_callback },
   { "SSL_new0", "(JZLjava/lang/String;)J", (void *) netty_boringssl_SSL_new0 },
   { "SSL_free", "(J)V", (void *) netty_boringssl_SSL_free },
   { "SSL_getTask", "(J)Ljava/lang/Runnable;", (void *) netty_boringssl_SSL_getTask },
   { "SSL_cleanup", "(J)V", (void *) netty_boringssl_SSL_cleanup },
   { "EVP_PKEY_parse", "([BLjava/lang/String;)J", (void *) netty_boringssl_EVP_PKEY_parse },
   { "EVP_PKEY_free", "(J)V", (void *) netty_boringssl_EVP_PKEY_free },
+  { "EVP_PKEY_up_ref", "(J)V", (void *) netty_boringssl_EVP_PKEY_up_ref },
   { "CRYPTO_BUFFER_stack_new", "(J[[B)J", (void *) netty_boringssl_CRYPTO_BUFFER_stack_new },
   { "CRYPTO_BUFFER_stack_free", "(J)V", (void *) netty_boringssl_CRYPTO_BUFFER_stack_free },
+  { "CRYPTO_BUFFER_stack_dup", "(J)J", (void *) netty_boringssl_CRYPTO_BUFFER_stack_dup },
   { "ERR_last_error", "()Ljava/lang/String;", (void *) netty_boringssl_ERR_last_error }
 };
 
@@ -1313,6 +1431,7 @@ static void unload_all_classes(JNIEnv* env) {
     NETTY_JNI_UTIL_UNLOAD_CLASS(env, servernameCallbackClass);
     NETTY_JNI_UTIL_UNLOAD_CLASS(env, keylogCallbackClass);
     NETTY_JNI_UTIL_UNLOAD_CLASS(env, sessionCallbackClass);
+    NETTY_JNI_UTIL_UNLOAD_CLASS(env, sessionTicketCallbackClass);
 }
 
 // IMPORTANT: If you add any NETTY_JNI_UTIL_LOAD_CLASS or NETTY_JNI_UTIL_FIND_CLASS calls you also need to update
@@ -1413,12 +1532,17 @@ jint netty_boringssl_JNI_OnLoad(JNIEnv* env, const char* packagePrefix) {
     NETTY_JNI_UTIL_LOAD_CLASS(env, sessionCallbackClass, name, done);
     NETTY_JNI_UTIL_GET_METHOD(env, sessionCallbackClass, sessionCallbackMethod, "newSession", "(JJJ[BZ[B)V", done);
 
+    NETTY_JNI_UTIL_PREPEND(packagePrefix, "io/netty/incubator/codec/quic/BoringSSLSessionTicketCallback", name, done);
+    NETTY_JNI_UTIL_LOAD_CLASS(env, sessionTicketCallbackClass, name, done);
+    NETTY_JNI_UTIL_GET_METHOD(env, sessionTicketCallbackClass, sessionTicketCallbackMethod, "sessionTicketKeys", "()[B", done);
+
     verifyCallbackIdx = SSL_CTX_get_ex_new_index(0, NULL, NULL, NULL, NULL);
     certificateCallbackIdx = SSL_CTX_get_ex_new_index(0, NULL, NULL, NULL, NULL);
     handshakeCompleteCallbackIdx = SSL_CTX_get_ex_new_index(0, NULL, NULL, NULL, NULL);
     servernameCallbackIdx = SSL_CTX_get_ex_new_index(0, NULL, NULL, NULL, NULL);
     keylogCallbackIdx = SSL_CTX_get_ex_new_index(0, NULL, NULL, NULL, NULL);
     sessionCallbackIdx = SSL_CTX_get_ex_new_index(0, NULL, NULL, NULL, NULL);
+    sessionTicketCallbackIdx = SSL_CTX_get_ex_new_index(0, NULL, NULL, NULL, NULL);
     sslPrivateKeyMethodIdx = SSL_CTX_get_ex_new_index(0, NULL, NULL, NULL, NULL);
     sslTaskIdx = SSL_get_ex_new_index(0, NULL, NULL, NULL, NULL);
 
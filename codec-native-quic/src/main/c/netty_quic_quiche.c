@@ -323,6 +323,76 @@ static jint netty_quiche_header_info(JNIEnv* env, jclass clazz, jlong buf, jint
                                          (uint8_t *) token, (size_t *) token_len);
 }
 
+// Number of int32_t values that are written per packet by netty_quiche_header_info_batch.
+#define NETTY_QUICHE_HEADER_INFO_BATCH_RESULT_INTS 9
+// Values of the packet type as returned by quiche_header_info.
+#define NETTY_QUICHE_TYPE_RETRY 2
+
+static jint netty_quiche_sizeofHeaderInfoBatchResult(JNIEnv* env, jclass clazz) {
+    return NETTY_QUICHE_HEADER_INFO_BATCH_RESULT_INTS * sizeof(int32_t);
+}
+
+// Parses the headers of multiple packets with one JNI call.
+//
+// packets points to count pairs of int64_t values (memory address, length) and results to count *
+// NETTY_QUICHE_HEADER_INFO_BATCH_RESULT_INTS int32_t values, which are filled with:
+// result, version, type, dcid offset, dcid length, scid offset, scid length, token offset, token length.
+//
+// The offsets are relative to the start of the packet, so no connection ids or tokens need to be copied.
+static void netty_quiche_header_info_batch(JNIEnv* env, jclass clazz, jlong packets, jint count, jint dcil,
+                 jlong token, jint token_len, jlong results) {
+    const int64_t* packet_infos = (const int64_t*) packets;
+    uint8_t scid[QUICHE_MAX_CONN_ID_LEN];
+    uint8_t dcid[QUICHE_MAX_CONN_ID_LEN];
+
+    for (int i = 0; i < count; i++) {
+        const uint8_t* buf = (const uint8_t*) packet_infos[i * 2];
+        size_t buf_len = (size_t) packet_infos[i * 2 + 1];
+        int32_t* result = ((int32_t*) results) + i * NETTY_QUICHE_HEADER_INFO_BATCH_RESULT_INTS;
+
+        uint32_t version = 0;
+        uint8_t type = 0;
+        size_t scid_len = QUICHE_MAX_CONN_ID_LEN;
+        size_t dcid_len = QUICHE_MAX_CONN_ID_LEN;
+        // The token is copied into the scratch buffer by quiche, we only use it to enforce the max length.
+        size_t tok_len = (size_t) token_len;
+
+        int res = quiche_header_info(buf, buf_len, (size_t) dcil, &version, &type,
+                                     scid, &scid_len, dcid, &dcid_len, (uint8_t *) token, &tok_len);
+        result[0] = res;
+        if (res < 0) {
+            continue;
+        }
+        size_t dcid_offset;
+        size_t scid_offset = 0;
+        size_t token_offset = 0;
+        if ((buf[0] & 0x80) != 0) {
+            // Long header: flags (1), version (4), dcid len (1), dcid, scid len (1), scid, ...
+            dcid_offset = 6;
+            scid_offset = dcid_offset + dcid_len + 1;
+            if (tok_len > 0) {
+                token_offset = scid_offset + scid_len;
+                if (type != NETTY_QUICHE_TYPE_RETRY) {
+                    // The token of an Initial packet is prefixed with its length encoded as variable-length integer.
+                    token_offset += (size_t) 1 << (buf[token_offset] >> 6);
+                }
+            }
+        } else {
+            // Short header: flags (1), dcid
+            dcid_offset = 1;
+            scid_len = 0;
+        }
+        result[1] = (int32_t) version;
+        result[2] = (int32_t) type;
+        result[3] = (int32_t) dcid_offset;
+        result[4] = (int32_t) dcid_len;
+        result[5] = (int32_t) scid_offset;
+        result[6] = (int32_t) scid_len;
+        result[7] = (int32_t) token_offset;
+        result[8] = (int32_t) tok_len;
+    }
+}
+
 static jint netty_quiche_negotiate_version(JNIEnv* env, jclass clazz, jlong scid, jint scid_len, jlong dcid, jint dcid_len, jlong out, jint out_len) {
     return (jint) quiche_negotiate_version((const uint8_t *) scid, (size_t) scid_len,
                                                    (const uint8_t *) dcid, (size_t) dcid_len,
@@ -449,6 +519,63 @@ static jint netty_quiche_conn_stream_send(JNIEnv* env, jclass clazz, jlong conn,
     return (jint) quiche_conn_stream_send((quiche_conn *) conn, (uint64_t) stream_id,  (uint8_t *) buf, (size_t) buf_len, fin == JNI_TRUE ? true : false);
 }
 
+// Sends the buffers described by the (address, length) pairs stored at iov until one of them could not be written
+// completely. Returns the number of written bytes in the upper 32 bits and the remaining capacity of the stream
+// (or an error code) in the lower 32 bits, or the error if nothing could be written at all.
+static jlong netty_quiche_conn_stream_send_vectored(JNIEnv* env, jclass clazz, jlong conn, jlong stream_id, jlong iov, jint iov_count, jboolean fin) {
+    quiche_conn *c = (quiche_conn *) conn;
+    const jlong *vec = (const jlong *) iov;
+    int64_t written = 0;
+    for (int i = 0; i < iov_count; i++) {
+        size_t len = (size_t) vec[2 * i + 1];
+        bool last = i == iov_count - 1;
+        ssize_t res = quiche_conn_stream_send(c, (uint64_t) stream_id, (uint8_t *) vec[2 * i], len, last && fin == JNI_TRUE);
+        if (res < 0) {
+            if (written == 0) {
+                return (jlong) res;
+            }
+            // Report what we did write so far, the error will be returned by the next call.
+            break;
+        }
+        written += res;
+        if ((size_t) res < len) {
+            break;
+        }
+    }
+    int32_t capacity = (int32_t) quiche_conn_stream_capacity(c, (uint64_t) stream_id);
+    return (jlong) ((written << 32) | (uint32_t) capacity);
+}
+
+// Same as netty_quiche_conn_stream_send_vectored(...) but sends the content of a java byte[]. As quiche copies the
+// data into its own send buffer anyway we just pin the array for the duration of the call, which means the data is
+// only copied once.
+static jlong netty_quiche_conn_stream_send_array(JNIEnv* env, jclass clazz, jlong conn, jlong stream_id, jbyteArray array, jint offset, jint len, jboolean fin) {
+    quiche_conn *c = (quiche_conn *) conn;
+    // If debug logging is enabled quiche calls back into Java via log_to_java(...), which is not allowed while the
+    // array is pinned via GetPrimitiveArrayCritical(...). The Java side does not use this function in this case, but
+    // let's be safe and fall back to GetByteArrayElements(...) which allows other JNI calls.
+    jboolean critical = quiche_logger == NULL ? JNI_TRUE : JNI_FALSE;
+    jbyte *bytes = critical == JNI_TRUE ? (*env)->GetPrimitiveArrayCritical(env, array, NULL) :
+            (*env)->GetByteArrayElements(env, array, NULL);
+    if (bytes == NULL) {
+        // An OutOfMemoryError is pending and will be thrown once we return.
+        return -1;
+    }
+    // The length is bounded by the caller, so the GC is only blocked for a short time.
+    ssize_t res = quiche_conn_stream_send(c, (uint64_t) stream_id, (uint8_t *) bytes + offset, (size_t) len, fin == JNI_TRUE ? true : false);
+    // Nothing was changed, so there is no need to copy anything back.
+    if (critical == JNI_TRUE) {
+        (*env)->ReleasePrimitiveArrayCritical(env, array, bytes, JNI_ABORT);
+    } else {
+        (*env)->ReleaseByteArrayElements(env, array, bytes, JNI_ABORT);
+    }
+    if (res < 0) {
+        return (jlong) res;
+    }
+    int32_t capacity = (int32_t) quiche_conn_stream_capacity(c, (uint64_t) stream_id);
+    return (jlong) (((int64_t) res << 32) | (uint32_t) capacity);
+}
+
 static jint netty_quiche_conn_stream_shutdown(JNIEnv* env, jclass clazz, jlong conn, jlong stream_id, jint direction, jlong err) {
     return (jint) quiche_conn_stream_shutdown((quiche_conn *) conn, (uint64_t) stream_id,  (enum quiche_shutdown) direction, (uint64_t) err);
 }
@@ -776,6 +903,7 @@ static const JNINativeMethod statically_referenced_fixed_method_table[] = {
   { "sizeofTimespec", "()I", (void *) netty_quiche_sizeofTimespec },
   { "sizeofTimeT", "()I", (void *) netty_quiche_sizeofTimeT },
   { "sizeofLong", "()I", (void *) netty_quiche_sizeofLong },
+  { "sizeofHeaderInfoBatchResult", "()I", (void *) netty_quiche_sizeofHeaderInfoBatchResult },
   { "timespecOffsetofTvSec", "()I", (void *) netty_quiche_timespecOffsetofTvSec },
   { "timespecOffsetofTvNsec", "()I", (void *) timespecOffsetofTvNsec },
   { "quiche_protocol_version", "()I", (void *) netty_quiche_protocol_version },
@@ -808,6 +936,7 @@ static const JNINativeMethod fixed_method_table[] = {
   { "quiche_version", "()Ljava/lang/String;", (void *) netty_quiche_version },
   { "quiche_version_is_supported", "(I)Z", (void *) netty_quiche_version_is_supported },
   { "quiche_header_info", "(JIIJJJJJJJJ)I", (void *) netty_quiche_header_info },
+  { "quiche_header_info_batch", "(JIIJIJ)V", (void *) netty_quiche_header_info_batch },
   { "quiche_negotiate_version", "(JIJIJI)I", (void *) netty_quiche_negotiate_version },
   { "quiche_retry", "(JIJIJIJIIJI)I", (void *) netty_quiche_retry },
   { "quiche_conn_set_qlog_path", "(JLjava/lang/String;Ljava/lang/String;Ljava/lang/String;)Z", (void *) netty_quiche_conn_set_qlog_path },
@@ -825,6 +954,8 @@ static const JNINativeMethod fixed_method_table[] = {
   { "quiche_conn_stream_priority", "(JJBZ)I", (void *) netty_quiche_conn_stream_priority },
   { "quiche_conn_stream_recv", "(JJJIJ)I", (void *) netty_quiche_conn_stream_recv },
   { "quiche_conn_stream_send", "(JJJIZ)I", (void *) netty_quiche_conn_stream_send },
+  { "quiche_conn_stream_send_vectored", "(JJJIZ)J", (void *) netty_quiche_conn_stream_send_vectored },
+  { "quiche_conn_stream_send_array", "(JJ[BIIZ)J", (void *) netty_quiche_conn_stream_send_array },
   { "quiche_conn_stream_shutdown", "(JJIJ)I", (void *) netty_quiche_conn_stream_shutdown },
   { "quiche_conn_stream_capacity", "(JJ)I", (void *) netty_quiche_conn_stream_capacity },
   { "quiche_conn_stream_finished", "(JJ)Z", (void *) netty_quiche_conn_stream_finished },
@@ -22,6 +22,7 @@ import org.junit.jupiter.api.Timeout;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 @Timeout(10)
 public abstract class AbstractQuicTest {
@@ -34,7 +35,8 @@ public abstract class AbstractQuicTest {
     static Executor[] newSslTaskExecutors() {
         return  new Executor[] {
                 ImmediateExecutor.INSTANCE,
-                Executors.newSingleThreadExecutor()
+                Executors.newSingleThreadExecutor(),
+                AdaptiveSslTaskExecutor.newExecutor(ForkJoinPool.commonPool())
         };
     }
 
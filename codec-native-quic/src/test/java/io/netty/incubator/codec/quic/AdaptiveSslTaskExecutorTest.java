@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.util.concurrent.ImmediateExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveSslTaskExecutorTest {
+
+    private static final class CheapTask { }
+    private static final class ExpensiveTask { }
+
+    @Test
+    public void testUnknownTaskIsOffloaded() {
+        AdaptiveSslTaskExecutor executor = AdaptiveSslTaskExecutor.newExecutor(ImmediateExecutor.INSTANCE);
+        assertFalse(executor.runInline(CheapTask.class));
+        assertEquals(-1, executor.averageNanos(CheapTask.class));
+    }
+
+    @Test
+    public void testCheapTaskRunsInline() {
+        AdaptiveSslTaskExecutor executor = AdaptiveSslTaskExecutor.newExecutor(
+                ImmediateExecutor.INSTANCE, 10, TimeUnit.MICROSECONDS);
+        executor.record(CheapTask.class, TimeUnit.MICROSECONDS.toNanos(1));
+        executor.record(ExpensiveTask.class, TimeUnit.MILLISECONDS.toNanos(1));
+
+        assertTrue(executor.runInline(CheapTask.class));
+        assertFalse(executor.runInline(ExpensiveTask.class));
+    }
+
+    @Test
+    public void testAdaptsToChangedCost() {
+        AdaptiveSslTaskExecutor executor = AdaptiveSslTaskExecutor.newExecutor(
+                ImmediateExecutor.INSTANCE, 10, TimeUnit.MICROSECONDS);
+        // The first run is usually slow as the JIT did not kick in yet.
+        executor.record(CheapTask.class, TimeUnit.MILLISECONDS.toNanos(1));
+        assertFalse(executor.runInline(CheapTask.class));
+
+        for (int i = 0; i < 64; i++) {
+            executor.record(CheapTask.class, TimeUnit.MICROSECONDS.toNanos(1));
+        }
+        assertTrue(executor.runInline(CheapTask.class));
+
+        for (int i = 0; i < 64; i++) {
+            executor.record(CheapTask.class, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertFalse(executor.runInline(CheapTask.class));
+    }
+
+    @Test
+    public void testExecuteDelegates() {
+        boolean[] executed = new boolean[1];
+        AdaptiveSslTaskExecutor executor = AdaptiveSslTaskExecutor.newExecutor(Runnable::run);
+        executor.execute(() -> executed[0] = true);
+        assertTrue(executed[0]);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(NullPointerException.class, () -> AdaptiveSslTaskExecutor.newExecutor(null));
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveSslTaskExecutor.newExecutor(
+                ImmediateExecutor.INSTANCE, -1, TimeUnit.MICROSECONDS));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConnectionIdMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        ConnectionIdMap<String> map = new ConnectionIdMap<>(4);
+        ByteBuffer id = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 });
+        assertNull(map.put(id, "a"));
+        assertEquals(1, map.size());
+
+        ByteBuf packet = Unpooled.directBuffer().writeBytes(new byte[] { 9, 9, 1, 2, 3, 4, 9 });
+        try {
+            assertEquals("a", map.get(packet, 2, 4));
+            assertNull(map.get(packet, 2, 3));
+            assertNull(map.get(packet, 1, 4));
+        } finally {
+            packet.release();
+        }
+        assertEquals("a", map.get(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 })));
+
+        assertEquals("a", map.put(id, "b"));
+        assertEquals(1, map.size());
+
+        // Only remove if the value matches.
+        assertFalse(map.remove(id, "a"));
+        assertTrue(map.remove(id, "b"));
+        assertEquals(0, map.size());
+        assertNull(map.get(id));
+    }
+
+    @Test
+    public void testGrowAndRemoveRandomly() {
+        Random random = new Random(42);
+        ConnectionIdMap<Integer> map = new ConnectionIdMap<>(2);
+        Map<ByteBuffer, Integer> expected = new HashMap<>();
+        ByteBuffer[] ids = new ByteBuffer[4096];
+        for (int i = 0; i < ids.length; i++) {
+            byte[] bytes = new byte[1 + random.nextInt(20)];
+            random.nextBytes(bytes);
+            ids[i] = ByteBuffer.wrap(bytes);
+        }
+
+        for (int i = 0; i < 100000; i++) {
+            ByteBuffer id = ids[random.nextInt(ids.length)];
+            if (random.nextInt(3) == 0) {
+                Integer value = expected.get(id);
+                assertEquals(value != null, map.remove(id, value));
+                expected.remove(id);
+            } else {
+                // Box once as the map removes by identity.
+                Integer value = i;
+                assertEquals(expected.put(id, value), map.put(id, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (ByteBuffer id : ids) {
+            Integer value = expected.get(id);
+            assertEquals(value, map.get(id));
+            assertEquals(value, map.get(Unpooled.wrappedBuffer(id.duplicate())));
+        }
+        assertEquals(expected.size(), map.values().size());
+        assertTrue(map.values().containsAll(expected.values()));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertSame(null, map.get(ids[0]));
+    }
+}
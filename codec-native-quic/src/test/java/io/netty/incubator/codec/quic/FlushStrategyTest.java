@@ -17,7 +17,13 @@ package io.netty.incubator.codec.quic;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class FlushStrategyTest {
@@ -35,4 +41,51 @@ public class FlushStrategyTest {
         assertFalse(strategy.shouldFlushNow(10, 10));
         assertTrue(strategy.shouldFlushNow(11, 11));
     }
+
+    @Test
+    public void testDefaultHasNoDelay() {
+        assertEquals(0, FlushStrategy.DEFAULT.maxFlushDelayNanos());
+        assertSame(FlushStrategy.DEFAULT, FlushStrategy.DEFAULT.instanceForCodec());
+    }
+
+    @Test
+    public void testAfterNumBytesOrDelay() {
+        FlushStrategy strategy = FlushStrategy.afterNumBytesOrDelay(10, 5, TimeUnit.MICROSECONDS);
+        assertFalse(strategy.shouldFlushNow(1, 10));
+        assertTrue(strategy.shouldFlushNow(1, 11));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(5), strategy.maxFlushDelayNanos());
+        assertThrows(IllegalArgumentException.class, () ->
+                FlushStrategy.afterNumBytesOrDelay(10, 0, TimeUnit.MICROSECONDS));
+    }
+
+    @Test
+    public void testAfterNumPacketsOrDelay() {
+        FlushStrategy strategy = FlushStrategy.afterNumPacketsOrDelay(10, 5, TimeUnit.MICROSECONDS);
+        assertFalse(strategy.shouldFlushNow(10, 10));
+        assertTrue(strategy.shouldFlushNow(11, 11));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(5), strategy.maxFlushDelayNanos());
+    }
+
+    @Test
+    public void testAdaptive() throws Exception {
+        FlushStrategy shared = FlushStrategy.adaptive(64, 10, TimeUnit.SECONDS);
+        FlushStrategy strategy = shared.instanceForCodec();
+        assertNotSame(shared, strategy);
+        assertEquals(TimeUnit.SECONDS.toNanos(10), strategy.maxFlushDelayNanos());
+
+        // Without any observations we flush directly.
+        assertTrue(strategy.shouldFlushNow(1, 100));
+
+        // A high packet rate increases the batch size, but never above the max.
+        strategy.flushed(1, 100, true);
+        Thread.sleep(1);
+        strategy.flushed(1000, 100000, true);
+        assertFalse(strategy.shouldFlushNow(1, 100));
+        assertFalse(strategy.shouldFlushNow(63, 6300));
+        assertTrue(strategy.shouldFlushNow(64, 6400));
+
+        // Once the parent is not writable the batch size is reduced.
+        strategy.flushed(64, 6400, false);
+        assertTrue(strategy.shouldFlushNow(32, 3200));
+    }
 }
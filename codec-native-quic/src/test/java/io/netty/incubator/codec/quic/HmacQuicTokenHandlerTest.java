@@ -0,0 +1,203 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HmacQuicTokenHandlerTest extends AbstractQuicTest {
+    private static final long LIFETIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    // key id, timestamp and tag.
+    private static final int HEADER_LENGTH = 1 + 8 + 16;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @Test
+    public void testTokenProcessingIpv4() throws UnknownHostException {
+        testTokenProcessing(new byte[] { 10, 10, 10, 1}, new byte[] { 10, 10, 10, 10});
+    }
+
+    @Test
+    public void testTokenProcessingIpv6() throws UnknownHostException {
+        testTokenProcessing(
+                new byte[] { 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 1},
+                new byte[] { 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10});
+    }
+
+    private void testTokenProcessing(byte[] valid, byte[] invalid) throws UnknownHostException {
+        HmacQuicTokenHandler handler = newHandler(0);
+        InetSocketAddress validAddress = new InetSocketAddress(InetAddress.getByAddress(valid), 9999);
+        InetSocketAddress invalidAddress = new InetSocketAddress(InetAddress.getByAddress(invalid), 9999);
+        ByteBuf dcid = newDcid();
+        ByteBuf out = Unpooled.buffer();
+        try {
+            handler.writeToken(out, dcid, validAddress);
+            assertThat(out.readableBytes(), lessThanOrEqualTo(handler.maxTokenLength()));
+            int offset = handler.validateToken(out, validAddress);
+            assertEquals(out.readableBytes() - dcid.readableBytes(), offset);
+            assertEquals(dcid, out.slice(offset, out.readableBytes() - offset));
+
+            // Use another address and check that the validate fails.
+            assertEquals(-1, handler.validateToken(out, invalidAddress));
+        } finally {
+            dcid.release();
+            out.release();
+        }
+    }
+
+    @Test
+    public void testTamperedToken() {
+        HmacQuicTokenHandler handler = newHandler(0);
+        InetSocketAddress address = new InetSocketAddress("10.0.0.1", 9999);
+        ByteBuf dcid = newDcid();
+        ByteBuf out = Unpooled.buffer();
+        try {
+            handler.writeToken(out, dcid, address);
+            for (int i = 0; i < out.readableBytes(); i++) {
+                ByteBuf copy = out.copy();
+                try {
+                    copy.setByte(i, copy.getByte(i) ^ 1);
+                    assertEquals(-1, handler.validateToken(copy, address));
+                } finally {
+                    copy.release();
+                }
+            }
+            // Truncated tokens are not valid either.
+            assertEquals(-1, handler.validateToken(out.slice(0, out.readableBytes() - 1), address));
+        } finally {
+            dcid.release();
+            out.release();
+        }
+    }
+
+    @Test
+    public void testTokenExpires() {
+        HmacQuicTokenHandler handler = newHandler(0);
+        InetSocketAddress address = new InetSocketAddress("10.0.0.1", 9999);
+        ByteBuf dcid = newDcid();
+        ByteBuf out = Unpooled.buffer();
+        try {
+            handler.writeToken(out, dcid, address);
+            clock.addAndGet(LIFETIME_MILLIS);
+            assertEquals(HEADER_LENGTH, handler.validateToken(out, address));
+            clock.incrementAndGet();
+            assertEquals(-1, handler.validateToken(out, address));
+        } finally {
+            dcid.release();
+            out.release();
+        }
+    }
+
+    @Test
+    public void testKeyRotation() {
+        HmacQuicTokenHandler handler = newHandler(0);
+        InetSocketAddress address = new InetSocketAddress("10.0.0.1", 9999);
+        ByteBuf dcid = newDcid();
+        ByteBuf first = Unpooled.buffer();
+        ByteBuf second = Unpooled.buffer();
+        try {
+            handler.writeToken(first, dcid, address);
+            handler.rotateKey(newKey());
+            handler.writeToken(second, dcid, address);
+
+            // Tokens of the previous key are still accepted.
+            assertEquals(HEADER_LENGTH, handler.validateToken(first, address));
+            assertEquals(HEADER_LENGTH, handler.validateToken(second, address));
+
+            handler.rotateKey(newKey());
+            assertEquals(-1, handler.validateToken(first, address));
+            assertEquals(HEADER_LENGTH, handler.validateToken(second, address));
+        } finally {
+            dcid.release();
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void testAutomaticKeyRotation() {
+        HmacQuicTokenHandler handler = newHandler(LIFETIME_MILLIS);
+        InetSocketAddress address = new InetSocketAddress("10.0.0.1", 9999);
+        ByteBuf dcid = newDcid();
+        ByteBuf first = Unpooled.buffer();
+        ByteBuf second = Unpooled.buffer();
+        try {
+            handler.writeToken(first, dcid, address);
+            clock.addAndGet(LIFETIME_MILLIS);
+            // This rotates the key.
+            handler.writeToken(second, dcid, address);
+            assertEquals(first.getByte(0) + 1, second.getByte(0));
+            assertEquals(HEADER_LENGTH, handler.validateToken(first, address));
+            assertEquals(HEADER_LENGTH, handler.validateToken(second, address));
+        } finally {
+            dcid.release();
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void testSharedKey() {
+        byte[] key = newKey();
+        HmacQuicTokenHandler handler = HmacQuicTokenHandler.newInstance(key, 10, TimeUnit.SECONDS);
+        HmacQuicTokenHandler handler2 = HmacQuicTokenHandler.newInstance(key, 10, TimeUnit.SECONDS);
+        InetSocketAddress address = new InetSocketAddress("10.0.0.1", 9999);
+        ByteBuf dcid = newDcid();
+        ByteBuf out = Unpooled.buffer();
+        try {
+            handler.writeToken(out, dcid, address);
+            assertEquals(HEADER_LENGTH, handler2.validateToken(out, address));
+        } finally {
+            dcid.release();
+            out.release();
+        }
+    }
+
+    @Test
+    public void testKeyTooShort() {
+        assertThrows(IllegalArgumentException.class,
+                () -> HmacQuicTokenHandler.newInstance(new byte[8], 10, TimeUnit.SECONDS));
+    }
+
+    private HmacQuicTokenHandler newHandler(long rotationIntervalMillis) {
+        return new HmacQuicTokenHandler(newKey(), LIFETIME_MILLIS, rotationIntervalMillis, clock::get);
+    }
+
+    private static byte[] newKey() {
+        byte[] key = new byte[32];
+        ThreadLocalRandom.current().nextBytes(key);
+        return key;
+    }
+
+    private static ByteBuf newDcid() {
+        byte[] bytes = new byte[Quiche.QUICHE_MAX_CONN_ID_LEN];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return Unpooled.wrappedBuffer(bytes);
+    }
+}
@@ -19,6 +19,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelOption;
@@ -28,9 +29,13 @@ import io.netty.handler.ssl.ClientAuth;
 import io.netty.handler.ssl.SniCompletionEvent;
 import io.netty.handler.ssl.SslHandshakeCompletionEvent;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.KeyManagerFactoryWrapper;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
 import io.netty.handler.ssl.util.TrustManagerFactoryWrapper;
+import io.netty.util.CharsetUtil;
 import io.netty.util.DomainWildcardMappingBuilder;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.ImmediateEventExecutor;
 import org.hamcrest.CoreMatchers;
@@ -43,6 +48,7 @@ import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.X509ExtendedKeyManager;
 import javax.net.ssl.X509ExtendedTrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.io.File;
@@ -54,8 +60,11 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.Principal;
+import java.security.PrivateKey;
 import java.security.Signature;
 import java.security.SignatureException;
+import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.security.spec.MGF1ParameterSpec;
@@ -70,10 +79,13 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -414,6 +426,207 @@ public class QuicChannelConnectTest extends AbstractQuicTest {
         }
     }
 
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testMaxConnections(Executor executor) throws Throwable {
+        QuicServerAdmissionMetrics metrics = new QuicServerAdmissionMetrics();
+        Channel server = QuicTestUtils.newServer(QuicTestUtils.newQuicServerBuilder(executor)
+                        .maxConnections(1).admissionMetrics(metrics), InsecureQuicTokenHandler.INSTANCE,
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public boolean isSharable() {
+                        return true;
+                    }
+                }, new ChannelInboundHandlerAdapter());
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        try {
+            QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new ChannelInboundHandlerAdapter())
+                    .remoteAddress(address)
+                    .connect()
+                    .get();
+            assertTrue(quicChannel.isActive());
+
+            // The server should drop the second connection attempt.
+            ChannelStateVerifyHandler verifyHandler = new ChannelStateVerifyHandler();
+            Future<QuicChannel> future = QuicChannel.newBootstrap(channel)
+                    .handler(verifyHandler)
+                    .streamHandler(new ChannelInboundHandlerAdapter())
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 500)
+                    .remoteAddress(address)
+                    .connect();
+            Throwable cause = future.await().cause();
+            assertThat(cause, CoreMatchers.instanceOf(ConnectTimeoutException.class));
+            verifyHandler.assertState();
+
+            assertEquals(1, metrics.connections());
+            assertEquals(0, metrics.handshakes());
+            assertThat(metrics.rejectedConnections(), Matchers.greaterThan(0L));
+            assertEquals(0, metrics.rejectedHandshakes());
+
+            quicChannel.close().sync();
+        } finally {
+            server.close().sync();
+            // The codec is removed once the server channel was deregistered, which is done by a task that was
+            // scheduled before the close completed.
+            server.eventLoop().submit(() -> { }).sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+        // All connections must be accounted as removed once the codec was removed.
+        assertEquals(0, metrics.connections());
+        assertEquals(0, metrics.handshakes());
+    }
+
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testConnectMultipleTimesWithSameKeyMaterial(Executor executor) throws Throwable {
+        Channel server = QuicTestUtils.newServer(executor, new ChannelInboundHandlerAdapter() {
+            @Override
+            public boolean isSharable() {
+                return true;
+            }
+        }, new ChannelInboundHandlerAdapter());
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        try {
+            Certificate[] certificates = null;
+            // The key material of the server is parsed once and then reused for all the handshakes.
+            for (int i = 0; i < 3; i++) {
+                QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                        .handler(new ChannelInboundHandlerAdapter())
+                        .streamHandler(new ChannelInboundHandlerAdapter())
+                        .remoteAddress(address)
+                        .connect()
+                        .get();
+                assertTrue(quicChannel.isActive());
+                Certificate[] peerCertificates = quicChannel.sslEngine().getSession().getPeerCertificates();
+                if (certificates == null) {
+                    certificates = peerCertificates;
+                } else {
+                    assertArrayEquals(certificates, peerCertificates);
+                }
+                quicChannel.close().sync();
+            }
+        } finally {
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testConnectWithChangedKeyMaterialForSameAlias(Executor executor) throws Throwable {
+        SelfSignedCertificate newCertificate = new SelfSignedCertificate();
+        AtomicReference<SelfSignedCertificate> current = new AtomicReference<>(QuicTestUtils.SELF_SIGNED_CERTIFICATE);
+        String alias = "key";
+        X509ExtendedKeyManager keyManager = new X509ExtendedKeyManager() {
+            @Override
+            public String[] getClientAliases(String keyType, Principal[] issuers) {
+                return null;
+            }
+
+            @Override
+            public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+                return null;
+            }
+
+            @Override
+            public String[] getServerAliases(String keyType, Principal[] issuers) {
+                return new String[] { alias };
+            }
+
+            @Override
+            public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+                return alias;
+            }
+
+            @Override
+            public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+                return alias;
+            }
+
+            @Override
+            public X509Certificate[] getCertificateChain(String alias) {
+                return new X509Certificate[] { current.get().cert() };
+            }
+
+            @Override
+            public PrivateKey getPrivateKey(String alias) {
+                return current.get().key();
+            }
+        };
+        QuicheQuicSslContext serverSslContext = (QuicheQuicSslContext) QuicSslContextBuilder.forServer(
+                new KeyManagerFactoryWrapper(keyManager), null)
+                .applicationProtocols(QuicTestUtils.PROTOS).build();
+        BoringSSLCertificateCallback certificateCallback =
+                serverSslContext.nativeSslContext.certificateCallback();
+
+        Channel server = QuicTestUtils.newServer(QuicTestUtils.newQuicServerBuilder(executor, serverSslContext),
+                InsecureQuicTokenHandler.INSTANCE, new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public boolean isSharable() {
+                        return true;
+                    }
+                }, new ChannelInboundHandlerAdapter());
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        try {
+            assertPeerCertificate(channel, address, QuicTestUtils.SELF_SIGNED_CERTIFICATE.cert());
+            ReferenceCounted oldMaterial = certificateCallback.cachedKeyMaterial(alias);
+            assertNotNull(oldMaterial);
+            // Only referenced by the cache as the connection was closed.
+            assertEquals(1, oldMaterial.refCnt());
+
+            // The key manager now returns a different certificate and key for the same alias.
+            current.set(newCertificate);
+            assertPeerCertificate(channel, address, newCertificate.cert());
+            ReferenceCounted newMaterial = certificateCallback.cachedKeyMaterial(alias);
+            assertNotNull(newMaterial);
+            assertNotSame(oldMaterial, newMaterial);
+            // The replaced key material must have been released, which frees the native key and chain.
+            assertEquals(0, oldMaterial.refCnt());
+            assertEquals(1, newMaterial.refCnt());
+
+            // The new key material is reused from now on.
+            assertPeerCertificate(channel, address, newCertificate.cert());
+            assertSame(newMaterial, certificateCallback.cachedKeyMaterial(alias));
+            assertEquals(1, newMaterial.refCnt());
+        } finally {
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+            newCertificate.delete();
+        }
+    }
+
+    private static void assertPeerCertificate(Channel channel, InetSocketAddress address, X509Certificate expected)
+            throws Exception {
+        QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                .handler(new ChannelInboundHandlerAdapter())
+                .streamHandler(new ChannelInboundHandlerAdapter())
+                .remoteAddress(address)
+                .connect()
+                .get();
+        try {
+            assertTrue(quicChannel.isActive());
+            Certificate[] peerCertificates = quicChannel.sslEngine().getSession().getPeerCertificates();
+            assertEquals(1, peerCertificates.length);
+            assertEquals(expected, peerCertificates[0]);
+        } finally {
+            quicChannel.close().sync();
+        }
+    }
+
     @ParameterizedTest
     @MethodSource("newSslTaskExecutors")
     public void testConnectAlreadyConnected(Executor executor) throws Throwable {
@@ -1185,6 +1398,83 @@ public class QuicChannelConnectTest extends AbstractQuicTest {
         }
     }
 
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testSessionResumedOnOtherServerWithSameTicketKeys(Executor executor) throws Exception {
+        SslSessionTicketKeyRotator rotator = SslSessionTicketKeyRotator.newRotator(
+                "0123456789abcdef0123456789abcdef".getBytes(CharsetUtil.US_ASCII), 1, TimeUnit.HOURS);
+        QuicSslContext serverSslContext1 = QuicSslContextBuilder.forServer(
+                QuicTestUtils.SELF_SIGNED_CERTIFICATE.privateKey(), null,
+                QuicTestUtils.SELF_SIGNED_CERTIFICATE.certificate()).applicationProtocols(QuicTestUtils.PROTOS).build();
+        QuicSslContext serverSslContext2 = QuicSslContextBuilder.forServer(
+                QuicTestUtils.SELF_SIGNED_CERTIFICATE.privateKey(), null,
+                QuicTestUtils.SELF_SIGNED_CERTIFICATE.certificate()).applicationProtocols(QuicTestUtils.PROTOS).build();
+        rotator.rotate(serverSslContext1, serverSslContext2);
+
+        ChannelHandler serverHandler = new ChannelInboundHandlerAdapter() {
+            @Override
+            public boolean isSharable() {
+                return true;
+            }
+
+            @Override
+            public void channelActive(ChannelHandlerContext ctx) {
+                ((QuicChannel) ctx.channel()).createStream(QuicStreamType.BIDIRECTIONAL,
+                        new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelActive(ChannelHandlerContext ctx) {
+                                ctx.writeAndFlush(ctx.alloc().directBuffer(10).writeZero(10))
+                                        .addListener(f -> ctx.close());
+                            }
+                        });
+                ctx.fireChannelActive();
+            }
+        };
+        Channel server1 = QuicTestUtils.newServer(QuicTestUtils.newQuicServerBuilder(executor, serverSslContext1),
+                InsecureQuicTokenHandler.INSTANCE, serverHandler, new ChannelInboundHandlerAdapter());
+        Channel server2 = QuicTestUtils.newServer(QuicTestUtils.newQuicServerBuilder(executor, serverSslContext2),
+                InsecureQuicTokenHandler.INSTANCE, serverHandler, new ChannelInboundHandlerAdapter());
+        QuicSslContext clientSslContext = QuicSslContextBuilder.forClient()
+                .trustManager(InsecureTrustManagerFactory.INSTANCE).applicationProtocols(QuicTestUtils.PROTOS).build();
+
+        // Use the same peer for both servers, so the client will try to resume the session.
+        Channel channel = QuicTestUtils.newClient(QuicTestUtils.newQuicClientBuilder(executor).sslEngineProvider(c ->
+                clientSslContext.newEngine(c.alloc(), "localhost", 9999)));
+        try {
+            CountDownLatch latch1 = new CountDownLatch(1);
+            QuicChannel quicChannel1 = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new BytesCountingHandler(latch1, 10))
+                    .remoteAddress(server1.localAddress())
+                    .connect()
+                    .get();
+            latch1.await();
+            assertSessionReused(quicChannel1, false);
+
+            CountDownLatch latch2 = new CountDownLatch(1);
+            QuicChannel quicChannel2 = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new BytesCountingHandler(latch2, 10))
+                    .remoteAddress(server2.localAddress())
+                    .connect()
+                    .get();
+            latch2.await();
+
+            // The session that was created by the first server is resumed by the second one.
+            assertSessionReused(quicChannel2, true);
+
+            quicChannel1.close().sync();
+            quicChannel2.close().sync();
+        } finally {
+            server1.close().sync();
+            server2.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+    }
+
     private static void assertSessionReused(QuicChannel channel, boolean reused) throws Exception {
         QuicheQuicSslEngine engine =  (QuicheQuicSslEngine) channel.sslEngine();
         while (engine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.ChannelInputShutdownReadComplete;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QuicChannelPoolTest extends AbstractQuicTest {
+
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testStreamsUseExistingConnectionsFirst(Executor executor) throws Throwable {
+        Channel server = QuicTestUtils.newServer(
+                QuicTestUtils.newQuicServerBuilder(executor).initialMaxStreamsBidirectional(1),
+                InsecureQuicTokenHandler.INSTANCE,
+                new ChannelInboundHandlerAdapter(), new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public boolean isSharable() {
+                        return true;
+                    }
+
+                    @Override
+                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                        if (evt == ChannelInputShutdownReadComplete.INSTANCE) {
+                            ctx.close();
+                        }
+                    }
+                });
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        QuicChannelPool pool = new QuicChannelPool(channel, bootstrap ->
+                bootstrap.handler(new ChannelInboundHandlerAdapter())
+                        .streamHandler(new ChannelInboundHandlerAdapter()), 2);
+        try {
+            QuicStreamChannel stream = pool.newStream(
+                    address, QuicStreamType.BIDIRECTIONAL, new ChannelInboundHandlerAdapter()).get();
+
+            // The first connection has no credit left, so a second one is opened.
+            QuicStreamChannel stream2 = pool.newStream(
+                    address, QuicStreamType.BIDIRECTIONAL, new ChannelInboundHandlerAdapter()).get();
+            assertNotSame(stream.parent(), stream2.parent());
+
+            // All connections are saturated and we are not allowed to open another one.
+            Future<QuicStreamChannel> future = pool.newStream(
+                    address, QuicStreamType.BIDIRECTIONAL, new ChannelInboundHandlerAdapter());
+            assertFalse(future.await(500));
+
+            // Once the stream is closed the peer grants more credit and the pending stream is created.
+            stream.shutdownOutput().sync();
+            QuicStreamChannel stream3 = future.get();
+            assertSame(stream.parent(), stream3.parent());
+            assertTrue(stream3.isActive());
+        } finally {
+            pool.close();
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+    }
+}
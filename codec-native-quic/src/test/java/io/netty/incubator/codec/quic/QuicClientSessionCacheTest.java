@@ -0,0 +1,163 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class QuicClientSessionCacheTest {
+
+    private static final String HOST = "netty.io";
+    private static final int PORT = 443;
+    private static final long TIMEOUT = 60000;
+
+    @Test
+    public void testMultipleSingleUseSessions() {
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        long now = System.currentTimeMillis();
+        cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { 1 }, true);
+        cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { 2 }, true);
+
+        // The newest session is used first and every session is only used once.
+        assertArrayEquals(new byte[] { 2 }, cache.getSession(HOST, PORT));
+        assertArrayEquals(new byte[] { 1 }, cache.getSession(HOST, PORT));
+        assertNull(cache.getSession(HOST, PORT));
+    }
+
+    @Test
+    public void testMultiUseSession() {
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        cache.saveSession(HOST, PORT, System.currentTimeMillis(), TIMEOUT, new byte[] { 1 }, false);
+        assertArrayEquals(new byte[] { 1 }, cache.getSession(HOST, PORT));
+        assertArrayEquals(new byte[] { 1 }, cache.getSession("NETTY.io", PORT));
+        assertNull(cache.getSession(HOST, PORT + 1));
+
+        cache.removeSession(HOST, PORT);
+        assertNull(cache.getSession(HOST, PORT));
+    }
+
+    @Test
+    public void testMaxSessionsPerPeer() {
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < QuicClientSessionCache.MAX_SESSIONS_PER_PEER + 2; i++) {
+            cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { (byte) i }, true);
+        }
+        int sessions = 0;
+        while (cache.getSession(HOST, PORT) != null) {
+            sessions++;
+        }
+        assertEquals(QuicClientSessionCache.MAX_SESSIONS_PER_PEER, sessions);
+    }
+
+    @Test
+    public void testExpiredSessionsAreSkipped() {
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        long now = System.currentTimeMillis();
+        cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { 1 }, true);
+        // Already expired.
+        cache.saveSession(HOST, PORT, now - 2 * TIMEOUT, TIMEOUT, new byte[] { 2 }, true);
+
+        assertArrayEquals(new byte[] { 1 }, cache.getSession(HOST, PORT));
+        assertNull(cache.getSession(HOST, PORT));
+    }
+
+    @Test
+    public void testMaxCacheSize() {
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        cache.setSessionCacheSize(2);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            cache.saveSession(HOST, i + 1, now, TIMEOUT, new byte[] { (byte) i }, false);
+        }
+        int peers = 0;
+        for (int i = 0; i < 10; i++) {
+            if (cache.getSession(HOST, i + 1) != null) {
+                peers++;
+            }
+        }
+        assertEquals(2, peers);
+
+        cache.setSessionCacheSize(0);
+        cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { 1 }, false);
+        assertNull(cache.getSession(HOST, PORT));
+    }
+
+    @Test
+    public void testRecentlyUsedPeersAreKept() {
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        cache.setSessionCacheSize(3);
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= 3; i++) {
+            cache.saveSession(HOST, i, now, TIMEOUT, new byte[] { (byte) i }, false);
+        }
+        // Use the oldest peer, so the next insert needs to evict the second oldest one.
+        assertNotNull(cache.getSession(HOST, 1));
+        cache.saveSession(HOST, 4, now, TIMEOUT, new byte[] { 4 }, false);
+
+        assertNotNull(cache.getSession(HOST, 1));
+        assertNull(cache.getSession(HOST, 2));
+        assertNotNull(cache.getSession(HOST, 3));
+        assertNotNull(cache.getSession(HOST, 4));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Throwable {
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        int threads = 4;
+        int sessionsPerThread = 10000;
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < sessionsPerThread; j++) {
+                        cache.saveSession(HOST, PORT, System.currentTimeMillis(), TIMEOUT, new byte[] { 1 }, true);
+                        byte[] session = cache.getSession(HOST, PORT);
+                        if (session != null) {
+                            received.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable cause) {
+                    synchronized (errors) {
+                        errors.add(cause);
+                    }
+                }
+            });
+            thread.start();
+            workers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        assertEquals(0, errors.size());
+        // Every thread saves a session before it tries to get one, so each get should have found a session.
+        assertEquals(threads * sessionsPerThread, received.get());
+    }
+}
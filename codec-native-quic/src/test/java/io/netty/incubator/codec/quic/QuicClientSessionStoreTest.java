@@ -0,0 +1,213 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class QuicClientSessionStoreTest {
+
+    private static final String HOST = "netty.io";
+    private static final int PORT = 443;
+    private static final long TIMEOUT = 60000;
+
+    @TempDir
+    Path dir;
+
+    private final List<QuicClientSessionStore> stores = new ArrayList<>();
+
+    @AfterEach
+    public void closeStores() {
+        stores.forEach(QuicClientSessionStore::close);
+    }
+
+    private QuicClientSessionCache load(Path file) {
+        QuicClientSessionStore store = QuicClientSessionStore.newStore(file);
+        stores.add(store);
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        cache.setSessionStore(store);
+        return cache;
+    }
+
+    @Test
+    public void testSessionsSurviveRestart() {
+        Path file = dir.resolve("sessions");
+        QuicClientSessionStore store = QuicClientSessionStore.newStore(file);
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        cache.setSessionStore(store);
+        long now = System.currentTimeMillis();
+        cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { 1 }, false);
+        cache.saveSession("quic.netty.io", PORT, now, TIMEOUT, new byte[] { 2 }, false);
+        store.close();
+
+        QuicClientSessionCache restarted = load(file);
+        assertArrayEquals(new byte[] { 1 }, restarted.getSession(HOST, PORT));
+        assertArrayEquals(new byte[] { 2 }, restarted.getSession("quic.netty.io", PORT));
+    }
+
+    @Test
+    public void testUsedAndRemovedSessionsAreNotLoaded() {
+        Path file = dir.resolve("sessions");
+        QuicClientSessionStore store = QuicClientSessionStore.newStore(file);
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        cache.setSessionStore(store);
+        long now = System.currentTimeMillis();
+        cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { 1 }, true);
+        cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { 2 }, true);
+        cache.saveSession("quic.netty.io", PORT, now, TIMEOUT, new byte[] { 3 }, false);
+        assertArrayEquals(new byte[] { 2 }, cache.getSession(HOST, PORT));
+        cache.removeSession("quic.netty.io", PORT);
+        store.close();
+
+        QuicClientSessionCache restarted = load(file);
+        assertArrayEquals(new byte[] { 1 }, restarted.getSession(HOST, PORT));
+        assertNull(restarted.getSession(HOST, PORT));
+        assertNull(restarted.getSession("quic.netty.io", PORT));
+    }
+
+    @Test
+    public void testExpiredSessionsAreNotLoaded() {
+        Path file = dir.resolve("sessions");
+        QuicClientSessionStore store = QuicClientSessionStore.newStore(file);
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        cache.setSessionStore(store);
+        cache.saveSession(HOST, PORT, System.currentTimeMillis() - 2 * TIMEOUT, TIMEOUT, new byte[] { 1 }, false);
+        store.close();
+
+        assertNull(load(file).getSession(HOST, PORT));
+    }
+
+    @Test
+    public void testSessionsDroppedByTheCacheAreNotPersisted() throws Exception {
+        Path file = dir.resolve("sessions");
+        QuicClientSessionStore store = QuicClientSessionStore.newStore(file);
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        cache.setSessionStore(store);
+        long now = System.currentTimeMillis();
+        int numSessions = QuicClientSessionCache.MAX_SESSIONS_PER_PEER + 2;
+        for (int i = 0; i < numSessions; i++) {
+            cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { (byte) i }, true);
+        }
+        store.close();
+
+        // The same sessions that the cache did keep.
+        Path expectedFile = dir.resolve("expected");
+        QuicClientSessionStore expectedStore = QuicClientSessionStore.newStore(expectedFile);
+        QuicClientSessionCache expectedCache = new QuicClientSessionCache();
+        expectedCache.setSessionStore(expectedStore);
+        for (int i = numSessions - QuicClientSessionCache.MAX_SESSIONS_PER_PEER; i < numSessions; i++) {
+            expectedCache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { (byte) i }, true);
+        }
+        expectedStore.close();
+
+        // Loading compacts the file, after this it must only contain the sessions that the cache did keep.
+        QuicClientSessionCache restarted = load(file);
+        load(expectedFile);
+        assertEquals(Files.size(expectedFile), Files.size(file));
+        for (int i = numSessions - 1; i >= numSessions - QuicClientSessionCache.MAX_SESSIONS_PER_PEER; i--) {
+            assertArrayEquals(new byte[] { (byte) i }, restarted.getSession(HOST, PORT));
+        }
+        assertNull(restarted.getSession(HOST, PORT));
+    }
+
+    @Test
+    public void testEvictedPeersAreNotPersisted() throws Exception {
+        Path file = dir.resolve("sessions");
+        QuicClientSessionStore store = QuicClientSessionStore.newStore(file);
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        cache.setSessionStore(store);
+        cache.setSessionCacheSize(1);
+        long now = System.currentTimeMillis();
+        cache.saveSession("quic.netty.io", PORT, now, TIMEOUT, new byte[] { 1 }, false);
+        cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { 2 }, false);
+        store.close();
+
+        Path expectedFile = dir.resolve("expected");
+        QuicClientSessionStore expectedStore = QuicClientSessionStore.newStore(expectedFile);
+        QuicClientSessionCache expectedCache = new QuicClientSessionCache();
+        expectedCache.setSessionStore(expectedStore);
+        expectedCache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { 2 }, false);
+        expectedStore.close();
+
+        QuicClientSessionCache restarted = load(file);
+        load(expectedFile);
+        assertEquals(Files.size(expectedFile), Files.size(file));
+        assertNull(restarted.getSession("quic.netty.io", PORT));
+        assertArrayEquals(new byte[] { 2 }, restarted.getSession(HOST, PORT));
+    }
+
+    @Test
+    public void testClearedSessionsAreNotPersisted() {
+        Path file = dir.resolve("sessions");
+        QuicClientSessionStore store = QuicClientSessionStore.newStore(file);
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        cache.setSessionStore(store);
+        long now = System.currentTimeMillis();
+        cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { 1 }, false);
+        cache.saveSession("quic.netty.io", PORT, now, TIMEOUT, new byte[] { 2 }, false);
+        // Reducing the timeout clears the cache.
+        cache.setSessionTimeout(cache.getSessionTimeout() - 1);
+        store.close();
+
+        QuicClientSessionCache restarted = load(file);
+        assertNull(restarted.getSession(HOST, PORT));
+        assertNull(restarted.getSession("quic.netty.io", PORT));
+    }
+
+    @Test
+    public void testTruncatedFile() throws Exception {
+        Path file = dir.resolve("sessions");
+        QuicClientSessionStore store = QuicClientSessionStore.newStore(file);
+        QuicClientSessionCache cache = new QuicClientSessionCache();
+        cache.setSessionStore(store);
+        long now = System.currentTimeMillis();
+        cache.saveSession(HOST, PORT, now, TIMEOUT, new byte[] { 1 }, false);
+        cache.saveSession("quic.netty.io", PORT, now, TIMEOUT, new byte[] { 2 }, false);
+        store.close();
+
+        // Simulate a partial write of the last record.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 1);
+        }
+        QuicClientSessionCache restarted = load(file);
+        assertArrayEquals(new byte[] { 1 }, restarted.getSession(HOST, PORT));
+        assertNull(restarted.getSession("quic.netty.io", PORT));
+    }
+
+    @Test
+    public void testStoreCanOnlyBeUsedOnce() {
+        QuicClientSessionStore store = QuicClientSessionStore.newStore(dir.resolve("sessions"));
+        try {
+            new QuicClientSessionCache().setSessionStore(store);
+            assertThrows(IllegalStateException.class, () -> new QuicClientSessionCache().setSessionStore(store));
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.concurrent.ImmediateExecutor;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class QuicConnectionFootprintTest extends AbstractQuicTest {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(QuicConnectionFootprintTest.class);
+    private static final int NUM_CONNECTIONS = 64;
+
+    @Test
+    public void testNoPerConnectionScratchMemory() {
+        // The recv / send info structs and the stream id arrays are shared per thread.
+        assertNoInstanceFieldOfType(QuicheQuicConnection.class, ByteBuf.class, ByteBuffer.class, long[].class);
+        assertNoInstanceFieldOfType(QuicheQuicChannel.class, long[].class);
+    }
+
+    @Test
+    public void testIdleConnectionFootprint() throws Throwable {
+        assumeTrue(PlatformDependent.usedDirectMemory() >= 0, "direct memory is not tracked by netty");
+        Channel server = null;
+        Channel channel = null;
+        List<QuicChannel> quicChannels = new ArrayList<>(NUM_CONNECTIONS);
+        CountDownLatch serverActive = new CountDownLatch(NUM_CONNECTIONS);
+        try {
+            server = QuicTestUtils.newServer(ImmediateExecutor.INSTANCE, new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelActive(ChannelHandlerContext ctx) {
+                    serverActive.countDown();
+                    ctx.fireChannelActive();
+                }
+
+                @Override
+                public boolean isSharable() {
+                    return true;
+                }
+            }, new ChannelInboundHandlerAdapter());
+            channel = QuicTestUtils.newClient(ImmediateExecutor.INSTANCE);
+
+            // Establish one connection first so all the per thread state is already allocated.
+            quicChannels.add(connect(channel, server));
+
+            long directBefore = PlatformDependent.usedDirectMemory();
+            for (int i = 1; i < NUM_CONNECTIONS; i++) {
+                quicChannels.add(connect(channel, server));
+            }
+            assertTrue(serverActive.await(10, TimeUnit.SECONDS));
+            long directAfter = PlatformDependent.usedDirectMemory();
+
+            // Each connection has a client and a server side.
+            int connections = 2 * (NUM_CONNECTIONS - 1);
+            long perConnection = (directAfter - directBefore) / connections;
+            logger.info("Idle connection footprint: {} direct bytes (tracked by netty) per connection",
+                    perConnection);
+            // Before the scratch memory was shared per thread each connection allocated two direct buffers with two
+            // copies of quiche_recv_info and quiche_send_info each.
+            int recvInfoSize = Quiche.SIZEOF_QUICHE_RECV_INFO + 2 * Quiche.SIZEOF_SOCKADDR_STORAGE;
+            int scratchSize = 2 * recvInfoSize + 2 * Quiche.SIZEOF_QUICHE_SEND_INFO;
+            assertTrue(perConnection < scratchSize,
+                    "per connection " + perConnection + " >= " + scratchSize + " direct bytes");
+
+            for (QuicChannel quicChannel : quicChannels) {
+                assertTrue(quicChannel.isActive());
+            }
+        } finally {
+            for (QuicChannel quicChannel : quicChannels) {
+                quicChannel.close().sync();
+            }
+            QuicTestUtils.closeIfNotNull(channel);
+            QuicTestUtils.closeIfNotNull(server);
+        }
+    }
+
+    private static void assertNoInstanceFieldOfType(Class<?> clazz, Class<?>... types) {
+        for (Field field : clazz.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            for (Class<?> type : types) {
+                assertFalse(type.isAssignableFrom(field.getType()),
+                        clazz.getSimpleName() + "." + field.getName() + " is a " + type.getSimpleName());
+            }
+        }
+    }
+
+    private static QuicChannel connect(Channel channel, Channel server) throws Exception {
+        return QuicChannel.newBootstrap(channel)
+                .handler(new ChannelInboundHandlerAdapter())
+                .streamHandler(new ChannelInboundHandlerAdapter())
+                .remoteAddress(server.localAddress())
+                .connect().get();
+    }
+}
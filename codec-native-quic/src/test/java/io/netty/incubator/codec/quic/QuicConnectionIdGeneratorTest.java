@@ -15,6 +15,8 @@
  */
 package io.netty.incubator.codec.quic;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
@@ -23,8 +25,10 @@ import java.util.concurrent.ThreadLocalRandom;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class QuicConnectionIdGeneratorTest extends AbstractQuicTest {
 
@@ -88,4 +92,110 @@ public class QuicConnectionIdGeneratorTest extends AbstractQuicTest {
         assertThrows(IllegalArgumentException.class, () ->
                 idGenerator.newId(ByteBuffer.wrap(input), Integer.MAX_VALUE));
     }
+
+    @Test
+    public void testShardedIdGenerator() {
+        QuicConnectionIdGenerator idGenerator = new ShardedQuicConnectionIdGenerator(
+                QuicConnectionIdGenerator.signGenerator(), 7);
+
+        byte[] input = new byte[1024];
+        ThreadLocalRandom.current().nextBytes(input);
+        ByteBuffer id = idGenerator.newId(ByteBuffer.wrap(input), 10);
+        ByteBuffer id2 = idGenerator.newId(ByteBuffer.wrap(input), 10);
+        assertEquals(10, id.remaining());
+        assertEquals(id, id2);
+        assertEquals(7, ShardedQuicConnectionIdGenerator.shardIndex(Unpooled.wrappedBuffer(id)));
+
+        QuicConnectionIdGenerator randomGenerator = new ShardedQuicConnectionIdGenerator(
+                QuicConnectionIdGenerator.randomGenerator(), 255);
+        ByteBuffer id3 = randomGenerator.newId(Quiche.QUICHE_MAX_CONN_ID_LEN);
+        assertEquals(Quiche.QUICHE_MAX_CONN_ID_LEN, id3.remaining());
+        assertEquals(255, ShardedQuicConnectionIdGenerator.shardIndex(Unpooled.wrappedBuffer(id3)));
+
+        assertThrows(IllegalArgumentException.class, () -> randomGenerator.newId(0));
+        assertThrows(IllegalArgumentException.class, () ->
+                new ShardedQuicConnectionIdGenerator(QuicConnectionIdGenerator.randomGenerator(), 256));
+    }
+
+    @Test
+    public void testShardedIdGeneratorTag() {
+        QuicConnectionIdGenerator idGenerator = new ShardedQuicConnectionIdGenerator(
+                QuicConnectionIdGenerator.randomGenerator(), 7, 42);
+        ByteBuf id = Unpooled.wrappedBuffer(idGenerator.newId(Quiche.QUICHE_MAX_CONN_ID_LEN));
+        assertTrue(ShardedQuicConnectionIdGenerator.hasValidTag(id, 42));
+
+        ByteBuf out = Unpooled.buffer();
+        idGenerator.writeId(out, Quiche.QUICHE_MAX_CONN_ID_LEN);
+        assertTrue(ShardedQuicConnectionIdGenerator.hasValidTag(out, 42));
+
+        // A modified tag must not match.
+        out.setByte(1, out.getByte(1) ^ 1);
+        assertFalse(ShardedQuicConnectionIdGenerator.hasValidTag(out, 42));
+    }
+
+    @Test
+    public void testSignIdGeneratorWriteId() {
+        QuicConnectionIdGenerator idGenerator = QuicConnectionIdGenerator.signGenerator();
+        byte[] input = new byte[1024];
+        ThreadLocalRandom.current().nextBytes(input);
+
+        ByteBuf heapInput = Unpooled.wrappedBuffer(input);
+        ByteBuf directInput = Unpooled.directBuffer(input.length).writeBytes(input);
+        ByteBuf out = Unpooled.directBuffer();
+        try {
+            idGenerator.writeId(heapInput, out, 10);
+            idGenerator.writeId(directInput, out, 10);
+            assertEquals(20, out.readableBytes());
+            // The ids must be the same as the ones created by newId(...) as these are used to lookup connections.
+            ByteBuffer expected = idGenerator.newId(ByteBuffer.wrap(input), 10);
+            assertEquals(Unpooled.wrappedBuffer(expected), out.slice(0, 10));
+            assertEquals(Unpooled.wrappedBuffer(expected), out.slice(10, 10));
+            // The indices of the input must not be modified.
+            assertEquals(input.length, heapInput.readableBytes());
+            assertEquals(input.length, directInput.readableBytes());
+
+            assertThrows(UnsupportedOperationException.class, () -> idGenerator.writeId(out, 10));
+            assertThrows(IllegalArgumentException.class, () -> idGenerator.writeId(Unpooled.EMPTY_BUFFER, out, 10));
+        } finally {
+            heapInput.release();
+            directInput.release();
+            out.release();
+        }
+    }
+
+    @Test
+    public void testRandomIdGeneratorWriteId() {
+        QuicConnectionIdGenerator idGenerator = QuicConnectionIdGenerator.randomGenerator();
+        ByteBuf out = Unpooled.directBuffer();
+        try {
+            idGenerator.writeId(out, 10);
+            idGenerator.writeId(out, 10);
+            assertEquals(20, out.readableBytes());
+            assertNotEquals(out.slice(0, 10), out.slice(10, 10));
+
+            assertThrows(IllegalArgumentException.class, () ->
+                    idGenerator.writeId(out, Quiche.QUICHE_MAX_CONN_ID_LEN + 1));
+        } finally {
+            out.release();
+        }
+    }
+
+    @Test
+    public void testShardedIdGeneratorWriteId() {
+        QuicConnectionIdGenerator idGenerator = new ShardedQuicConnectionIdGenerator(
+                QuicConnectionIdGenerator.signGenerator(), 7);
+        byte[] input = new byte[1024];
+        ThreadLocalRandom.current().nextBytes(input);
+
+        ByteBuf out = Unpooled.directBuffer();
+        try {
+            out.writeByte(0);
+            idGenerator.writeId(Unpooled.wrappedBuffer(input), out, 10);
+            out.skipBytes(1);
+            assertEquals(Unpooled.wrappedBuffer(idGenerator.newId(ByteBuffer.wrap(input), 10)), out);
+            assertEquals(7, ShardedQuicConnectionIdGenerator.shardIndex(out));
+        } finally {
+            out.release();
+        }
+    }
 }
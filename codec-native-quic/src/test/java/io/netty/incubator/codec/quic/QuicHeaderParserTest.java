@@ -0,0 +1,103 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QuicHeaderParserTest extends AbstractQuicTest {
+
+    private static final InetSocketAddress SENDER = new InetSocketAddress(9999);
+    private static final InetSocketAddress RECIPIENT = new InetSocketAddress(8888);
+
+    @Test
+    public void testParseBatchMatchesParse() throws Exception {
+        byte[] dcid = { 1, 2, 3, 4, 5, 6, 7, 8 };
+        byte[] scid = { 9, 10, 11, 12 };
+        byte[] token = { 42, 43, 44 };
+        ByteBuf[] contents = {
+                initialPacket(dcid, scid, token),
+                // Not a valid QUIC packet, must be skipped.
+                Unpooled.directBuffer().writeByte(0xC0),
+                shortPacket(dcid),
+        };
+        InetSocketAddress[] senders = new InetSocketAddress[contents.length];
+        InetSocketAddress[] recipients = new InetSocketAddress[contents.length];
+        Arrays.fill(senders, SENDER);
+        Arrays.fill(recipients, RECIPIENT);
+
+        try (QuicHeaderParser parser = new QuicHeaderParser(128, dcid.length)) {
+            List<String> expected = new ArrayList<>();
+            for (ByteBuf content : contents) {
+                try {
+                    parser.parse(SENDER, RECIPIENT, content, (sender, recipient, packet, type, version,
+                                                              scid1, dcid1, token1) ->
+                            expected.add(describe(type, version, scid1, dcid1, token1)));
+                } catch (QuicException ignore) {
+                    // Expected for the invalid packet.
+                }
+            }
+            assertEquals(2, expected.size());
+
+            List<String> actual = new ArrayList<>();
+            parser.parseBatch(senders, recipients, contents, contents.length, (sender, recipient, packet, type,
+                                                                               version, scid1, dcid1, token1) ->
+                    actual.add(describe(type, version, scid1, dcid1, token1)));
+            assertEquals(expected, actual);
+        } finally {
+            for (ByteBuf content : contents) {
+                content.release();
+            }
+        }
+    }
+
+    private static String describe(QuicPacketType type, int version, ByteBuf scid, ByteBuf dcid, ByteBuf token) {
+        return type + " " + version + " " + ByteBufUtil.hexDump(scid) + " " + ByteBufUtil.hexDump(dcid) + " " +
+                ByteBufUtil.hexDump(token);
+    }
+
+    private static ByteBuf initialPacket(byte[] dcid, byte[] scid, byte[] token) {
+        ByteBuf buffer = Unpooled.directBuffer();
+        // Long header, fixed bit set, type Initial.
+        buffer.writeByte(0xC0);
+        buffer.writeInt(0x0000_0001);
+        buffer.writeByte(dcid.length).writeBytes(dcid);
+        buffer.writeByte(scid.length).writeBytes(scid);
+        // Token length is encoded as variable-length integer, use the 2 byte encoding to also cover this.
+        buffer.writeShort(0x4000 | token.length).writeBytes(token);
+        // Length and some payload.
+        buffer.writeByte(16).writeZero(16);
+        return buffer;
+    }
+
+    private static ByteBuf shortPacket(byte[] dcid) {
+        ByteBuf buffer = Unpooled.directBuffer();
+        // Short header, fixed bit set.
+        buffer.writeByte(0x40);
+        buffer.writeBytes(dcid);
+        buffer.writeZero(16);
+        return buffer;
+    }
+}
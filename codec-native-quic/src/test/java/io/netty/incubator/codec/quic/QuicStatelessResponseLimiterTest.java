@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QuicStatelessResponseLimiterTest {
+
+    private static final InetSocketAddress ADDRESS_1 = new InetSocketAddress("10.0.0.1", 9999);
+    private static final InetSocketAddress ADDRESS_1_SAME_PREFIX = new InetSocketAddress("10.0.0.200", 1234);
+    private static final InetSocketAddress ADDRESS_2 = new InetSocketAddress("192.168.1.1", 9999);
+
+    @Test
+    public void testPrefixBurstAndRefill() {
+        QuicStatelessResponseLimiter limiter = QuicStatelessResponseLimiter.newLimiter(1000, 1000, 10, 2);
+        assertTrue(limiter.tryAcquire(ADDRESS_1, 0));
+        assertTrue(limiter.tryAcquire(ADDRESS_1_SAME_PREFIX, 0));
+        // The burst of the prefix is used up.
+        assertFalse(limiter.tryAcquire(ADDRESS_1, 0));
+        assertFalse(limiter.tryAcquire(ADDRESS_1_SAME_PREFIX, 0));
+
+        // A token is added every 100ms.
+        assertTrue(limiter.tryAcquire(ADDRESS_1, TimeUnit.MILLISECONDS.toNanos(100)));
+        assertFalse(limiter.tryAcquire(ADDRESS_1, TimeUnit.MILLISECONDS.toNanos(100)));
+
+        assertEquals(3, limiter.sent());
+        assertEquals(3, limiter.suppressed());
+    }
+
+    @Test
+    public void testGlobalLimit() {
+        QuicStatelessResponseLimiter limiter = QuicStatelessResponseLimiter.newLimiter(1, 2, 1000, 1000);
+        assertTrue(limiter.tryAcquire(ADDRESS_1, 0));
+        assertTrue(limiter.tryAcquire(ADDRESS_2, 0));
+        assertFalse(limiter.tryAcquire(ADDRESS_2, 0));
+        assertTrue(limiter.tryAcquire(ADDRESS_2, TimeUnit.SECONDS.toNanos(1)));
+
+        assertEquals(3, limiter.sent());
+        assertEquals(1, limiter.suppressed());
+    }
+
+    @Test
+    public void testFloodFromOnePrefixDoesNotUseGlobalBudget() {
+        // Use a fixed seed, so we know both addresses don't share a bucket.
+        QuicStatelessResponseLimiter limiter = new QuicStatelessResponseLimiter(1, 2, 1, 1, 0);
+        assertTrue(limiter.tryAcquire(ADDRESS_1, 0));
+        for (int i = 0; i < 100; i++) {
+            assertFalse(limiter.tryAcquire(ADDRESS_1, 0));
+        }
+        assertTrue(limiter.tryAcquire(ADDRESS_2, 0));
+    }
+
+    @Test
+    public void testGlobalRejectDoesNotUsePrefixBudget() {
+        QuicStatelessResponseLimiter limiter = new QuicStatelessResponseLimiter(2, 1, 1, 1, 0);
+        assertTrue(limiter.tryAcquire(ADDRESS_2, 0));
+        // The global bucket is empty, which must not consume the prefix bucket of ADDRESS_1.
+        assertFalse(limiter.tryAcquire(ADDRESS_1, 0));
+        // The global bucket refills after 500ms while the prefix bucket would need a full second.
+        assertTrue(limiter.tryAcquire(ADDRESS_1, TimeUnit.MILLISECONDS.toNanos(500)));
+
+        assertEquals(2, limiter.sent());
+        assertEquals(1, limiter.suppressed());
+    }
+
+    @Test
+    public void testRelease() {
+        QuicStatelessResponseLimiter limiter = QuicStatelessResponseLimiter.newLimiter(1, 1, 1, 1);
+        assertTrue(limiter.tryAcquire(ADDRESS_1, 0));
+        limiter.release(ADDRESS_1);
+        assertTrue(limiter.tryAcquire(ADDRESS_1, 0));
+        assertFalse(limiter.tryAcquire(ADDRESS_1, 0));
+
+        assertEquals(1, limiter.sent());
+        assertEquals(1, limiter.suppressed());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> QuicStatelessResponseLimiter.newLimiter(0, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> QuicStatelessResponseLimiter.newLimiter(1, 0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> QuicStatelessResponseLimiter.newLimiter(1, 1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> QuicStatelessResponseLimiter.newLimiter(1, 1, 1, 0));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QuicStreamCallbackTest extends AbstractQuicTest {
+
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testEchoViaCallback(Executor executor) throws Throwable {
+        QuicStreamCallback echo = new QuicStreamCallback() {
+            @Override
+            public void streamRead(QuicChannel channel, long streamId, ByteBuf data, boolean fin) {
+                try {
+                    channel.writeStream(streamId, data, fin);
+                } catch (Exception e) {
+                    channel.resetStream(streamId, 0);
+                } finally {
+                    data.release();
+                }
+            }
+        };
+        Channel server = QuicTestUtils.newServer(executor, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void handlerAdded(ChannelHandlerContext ctx) {
+                ((QuicChannel) ctx.channel()).streamCallback(echo);
+            }
+        }, new ChannelInboundHandlerAdapter());
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        try {
+            Promise<String> received = ImmediateEventExecutor.INSTANCE.newPromise();
+            QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new ChannelInboundHandlerAdapter())
+                    .remoteAddress(address)
+                    .connect()
+                    .get();
+            QuicStreamChannel stream = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL,
+                    new ChannelInboundHandlerAdapter() {
+                        private final StringBuilder sb = new StringBuilder();
+
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            ByteBuf buffer = (ByteBuf) msg;
+                            sb.append(buffer.toString(CharsetUtil.US_ASCII));
+                            buffer.release();
+                        }
+
+                        @Override
+                        public void channelInactive(ChannelHandlerContext ctx) {
+                            received.trySuccess(sb.toString());
+                        }
+                    }).sync().getNow();
+            stream.writeAndFlush(Unpooled.copiedBuffer("netty", CharsetUtil.US_ASCII));
+            stream.shutdownOutput().sync();
+
+            assertEquals("netty", received.get());
+            quicChannel.close().sync();
+        } finally {
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testWriteContinuesWhenWritable(Executor executor) throws Throwable {
+        int size = 4 * 1024 * 1024;
+        // Respond with more data than the flow control of the client allows, so writeStream(...) runs out of capacity
+        // and we depend on streamWritable(...) to finish the response.
+        QuicStreamCallback responder = new QuicStreamCallback() {
+            private final Map<Long, ByteBuf> pending = new HashMap<>();
+
+            @Override
+            public void streamRead(QuicChannel channel, long streamId, ByteBuf data, boolean fin) {
+                data.release();
+                if (fin) {
+                    pending.put(streamId, Unpooled.directBuffer(size).writeZero(size));
+                    write(channel, streamId);
+                }
+            }
+
+            @Override
+            public void streamWritable(QuicChannel channel, long streamId) {
+                write(channel, streamId);
+            }
+
+            @Override
+            public void streamError(QuicChannel channel, long streamId, Throwable cause) {
+                ByteBuf buffer = pending.remove(streamId);
+                if (buffer != null) {
+                    buffer.release();
+                }
+            }
+
+            private void write(QuicChannel channel, long streamId) {
+                ByteBuf buffer = pending.get(streamId);
+                try {
+                    channel.writeStream(streamId, buffer, true);
+                } catch (Exception e) {
+                    buffer.clear();
+                    channel.resetStream(streamId, 0);
+                }
+                if (!buffer.isReadable()) {
+                    pending.remove(streamId).release();
+                }
+            }
+        };
+        Channel server = QuicTestUtils.newServer(executor, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void handlerAdded(ChannelHandlerContext ctx) {
+                ((QuicChannel) ctx.channel()).streamCallback(responder);
+            }
+        }, new ChannelInboundHandlerAdapter());
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        try {
+            Promise<Long> received = ImmediateEventExecutor.INSTANCE.newPromise();
+            QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new ChannelInboundHandlerAdapter())
+                    .remoteAddress(address)
+                    .connect()
+                    .get();
+            QuicStreamChannel stream = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL,
+                    new ChannelInboundHandlerAdapter() {
+                        private long bytes;
+
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            ByteBuf buffer = (ByteBuf) msg;
+                            bytes += buffer.readableBytes();
+                            buffer.release();
+                        }
+
+                        @Override
+                        public void channelInactive(ChannelHandlerContext ctx) {
+                            received.trySuccess(bytes);
+                        }
+                    }).sync().getNow();
+            stream.writeAndFlush(Unpooled.copiedBuffer("netty", CharsetUtil.US_ASCII));
+            stream.shutdownOutput().sync();
+
+            assertEquals(size, (long) received.get());
+            quicChannel.close().sync();
+        } finally {
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+    }
+}
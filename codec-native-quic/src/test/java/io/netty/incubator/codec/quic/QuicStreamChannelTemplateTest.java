@@ -0,0 +1,247 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.socket.ChannelInputShutdownReadComplete;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QuicStreamChannelTemplateTest extends AbstractQuicTest {
+
+    private static final AttributeKey<String> ATTRIBUTE_KEY = AttributeKey.newInstance("templateTestKey");
+
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testCompiledOptionsBehaveLikeSetOption(Executor executor) throws Throwable {
+        ByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+        RecvByteBufAllocator recvAllocator = new FixedRecvByteBufAllocator(1024);
+        WriteBufferWaterMark waterMark = new WriteBufferWaterMark(1024, 2048);
+        QuicServerCodecBuilder builder = QuicTestUtils.newQuicServerBuilder(executor)
+                .streamOption(ChannelOption.ALLOCATOR, allocator)
+                .streamOption(ChannelOption.RCVBUF_ALLOCATOR, recvAllocator)
+                .streamOption(ChannelOption.AUTO_READ, Boolean.FALSE)
+                .streamOption(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark)
+                .streamOption(QuicChannelOption.READ_FRAMES, Boolean.TRUE);
+        BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        Channel server = QuicTestUtils.newServer(builder, InsecureQuicTokenHandler.INSTANCE, null,
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRegistered(ChannelHandlerContext ctx) {
+                        try {
+                            // Apply the same options via setOption(...) and compare the outcome.
+                            QuicheQuicStreamChannelConfig expected =
+                                    new QuicheQuicStreamChannelConfig((QuicStreamChannel) ctx.channel());
+                            expected.setOption(ChannelOption.ALLOCATOR, allocator);
+                            expected.setOption(ChannelOption.RCVBUF_ALLOCATOR, recvAllocator);
+                            expected.setOption(ChannelOption.AUTO_READ, Boolean.FALSE);
+                            expected.setOption(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark);
+                            expected.setOption(QuicChannelOption.READ_FRAMES, Boolean.TRUE);
+
+                            QuicheQuicStreamChannelConfig actual =
+                                    (QuicheQuicStreamChannelConfig) ctx.channel().config();
+                            assertSame(expected.getAllocator(), actual.getAllocator());
+                            assertSame(allocator, actual.getAllocator());
+                            assertSame(expected.getRecvByteBufAllocator(), actual.getRecvByteBufAllocator());
+                            assertEquals(expected.isAutoRead(), actual.isAutoRead());
+                            assertFalse(actual.isAutoRead());
+                            assertSame(expected.getWriteBufferWaterMark(), actual.getWriteBufferWaterMark());
+                            assertEquals(expected.isReadFrames(), actual.isReadFrames());
+                            assertTrue(actual.isReadFrames());
+                            results.add(Boolean.TRUE);
+                        } catch (Throwable cause) {
+                            results.add(cause);
+                        }
+                        ctx.close();
+                    }
+                });
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        try {
+            QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new ChannelInboundHandlerAdapter())
+                    .remoteAddress(address)
+                    .connect()
+                    .get();
+            QuicStreamChannel stream = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL,
+                    new ChannelInboundHandlerAdapter()).sync().get();
+            stream.writeAndFlush(Unpooled.directBuffer().writeZero(8)).sync();
+
+            Object result = results.take();
+            if (result instanceof Throwable) {
+                throw (Throwable) result;
+            }
+            stream.close().sync();
+            quicChannel.close().sync();
+        } finally {
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testInvalidOptionValueIsLogged(Executor executor) throws Throwable {
+        TestLogBackAppender.clearLogs();
+        // The value can not be cast to the type of the option, so it falls back to setOption(...) which fails.
+        QuicServerCodecBuilder builder = QuicTestUtils.newQuicServerBuilder(executor)
+                .streamOption((ChannelOption) ChannelOption.AUTO_READ, "invalid");
+        CountDownLatch latch = new CountDownLatch(1);
+        Channel server = QuicTestUtils.newServer(builder, InsecureQuicTokenHandler.INSTANCE, null,
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRegistered(ChannelHandlerContext ctx) {
+                        latch.countDown();
+                        ctx.close();
+                    }
+                });
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        try {
+            QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new ChannelInboundHandlerAdapter())
+                    .remoteAddress(address)
+                    .connect()
+                    .get();
+            QuicStreamChannel stream = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL,
+                    new ChannelInboundHandlerAdapter()).sync().get();
+            stream.writeAndFlush(Unpooled.directBuffer().writeZero(8)).sync();
+            latch.await();
+
+            assertTrue(TestLogBackAppender.getLogs().stream().anyMatch(log ->
+                    log.startsWith("Failed to set channel option 'AUTO_READ' with value 'invalid'")));
+            stream.close().sync();
+            quicChannel.close().sync();
+        } finally {
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testClosedStreamChannelIsReused(Executor executor) throws Throwable {
+        QuicServerCodecBuilder builder = QuicTestUtils.newQuicServerBuilder(executor)
+                .option(QuicChannelOption.STREAM_CHANNEL_POOL_SIZE, 1);
+        List<QuicStreamChannel> serverStreams = new CopyOnWriteArrayList<>();
+        BlockingQueue<Object> unregistered = new LinkedBlockingQueue<>();
+        Channel server = QuicTestUtils.newServer(builder, InsecureQuicTokenHandler.INSTANCE, null,
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public boolean isSharable() {
+                        return true;
+                    }
+
+                    @Override
+                    public void channelActive(ChannelHandlerContext ctx) {
+                        QuicStreamChannel stream = (QuicStreamChannel) ctx.channel();
+                        serverStreams.add(stream);
+                        // Nothing of the previous stream must be left over.
+                        if (stream.attr(ATTRIBUTE_KEY).get() != null) {
+                            unregistered.add(new AssertionError("attribute of the previous stream"));
+                        }
+                        stream.attr(ATTRIBUTE_KEY).set("stream " + stream.streamId());
+                    }
+
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        ReferenceCountUtil.release(msg);
+                    }
+
+                    @Override
+                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                        if (evt == ChannelInputShutdownReadComplete.INSTANCE) {
+                            ctx.close();
+                        }
+                    }
+
+                    @Override
+                    public void channelUnregistered(ChannelHandlerContext ctx) {
+                        unregistered.add(ctx.channel());
+                    }
+                });
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        try {
+            QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new ChannelInboundHandlerAdapter())
+                    .remoteAddress(address)
+                    .connect()
+                    .get();
+            for (int i = 0; i < 2; i++) {
+                QuicStreamChannel stream = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL,
+                        new ChannelInboundHandlerAdapter()).sync().get();
+                stream.writeAndFlush(Unpooled.directBuffer().writeZero(8))
+                        .addListener(QuicStreamChannel.SHUTDOWN_OUTPUT).sync();
+                Object result = unregistered.take();
+                if (result instanceof Throwable) {
+                    throw (Throwable) result;
+                }
+                stream.close().sync();
+            }
+
+            assertEquals(2, serverStreams.size());
+            QuicStreamChannel first = serverStreams.get(0);
+            assertSame(first, serverStreams.get(1));
+            // The reused channel represented the second stream.
+            assertEquals(4, first.streamId());
+            assertEquals("stream 4", first.attr(ATTRIBUTE_KEY).get());
+            assertTrue(first.closeFuture().isDone());
+
+            quicChannel.close().sync();
+        } finally {
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.ChannelInputShutdownReadComplete;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.ImmediateExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class QuicStreamHeapWriteTest extends AbstractQuicTest {
+
+    // Bigger than the number of bytes that are passed to quiche_conn_stream_send_array(...) at once.
+    private static final int DATA_SIZE = 200 * 1024;
+
+    @Test
+    public void testHeapBuffer() throws Throwable {
+        testWrite(data -> Unpooled.buffer(data.length).writeBytes(data), false);
+    }
+
+    @Test
+    public void testFrameWithHeapContent() throws Throwable {
+        testWrite(data -> new DefaultQuicStreamFrame(Unpooled.buffer(data.length).writeBytes(data), true), true);
+    }
+
+    @Test
+    public void testHeapBufferWithArrayOffsetAndReaderIndex() throws Throwable {
+        testWrite(data -> {
+            byte[] array = new byte[data.length + 16];
+            System.arraycopy(data, 0, array, 10, data.length);
+            ByteBuf buffer = Unpooled.wrappedBuffer(array, 7, data.length + 3).skipBytes(3);
+            assertNotEquals(0, buffer.arrayOffset());
+            assertNotEquals(0, buffer.readerIndex());
+            return buffer;
+        }, false);
+    }
+
+    @Test
+    public void testCompositeOfHeapBuffers() throws Throwable {
+        testWrite(data -> {
+            int third = data.length / 3;
+            return Unpooled.wrappedBuffer(
+                    Unpooled.wrappedBuffer(Arrays.copyOfRange(data, 0, third)),
+                    Unpooled.wrappedBuffer(Arrays.copyOfRange(data, third, 2 * third)),
+                    Unpooled.wrappedBuffer(Arrays.copyOfRange(data, 2 * third, data.length)));
+        }, false);
+    }
+
+    private static void testWrite(Function<byte[], Object> messageFactory, boolean hasFin) throws Throwable {
+        byte[] data = new byte[DATA_SIZE];
+        new Random(42).nextBytes(data);
+        Promise<byte[]> received = ImmediateEventExecutor.INSTANCE.newPromise();
+        Channel server = QuicTestUtils.newServer(ImmediateExecutor.INSTANCE, new ChannelInboundHandlerAdapter(),
+                new ChannelInitializer<QuicStreamChannel>() {
+                    @Override
+                    protected void initChannel(QuicStreamChannel ch) {
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                            private final ByteBuf cumulation = Unpooled.buffer();
+
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                ByteBuf buffer = (ByteBuf) msg;
+                                cumulation.writeBytes(buffer);
+                                buffer.release();
+                            }
+
+                            @Override
+                            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                                if (evt == ChannelInputShutdownReadComplete.INSTANCE) {
+                                    received.trySuccess(ByteBufUtil.getBytes(cumulation));
+                                    ctx.close();
+                                }
+                            }
+
+                            @Override
+                            public void handlerRemoved(ChannelHandlerContext ctx) {
+                                cumulation.release();
+                            }
+                        });
+                    }
+                });
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(ImmediateExecutor.INSTANCE);
+        try {
+            QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new ChannelInboundHandlerAdapter())
+                    .remoteAddress(address)
+                    .connect()
+                    .get();
+            QuicStreamChannel stream = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL,
+                    new ChannelInboundHandlerAdapter()).sync().getNow();
+            stream.writeAndFlush(messageFactory.apply(data)).sync();
+            if (!hasFin) {
+                stream.shutdownOutput().sync();
+            }
+
+            assertArrayEquals(data, received.get());
+            quicChannel.close().sync();
+        } finally {
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+        }
+    }
+}
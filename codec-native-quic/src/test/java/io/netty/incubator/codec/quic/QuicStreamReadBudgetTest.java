@@ -0,0 +1,255 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.socket.ChannelInputShutdownReadComplete;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QuicStreamReadBudgetTest extends AbstractQuicTest {
+
+    private static final int DATA_SIZE = 64 * 1024;
+    private static final int READ_BUDGET = 1024;
+    private static final int SMALL_SIZE = 3 * 1024;
+    // The first two bidirectional streams that are opened by the client.
+    private static final long SMALL_STREAM_ID = 0;
+    private static final long BULK_STREAM_ID = 4;
+
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testStreamReadContinuesAfterBudgetIsUsed(Executor executor) throws Throwable {
+        Channel server = QuicTestUtils.newServer(
+                QuicTestUtils.newQuicServerBuilder(executor).option(QuicChannelOption.STREAM_READ_BUDGET, 1024),
+                InsecureQuicTokenHandler.INSTANCE,
+                new ChannelInboundHandlerAdapter(), new ChannelInboundHandlerAdapter() {
+                    private long bytes;
+
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        ByteBuf buffer = (ByteBuf) msg;
+                        bytes += buffer.readableBytes();
+                        buffer.release();
+                    }
+
+                    @Override
+                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                        if (evt == ChannelInputShutdownReadComplete.INSTANCE) {
+                            // Echo back the number of bytes we received.
+                            ctx.writeAndFlush(Unpooled.buffer().writeLong(bytes))
+                                    .addListener(ChannelFutureListener.CLOSE);
+                        }
+                    }
+                });
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        try {
+            Promise<Long> received = ImmediateEventExecutor.INSTANCE.newPromise();
+            QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new ChannelInboundHandlerAdapter())
+                    .remoteAddress(address)
+                    .connect()
+                    .get();
+            QuicStreamChannel stream = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL,
+                    new ChannelInboundHandlerAdapter() {
+                        private final ByteBuf cumulation = Unpooled.buffer();
+
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            ByteBuf buffer = (ByteBuf) msg;
+                            cumulation.writeBytes(buffer);
+                            buffer.release();
+                            if (cumulation.readableBytes() >= Long.BYTES) {
+                                received.trySuccess(cumulation.readLong());
+                            }
+                        }
+
+                        @Override
+                        public void handlerRemoved(ChannelHandlerContext ctx) {
+                            cumulation.release();
+                        }
+                    }).sync().getNow();
+            stream.writeAndFlush(Unpooled.wrappedBuffer(new byte[DATA_SIZE]));
+            stream.shutdownOutput().sync();
+
+            assertEquals(DATA_SIZE, (long) received.get());
+            quicChannel.close().sync();
+        } finally {
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testStreamsAreReadFairlyAndByUrgency(Executor executor) throws Throwable {
+        // Every turn of a stream, which ends with a channelReadComplete(), together with the event loop task it was
+        // part of. Only accessed from the EventLoop of the server.
+        List<long[]> turns = new ArrayList<>();
+        List<Long> finished = new ArrayList<>();
+        Promise<Void> done = ImmediateEventExecutor.INSTANCE.newPromise();
+        Channel server = QuicTestUtils.newServer(
+                QuicTestUtils.newQuicServerBuilder(executor)
+                        .option(QuicChannelOption.STREAM_READ_BUDGET, READ_BUDGET)
+                        .streamOption(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(256)),
+                InsecureQuicTokenHandler.INSTANCE,
+                new ChannelInboundHandlerAdapter(), new ChannelInitializer<QuicStreamChannel>() {
+                    private long task;
+                    private boolean taskMarked;
+
+                    @Override
+                    protected void initChannel(QuicStreamChannel ch) {
+                        // The bulk stream is more urgent, the small stream must still get its turn.
+                        ch.updatePriority(new QuicStreamPriority(ch.streamId() == BULK_STREAM_ID ? 0 : 7, false));
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                            private long bytes;
+
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                ByteBuf buffer = (ByteBuf) msg;
+                                bytes += buffer.readableBytes();
+                                buffer.release();
+                            }
+
+                            @Override
+                            public void channelReadComplete(ChannelHandlerContext ctx) {
+                                if (!taskMarked) {
+                                    // Everything that is read before this task runs belongs to the same task.
+                                    taskMarked = true;
+                                    ctx.channel().eventLoop().execute(() -> {
+                                        taskMarked = false;
+                                        task++;
+                                    });
+                                }
+                                turns.add(new long[] { ch.streamId(), bytes, task });
+                                bytes = 0;
+                            }
+
+                            @Override
+                            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                                if (evt == ChannelInputShutdownReadComplete.INSTANCE) {
+                                    finished.add(ch.streamId());
+                                    if (finished.size() == 2) {
+                                        done.setSuccess(null);
+                                    }
+                                    ctx.close();
+                                }
+                            }
+                        });
+                    }
+                });
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        try {
+            QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new ChannelInboundHandlerAdapter())
+                    .remoteAddress(address)
+                    .connect()
+                    .get();
+
+            // Block the server while we write, so the data of both streams is received at the same time.
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch unblock = new CountDownLatch(1);
+            server.eventLoop().execute(() -> {
+                blocked.countDown();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            blocked.await();
+            try {
+                QuicStreamChannel small = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL,
+                        new ChannelInboundHandlerAdapter()).sync().getNow();
+                QuicStreamChannel bulk = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL,
+                        new ChannelInboundHandlerAdapter()).sync().getNow();
+                assertEquals(SMALL_STREAM_ID, small.streamId());
+                assertEquals(BULK_STREAM_ID, bulk.streamId());
+                small.writeAndFlush(Unpooled.wrappedBuffer(new byte[SMALL_SIZE]))
+                        .addListener(QuicStreamChannel.SHUTDOWN_OUTPUT);
+                bulk.writeAndFlush(Unpooled.wrappedBuffer(new byte[DATA_SIZE]))
+                        .addListener(QuicStreamChannel.SHUTDOWN_OUTPUT).sync();
+                Thread.sleep(100);
+            } finally {
+                unblock.countDown();
+            }
+            done.sync();
+
+            // The small stream is not starved by the more urgent bulk stream.
+            assertEquals(SMALL_STREAM_ID, (long) finished.get(0));
+            for (long[] turn : turns) {
+                assertTrue(turn[1] <= READ_BUDGET, "stream " + turn[0] + " read " + turn[1] + " bytes in one turn");
+            }
+
+            // Whenever both streams got their turn in the same round, the more urgent one was read first. The first
+            // turn of each stream is excluded as new streams are read directly when they are accepted.
+            boolean sharedRound = false;
+            for (int i = 1; i < turns.size(); i++) {
+                long[] previous = turns.get(i - 1);
+                long[] turn = turns.get(i);
+                if (previous[2] == turn[2] && previous[0] != turn[0] &&
+                        !isFirstTurn(turns, i - 1) && !isFirstTurn(turns, i)) {
+                    sharedRound = true;
+                    assertEquals(BULK_STREAM_ID, previous[0]);
+                }
+            }
+            assertTrue(sharedRound);
+
+            quicChannel.close().sync();
+        } finally {
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+    }
+
+    private static boolean isFirstTurn(List<long[]> turns, int index) {
+        long streamId = turns.get(index)[0];
+        for (int i = 0; i < index; i++) {
+            if (turns.get(i)[0] == streamId) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.ChannelInputShutdownReadComplete;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QuicStreamVectoredWriteTest extends AbstractQuicTest {
+
+    private static final int COMPONENT_SIZE = 16 * 1024;
+    private static final int COMPONENTS = 16;
+
+    @ParameterizedTest
+    @MethodSource("newSslTaskExecutors")
+    public void testWriteCompositeBuffer(Executor executor) throws Throwable {
+        Channel server = QuicTestUtils.newServer(
+                QuicTestUtils.newQuicServerBuilder(executor),
+                InsecureQuicTokenHandler.INSTANCE,
+                new ChannelInboundHandlerAdapter(), new ChannelInboundHandlerAdapter() {
+                    private long bytes;
+
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        ByteBuf buffer = (ByteBuf) msg;
+                        bytes += buffer.readableBytes();
+                        buffer.release();
+                    }
+
+                    @Override
+                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                        if (evt == ChannelInputShutdownReadComplete.INSTANCE) {
+                            // Echo back the number of bytes we received.
+                            ctx.writeAndFlush(Unpooled.buffer().writeLong(bytes))
+                                    .addListener(ChannelFutureListener.CLOSE);
+                        }
+                    }
+                });
+        InetSocketAddress address = (InetSocketAddress) server.localAddress();
+        Channel channel = QuicTestUtils.newClient(executor);
+        try {
+            Promise<Long> received = ImmediateEventExecutor.INSTANCE.newPromise();
+            QuicChannel quicChannel = QuicChannel.newBootstrap(channel)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .streamHandler(new ChannelInboundHandlerAdapter())
+                    .remoteAddress(address)
+                    .connect()
+                    .get();
+            QuicStreamChannel stream = quicChannel.createStream(QuicStreamType.BIDIRECTIONAL,
+                    new ChannelInboundHandlerAdapter() {
+                        private final ByteBuf cumulation = Unpooled.buffer();
+
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            ByteBuf buffer = (ByteBuf) msg;
+                            cumulation.writeBytes(buffer);
+                            buffer.release();
+                            if (cumulation.readableBytes() >= Long.BYTES) {
+                                received.trySuccess(cumulation.readLong());
+                            }
+                        }
+
+                        @Override
+                        public void handlerRemoved(ChannelHandlerContext ctx) {
+                            cumulation.release();
+                        }
+                    }).sync().getNow();
+            // All components are written with one native call as long as there is enough capacity.
+            CompositeByteBuf composite = Unpooled.compositeBuffer(COMPONENTS);
+            for (int i = 0; i < COMPONENTS; i++) {
+                composite.addComponent(true, Unpooled.directBuffer(COMPONENT_SIZE).writeZero(COMPONENT_SIZE));
+            }
+            stream.writeAndFlush(new DefaultQuicStreamFrame(composite, true)).sync();
+
+            assertEquals(COMPONENT_SIZE * COMPONENTS, (long) received.get());
+            quicChannel.close().sync();
+        } finally {
+            server.close().sync();
+            // Close the parent Datagram channel as well.
+            channel.close().sync();
+
+            shutdown(executor);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.UnpooledHeapByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.unix.SegmentedDatagramPacket;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class QuicheQuicCodecIngressTest extends AbstractQuicTest {
+
+    private static final InetSocketAddress RECIPIENT = new InetSocketAddress(8888);
+    private static final InetSocketAddress SENDER = new InetSocketAddress(9999);
+    private static final int SEGMENT_SIZE = 100;
+
+    @Test
+    public void testHeapSegmentedDatagramPacketLargerThanBatch() {
+        List<int[]> received = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new RecordingCodecBuilder(received, -1).build());
+
+        // Each datagram contains more segments than fit in one batch, so the batch is processed while we are still
+        // splitting it and the remaining segments must not be overwritten by the next copy.
+        int segments = QuicHeaderParser.MAX_BATCH_SIZE + 36;
+        DatagramPacket first = new SegmentedDatagramPacket(
+                newSegments(Unpooled.buffer(), 0, segments), SEGMENT_SIZE, RECIPIENT, SENDER);
+        DatagramPacket second = new SegmentedDatagramPacket(
+                newSegments(Unpooled.buffer(), segments, segments), SEGMENT_SIZE, RECIPIENT, SENDER);
+        assertFalse(channel.writeInbound(first, second));
+
+        assertEquals(segments * 2, received.size());
+        for (int i = 0; i < received.size(); i++) {
+            assertEquals(i, received.get(i)[0]);
+        }
+        assertEquals(0, first.refCnt());
+        assertEquals(0, second.refCnt());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testSegmentedDatagramPacketIsSplitIntoSlices() {
+        List<int[]> received = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new RecordingCodecBuilder(received, -1).build());
+
+        // A direct buffer as produced by UDP_GRO, the last segment is shorter than the segment size.
+        int lastSegmentSize = 40;
+        ByteBuf content = newSegments(Unpooled.directBuffer(), 0, 3);
+        writeSegment(content, 3, lastSegmentSize);
+        // Start at a non-zero readerIndex to ensure the segments are based on the readable bytes.
+        ByteBuf buffer = Unpooled.directBuffer().writeZero(7).writeBytes(content).skipBytes(7);
+        content.release();
+        DatagramPacket packet = new SegmentedDatagramPacket(buffer, SEGMENT_SIZE, RECIPIENT, SENDER);
+        assertFalse(channel.writeInbound(packet));
+
+        assertEquals(4, received.size());
+        for (int i = 0; i < received.size(); i++) {
+            int[] segment = received.get(i);
+            assertEquals(i, segment[0]);
+            assertEquals(i == 3 ? lastSegmentSize : SEGMENT_SIZE, segment[1]);
+            // Each segment is a retained slice of the received buffer and no copy, so the buffer is alive until the
+            // whole batch was processed.
+            assertEquals(4, segment[2]);
+        }
+        assertEquals(0, packet.refCnt());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testHeapSegmentedDatagramPacketIsSplitBeforeContentIsReleased() {
+        List<int[]> received = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new RecordingCodecBuilder(received, -1).build());
+
+        // Simulate a pooled buffer that is reused as soon as it was released, so its indices are reset.
+        ByteBuf content = new UnpooledHeapByteBuf(UnpooledByteBufAllocator.DEFAULT, 4 * SEGMENT_SIZE,
+                4 * SEGMENT_SIZE) {
+            @Override
+            protected void deallocate() {
+                super.deallocate();
+                setIndex(0, 0);
+            }
+        };
+        newSegments(content, 0, 4);
+        DatagramPacket packet = new SegmentedDatagramPacket(content, SEGMENT_SIZE, RECIPIENT, SENDER);
+        assertFalse(channel.writeInbound(packet));
+
+        assertEquals(4, received.size());
+        for (int i = 0; i < received.size(); i++) {
+            assertEquals(i, received.get(i)[0]);
+            assertEquals(SEGMENT_SIZE, received.get(i)[1]);
+        }
+        assertEquals(0, content.refCnt());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testRemovedWhileProcessingBatch() {
+        List<int[]> received = new ArrayList<>();
+        // Remove the codec from within the callback of the second packet, the rest of the batch must be dropped and
+        // released without touching the already freed parser.
+        EmbeddedChannel channel = new EmbeddedChannel(new RecordingCodecBuilder(received, 1).build());
+        List<DatagramPacket> packets = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            packets.add(new DatagramPacket(newSegments(Unpooled.directBuffer(), i, 1), RECIPIENT, SENDER));
+        }
+        assertFalse(channel.writeInbound(packets.toArray()));
+
+        assertEquals(2, received.size());
+        assertEquals(0, received.get(0)[0]);
+        assertEquals(1, received.get(1)[0]);
+        for (DatagramPacket packet : packets) {
+            assertEquals(0, packet.refCnt());
+        }
+        assertFalse(channel.finish());
+    }
+
+    // Writes segments that look like short header packets whose destination connection id starts with the index of
+    // the segment.
+    private static ByteBuf newSegments(ByteBuf buffer, int firstIndex, int segments) {
+        for (int i = 0; i < segments; i++) {
+            writeSegment(buffer, firstIndex + i, SEGMENT_SIZE);
+        }
+        return buffer;
+    }
+
+    private static void writeSegment(ByteBuf buffer, int index, int size) {
+        int start = buffer.writerIndex();
+        buffer.writeByte(0x40);
+        buffer.writeInt(index);
+        buffer.writeZero(size - (buffer.writerIndex() - start));
+    }
+
+    private static final class RecordingCodecBuilder extends QuicCodecBuilder<RecordingCodecBuilder> {
+        private final List<int[]> received;
+        private final int removeAt;
+
+        RecordingCodecBuilder(List<int[]> received, int removeAt) {
+            super(false);
+            this.received = received;
+            this.removeAt = removeAt;
+        }
+
+        @Override
+        protected void validate() {
+            // No SSL needed as we never create a connection.
+        }
+
+        @Override
+        public RecordingCodecBuilder clone() {
+            return new RecordingCodecBuilder(received, removeAt);
+        }
+
+        @Override
+        protected ChannelHandler build(QuicheConfig config,
+                                       Function<QuicChannel, ? extends QuicSslEngine> sslContextProvider,
+                                       Executor sslTaskExecutor, int localConnIdLength, FlushStrategy flushStrategy) {
+            return new QuicheQuicCodec(config, localConnIdLength, Quic.MAX_DATAGRAM_SIZE, flushStrategy) {
+                @Override
+                protected QuicheQuicChannel quicPacketRead(ChannelHandlerContext ctx, InetSocketAddress sender,
+                                                           InetSocketAddress recipient, ByteBuf packet,
+                                                           QuicPacketType type, int version, ByteBuf scid,
+                                                           ByteBuf dcid, ByteBuf token) {
+                    received.add(new int[] { dcid.getInt(dcid.readerIndex()), packet.readableBytes(),
+                            packet.refCnt() });
+                    if (received.size() - 1 == removeAt) {
+                        ctx.pipeline().remove(this);
+                    }
+                    return null;
+                }
+            };
+        }
+    }
+}
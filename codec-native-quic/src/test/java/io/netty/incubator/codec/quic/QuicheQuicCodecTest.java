@@ -15,6 +15,7 @@
  */
 package io.netty.incubator.codec.quic;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
@@ -24,11 +25,15 @@ import io.netty.channel.socket.DatagramPacket;
 import org.junit.jupiter.api.Test;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public abstract class QuicheQuicCodecTest<B extends QuicCodecBuilder<B>> extends AbstractQuicTest {
@@ -108,4 +113,78 @@ public abstract class QuicheQuicCodecTest<B extends QuicCodecBuilder<B>> extends
         assertTrue(future.isDone());
         assertFalse(future.isSuccess());
     }
+
+    @Test
+    public void testFlushStrategyWithDelay() throws Exception {
+        final AtomicInteger flushCount = new AtomicInteger();
+        B builder = newCodecBuilder();
+        builder.flushStrategy(FlushStrategy.afterNumBytesOrDelay(1024, 10, TimeUnit.MILLISECONDS));
+
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void flush(ChannelHandlerContext ctx) throws Exception {
+                flushCount.incrementAndGet();
+                super.flush(ctx);
+            }
+        }, builder.build());
+
+        channel.write(new DatagramPacket(Unpooled.buffer().writeZero(8), new InetSocketAddress(0)));
+        channel.write(new DatagramPacket(Unpooled.buffer().writeZero(8), new InetSocketAddress(0)));
+        assertEquals(0, flushCount.get());
+        assertNull(channel.readOutbound());
+
+        // Once the delay elapsed the packets should be flushed even if we did not reach the number of bytes.
+        Thread.sleep(20);
+        channel.runScheduledPendingTasks();
+        assertEquals(1, flushCount.get());
+        for (int i = 0; i < 2; i++) {
+            DatagramPacket packet = channel.readOutbound();
+            assertNotNull(packet);
+            packet.release();
+        }
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testFlushWithoutPendingTasksIsNotDeferred() {
+        final AtomicInteger flushCount = new AtomicInteger();
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void flush(ChannelHandlerContext ctx) throws Exception {
+                flushCount.incrementAndGet();
+                super.flush(ctx);
+            }
+        }, newCodecBuilder().build());
+
+        channel.write(new DatagramPacket(Unpooled.buffer().writeZero(8), new InetSocketAddress(0)));
+        // There is nothing else queued on the EventLoop that could add packets, so the flush must happen right
+        // away and not only once the pending tasks are run.
+        channel.flush();
+        assertEquals(1, flushCount.get());
+        DatagramPacket packet = channel.readOutbound();
+        assertNotNull(packet);
+        packet.release();
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testReceivedHeapAndReadOnlyBuffersAreReleased() {
+        EmbeddedChannel channel = new EmbeddedChannel(newCodecBuilder().build());
+        List<DatagramPacket> packets = new ArrayList<>();
+        // Use more packets than fit in one batch so the scratch buffer needs to be reused.
+        for (int i = 0; i < 200; i++) {
+            ByteBuf content = Unpooled.buffer().writeZero(1200);
+            if (i % 2 == 0) {
+                content = content.asReadOnly();
+            }
+            DatagramPacket packet = new DatagramPacket(content, new InetSocketAddress(0), new InetSocketAddress(0));
+            packets.add(packet);
+            // These are not valid QUIC packets and so will just be dropped.
+            assertFalse(channel.writeInbound(packet));
+        }
+        for (DatagramPacket packet : packets) {
+            assertEquals(0, packet.refCnt());
+        }
+        assertFalse(channel.finish());
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.concurrent.ImmediateExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class QuicheQuicServerShardsTest extends AbstractQuicTest {
+
+    private static final InetSocketAddress RECIPIENT = new InetSocketAddress(8888);
+    private static final InetSocketAddress SENDER = new InetSocketAddress(9999);
+
+    @Test
+    public void testPacketIsForwardedToOwningShard() {
+        List<ChannelHandler> handlers = newShards();
+        EmbeddedChannel shardA = new EmbeddedChannel(handlers.get(0));
+        EmbeddedChannel shardB = new EmbeddedChannel(handlers.get(1));
+        QuicheQuicServerShards shards = ((QuicheQuicServerCodec) handlers.get(0)).shards();
+        try {
+            // The connection is unknown to both shards, so the shard that processes the packet will answer it.
+            DatagramPacket packet = newPacket(new ShardedQuicConnectionIdGenerator(
+                    QuicConnectionIdGenerator.randomGenerator(), 1, shards.connectionIdSeed()));
+            assertFalse(shardA.writeInbound(packet));
+            assertEquals(0, packet.refCnt());
+            assertNull(shardA.readOutbound());
+
+            shardB.runPendingTasks();
+            DatagramPacket response = shardB.readOutbound();
+            assertNotNull(response);
+            assertEquals(SENDER, response.recipient());
+            response.release();
+        } finally {
+            assertFalse(shardA.finish());
+            assertFalse(shardB.finish());
+        }
+    }
+
+    @Test
+    public void testPacketWithSpoofedIdIsNotForwarded() {
+        List<ChannelHandler> handlers = newShards();
+        EmbeddedChannel shardA = new EmbeddedChannel(handlers.get(0));
+        EmbeddedChannel shardB = new EmbeddedChannel(handlers.get(1));
+        QuicheQuicServerShards shards = ((QuicheQuicServerCodec) handlers.get(0)).shards();
+        try {
+            // The id claims to belong to shard B but its tag does not match.
+            DatagramPacket packet = newPacket(new ShardedQuicConnectionIdGenerator(
+                    QuicConnectionIdGenerator.randomGenerator(), 1, shards.connectionIdSeed()));
+            ByteBuf content = packet.content();
+            content.setByte(2, content.getByte(2) ^ 1);
+            assertFalse(shardA.writeInbound(packet));
+            assertEquals(0, packet.refCnt());
+
+            shardB.runPendingTasks();
+            assertNull(shardB.readOutbound());
+            DatagramPacket response = shardA.readOutbound();
+            assertNotNull(response);
+            response.release();
+        } finally {
+            assertFalse(shardA.finish());
+            assertFalse(shardB.finish());
+        }
+    }
+
+    private static List<ChannelHandler> newShards() {
+        return QuicTestUtils.newQuicServerBuilder(ImmediateExecutor.INSTANCE)
+                .tokenHandler(InsecureQuicTokenHandler.INSTANCE)
+                .handler(new ChannelInboundHandlerAdapter())
+                .buildShards(2);
+    }
+
+    // Builds a packet with a short header, which only contains the destination connection id.
+    private static DatagramPacket newPacket(QuicConnectionIdGenerator generator) {
+        ByteBuf content = Unpooled.directBuffer();
+        content.writeByte(0x40);
+        generator.writeId(content, Quiche.QUICHE_MAX_CONN_ID_LEN);
+        content.writeZero(100);
+        return new DatagramPacket(content, RECIPIENT, SENDER);
+    }
+}
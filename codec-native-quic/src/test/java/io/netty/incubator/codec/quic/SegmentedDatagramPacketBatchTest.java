@@ -0,0 +1,192 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.unix.SegmentedDatagramPacket;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SegmentedDatagramPacketBatchTest {
+
+    private static final int MAX_DATAGRAM_SIZE = 100;
+    private static final int MAX_NUM_SEGMENTS = 4;
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress(8888);
+    private static final InetSocketAddress MIGRATED_ADDRESS = new InetSocketAddress(9999);
+    private static final SegmentedDatagramPacketAllocator ALLOCATOR = new SegmentedDatagramPacketAllocator() {
+        @Override
+        public int maxNumSegments() {
+            return MAX_NUM_SEGMENTS;
+        }
+
+        @Override
+        public DatagramPacket newPacket(ByteBuf buffer, int segmentSize, InetSocketAddress remoteAddress) {
+            return new SegmentedDatagramPacket(buffer, segmentSize, remoteAddress);
+        }
+    };
+
+    @AfterEach
+    public void releaseSpareBuffer() {
+        // Release the buffer that is kept for the next batch of this thread.
+        FastThreadLocal.removeAll();
+    }
+
+    @Test
+    public void testSameSizeRun() {
+        SegmentedDatagramPacketBatch batch = newBatch();
+        for (int i = 0; i < MAX_NUM_SEGMENTS - 1; i++) {
+            assertNull(write(batch, MAX_DATAGRAM_SIZE, i, ADDRESS));
+            assertNull(batch.takeIfComplete());
+        }
+        assertNull(write(batch, MAX_DATAGRAM_SIZE, MAX_NUM_SEGMENTS - 1, ADDRESS));
+        DatagramPacket packet = batch.takeIfComplete();
+        assertSegments(packet, ADDRESS, MAX_DATAGRAM_SIZE, 0, MAX_DATAGRAM_SIZE, MAX_DATAGRAM_SIZE,
+                MAX_DATAGRAM_SIZE, MAX_DATAGRAM_SIZE);
+        assertNull(batch.take());
+        batch.release();
+        packet.release();
+    }
+
+    @Test
+    public void testSmallerLastSegment() {
+        SegmentedDatagramPacketBatch batch = newBatch();
+        assertNull(write(batch, MAX_DATAGRAM_SIZE, 0, ADDRESS));
+        assertNull(write(batch, MAX_DATAGRAM_SIZE, 1, ADDRESS));
+        assertNull(batch.takeIfComplete());
+        // A smaller packet can only be the last segment, so the batch is complete.
+        assertNull(write(batch, 30, 2, ADDRESS));
+        DatagramPacket packet = batch.takeIfComplete();
+        assertSegments(packet, ADDRESS, MAX_DATAGRAM_SIZE, 0, MAX_DATAGRAM_SIZE, MAX_DATAGRAM_SIZE, 30);
+        batch.release();
+        packet.release();
+    }
+
+    @Test
+    public void testBiggerPacketStartsNewBatch() {
+        SegmentedDatagramPacketBatch batch = newBatch();
+        assertNull(write(batch, 50, 0, ADDRESS));
+        DatagramPacket previous = write(batch, MAX_DATAGRAM_SIZE, 1, ADDRESS);
+        // A single segment is sent as a normal packet.
+        assertSegments(previous, ADDRESS, 0, 0, 50);
+        DatagramPacket packet = batch.take();
+        assertSegments(packet, ADDRESS, 0, 1, MAX_DATAGRAM_SIZE);
+        batch.release();
+        previous.release();
+        packet.release();
+    }
+
+    @Test
+    public void testMigrationMidBatch() {
+        SegmentedDatagramPacketBatch batch = newBatch();
+        assertNull(write(batch, MAX_DATAGRAM_SIZE, 0, ADDRESS));
+        assertNull(write(batch, MAX_DATAGRAM_SIZE, 1, ADDRESS));
+        // The packets that were produced before the migration must still go to the old address.
+        DatagramPacket previous = write(batch, MAX_DATAGRAM_SIZE, 2, MIGRATED_ADDRESS);
+        assertSegments(previous, ADDRESS, MAX_DATAGRAM_SIZE, 0, MAX_DATAGRAM_SIZE, MAX_DATAGRAM_SIZE);
+        assertNull(write(batch, MAX_DATAGRAM_SIZE, 3, MIGRATED_ADDRESS));
+        DatagramPacket packet = batch.take();
+        assertSegments(packet, MIGRATED_ADDRESS, MAX_DATAGRAM_SIZE, 2, MAX_DATAGRAM_SIZE, MAX_DATAGRAM_SIZE);
+        batch.release();
+        previous.release();
+        packet.release();
+    }
+
+    @Test
+    public void testUnusedTailIsReused() {
+        SegmentedDatagramPacketBatch batch = newBatch();
+        assertNull(write(batch, 20, 0, ADDRESS));
+        DatagramPacket first = batch.take();
+        batch.release();
+
+        // The next batch, even if of another connection, uses the space that is left in the same buffer.
+        batch = newBatch();
+        assertNull(write(batch, 20, 1, ADDRESS));
+        DatagramPacket second = batch.take();
+        batch.release();
+        assertSame(first.content().unwrap(), second.content().unwrap());
+        ByteBuf buffer = first.content().unwrap();
+
+        first.release();
+        second.release();
+        releaseSpareBuffer();
+        assertEquals(0, buffer.refCnt());
+    }
+
+    @Test
+    public void testNotTakenSegmentsAreDropped() {
+        SegmentedDatagramPacketBatch batch = newBatch();
+        assertNull(write(batch, MAX_DATAGRAM_SIZE, 0, ADDRESS));
+        ByteBuf buffer = batch.buffer(MAX_DATAGRAM_SIZE);
+        batch.release();
+
+        // The dropped segment must not be part of the next batch.
+        batch = newBatch();
+        assertNull(write(batch, MAX_DATAGRAM_SIZE, 1, ADDRESS));
+        DatagramPacket packet = batch.take();
+        assertSegments(packet, ADDRESS, 0, 1, MAX_DATAGRAM_SIZE);
+        batch.release();
+        packet.release();
+        releaseSpareBuffer();
+        assertEquals(0, buffer.refCnt());
+    }
+
+    private static SegmentedDatagramPacketBatch newBatch() {
+        return new SegmentedDatagramPacketBatch(UnpooledByteBufAllocator.DEFAULT, ALLOCATOR, MAX_DATAGRAM_SIZE);
+    }
+
+    // Writes a packet of the given size which is filled with the given value, like quiche_conn_send(...) would do.
+    private static DatagramPacket write(SegmentedDatagramPacketBatch batch, int size, int value,
+                                        InetSocketAddress address) {
+        ByteBuf out = batch.buffer(MAX_DATAGRAM_SIZE);
+        for (int i = 0; i < size; i++) {
+            out.setByte(out.writerIndex() + i, value);
+        }
+        return batch.add(size, address);
+    }
+
+    // Checks the packet contains segments of the given sizes, which are filled with consecutive values starting at
+    // firstValue. A segmentSize of 0 means the packet must not be segmented.
+    private static void assertSegments(DatagramPacket packet, InetSocketAddress address, int segmentSize,
+                                       int firstValue, int... sizes) {
+        assertNotNull(packet);
+        assertEquals(address, packet.recipient());
+        if (segmentSize == 0) {
+            assertFalse(packet instanceof SegmentedDatagramPacket);
+        } else {
+            assertEquals(segmentSize, assertInstanceOf(SegmentedDatagramPacket.class, packet).segmentSize());
+        }
+        ByteBuf content = packet.content();
+        int idx = content.readerIndex();
+        for (int i = 0; i < sizes.length; i++) {
+            for (int j = 0; j < sizes[i]; j++) {
+                assertEquals(firstValue + i, content.getByte(idx++));
+            }
+        }
+        assertEquals(content.writerIndex(), idx);
+    }
+}
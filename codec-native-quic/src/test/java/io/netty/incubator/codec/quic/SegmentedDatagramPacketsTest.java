@@ -0,0 +1,64 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.unix.SegmentedDatagramPacket;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SegmentedDatagramPacketsTest {
+
+    private static final InetSocketAddress RECIPIENT = new InetSocketAddress(8888);
+    private static final InetSocketAddress SENDER = new InetSocketAddress(9999);
+
+    @Test
+    public void testSegmentSize() {
+        DatagramPacket packet = new SegmentedDatagramPacket(
+                Unpooled.directBuffer().writeZero(25), 10, RECIPIENT, SENDER);
+        try {
+            assertEquals(10, SegmentedDatagramPackets.segmentSize(packet));
+        } finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    public void testSingleSegment() {
+        // If the whole packet fits in one segment there is nothing to split.
+        DatagramPacket packet = new SegmentedDatagramPacket(
+                Unpooled.directBuffer().writeZero(10), 10, RECIPIENT, SENDER);
+        try {
+            assertEquals(0, SegmentedDatagramPackets.segmentSize(packet));
+        } finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    public void testNotSegmented() {
+        DatagramPacket packet = new DatagramPacket(Unpooled.directBuffer().writeZero(25), RECIPIENT, SENDER);
+        try {
+            assertEquals(0, SegmentedDatagramPackets.segmentSize(packet));
+        } finally {
+            packet.release();
+        }
+    }
+}
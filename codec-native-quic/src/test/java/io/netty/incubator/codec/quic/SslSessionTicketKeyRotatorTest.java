@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.incubator.codec.quic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SslSessionTicketKeyRotatorTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes();
+    private static final long INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void testSameSecretSameKeys() {
+        SslSessionTicketKeyRotator rotator1 = new SslSessionTicketKeyRotator(SECRET, INTERVAL, () -> 10);
+        SslSessionTicketKeyRotator rotator2 = new SslSessionTicketKeyRotator(SECRET, INTERVAL, () -> INTERVAL - 1);
+        assertArrayEquals(rotator1.currentKeys(), rotator2.currentKeys());
+
+        byte[] otherSecret = SECRET.clone();
+        otherSecret[0]++;
+        SslSessionTicketKeyRotator rotator3 = new SslSessionTicketKeyRotator(otherSecret, INTERVAL, () -> 10);
+        assertNotEquals(rotator1.currentKeys()[0], rotator3.currentKeys()[0]);
+    }
+
+    @Test
+    public void testRotation() {
+        AtomicLong time = new AtomicLong(INTERVAL * 10);
+        SslSessionTicketKeyRotator rotator = new SslSessionTicketKeyRotator(SECRET, INTERVAL, time::get);
+        SslSessionTicketKey[] keys = rotator.currentKeys();
+        assertEquals(3, keys.length);
+
+        time.addAndGet(INTERVAL);
+        SslSessionTicketKey[] rotatedKeys = rotator.currentKeys();
+        // The old key is still accepted and the next one is the one we use for encryption now.
+        assertEquals(keys[0], rotatedKeys[1]);
+        assertEquals(keys[2], rotatedKeys[0]);
+        assertNotEquals(keys[0], rotatedKeys[0]);
+    }
+
+    @Test
+    public void testKeysAreDistinct() {
+        SslSessionTicketKey key = new SslSessionTicketKeyRotator(SECRET, INTERVAL, () -> 10).currentKeys()[0];
+        assertNotEquals(new String(key.name()), new String(key.hmacKey()));
+        assertNotEquals(new String(key.hmacKey()), new String(key.aesKey()));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class,
+                () -> SslSessionTicketKeyRotator.newRotator(new byte[8], 1, TimeUnit.HOURS));
+        assertThrows(IllegalArgumentException.class,
+                () -> SslSessionTicketKeyRotator.newRotator(SECRET, 0, TimeUnit.HOURS));
+        assertThrows(IllegalArgumentException.class,
+                () -> new SslSessionTicketKey(new byte[15], new byte[16], new byte[16]));
+    }
+}